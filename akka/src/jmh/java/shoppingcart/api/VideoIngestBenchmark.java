@@ -0,0 +1,43 @@
+package shoppingcart.api;
+
+import com.google.protobuf.ByteString;
+import org.openjdk.jmh.annotations.*;
+import shoppingcart.video.Chunk;
+import shoppingcart.video.StreamInput;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per chunk mapping from the gRPC {@link StreamInput} to a Gemini realtime input message done in
+ * {@link VideoServiceEndpointImpl#streamVideo}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VideoIngestBenchmark {
+
+  // a 1024 sample 16 bit pcm audio buffer and 50-200 KB jpeg frames
+  @Param({"2048", "51200", "153600", "204800"})
+  public int payloadBytes;
+
+  private StreamInput streamInput;
+
+  @Setup
+  public void setup() {
+    var payload = new byte[payloadBytes];
+    new Random(42).nextBytes(payload);
+    var mimeType = payloadBytes == 2048 ? "audio/pcm" : "image/jpeg";
+    streamInput = StreamInput.newBuilder()
+        .setChunk(Chunk.newBuilder().setMimeType(mimeType).setPayload(ByteString.copyFrom(payload)))
+        .build();
+  }
+
+  @Benchmark
+  public Object streamInputToRealtimeInput() {
+    return VideoServiceEndpointImpl.toRealtimeInput(VideoServiceEndpointImpl.toChunk(streamInput));
+  }
+}
@@ -0,0 +1,44 @@
+package shoppingcart.domain;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replay of a response store event journal, the same work an entity does when recovering without a snapshot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseStoreReplayBenchmark {
+
+  @Param({"100", "1000", "10000", "100000"})
+  public int events;
+
+  @Param({"50", "1000"})
+  public int capacity;
+
+  private List<ResponseStoreEvent.AddReponse> journal;
+
+  @Setup
+  public void setup() {
+    journal = new ArrayList<>(events);
+    for (int i = 0; i < events; i++) {
+      journal.add(new ResponseStoreEvent.AddReponse("The cart contains " + i + " items."));
+    }
+  }
+
+  @Benchmark
+  public ResponseStore replay() {
+    var store = ResponseStore.empty("store", capacity);
+    for (var event : journal) {
+      store = store.onAddResponse(event);
+    }
+    return store;
+  }
+}
@@ -0,0 +1,57 @@
+package shoppingcart.domain;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replay of a shopping cart event journal, the same work an entity does when recovering without a snapshot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShoppingCartReplayBenchmark {
+
+  @Param({"10", "100", "1000", "10000"})
+  public int events;
+
+  private List<ShoppingCartEvent> journal;
+
+  @Setup
+  public void setup() {
+    var random = new Random(42);
+    // roughly one line per two events, with some lines added to repeatedly and some removed again
+    int products = Math.max(1, events / 2);
+    var added = new ArrayList<String>();
+    journal = new ArrayList<>(events);
+    for (int i = 0; i < events; i++) {
+      if (!added.isEmpty() && random.nextInt(5) == 0) {
+        var productId = added.remove(random.nextInt(added.size()));
+        journal.add(new ShoppingCartEvent.ItemRemoved(productId));
+      } else {
+        var productId = "product-" + random.nextInt(products);
+        journal.add(new ShoppingCartEvent.ItemAdded(new ShoppingCart.LineItem(productId, "Product " + productId, 1 + random.nextInt(3))));
+        if (!added.contains(productId)) added.add(productId);
+      }
+    }
+  }
+
+  @Benchmark
+  public ShoppingCart replay() {
+    var cart = new ShoppingCart("cart", LineItems.EMPTY, false);
+    for (var event : journal) {
+      cart = switch (event) {
+        case ShoppingCartEvent.ItemAdded evt -> cart.onItemAdded(evt);
+        case ShoppingCartEvent.ItemRemoved evt -> cart.onItemRemoved(evt);
+        case ShoppingCartEvent.CheckedOut evt -> cart.onCheckedOut();
+      };
+    }
+    return cart;
+  }
+}
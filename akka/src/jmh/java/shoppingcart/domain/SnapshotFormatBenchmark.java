@@ -0,0 +1,66 @@
+package shoppingcart.domain;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing and reading a shopping cart snapshot in the protobuf format, compared to the JSON format used before.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SnapshotFormatBenchmark {
+
+  @Param({"10", "1000"})
+  public int lines;
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  // the domain cart is serialized as plain JSON, as the snapshots were before the protobuf format
+  private ShoppingCart cart;
+  private PersistedShoppingCart persistedCart;
+  private byte[] protobufSnapshot;
+  private byte[] jsonSnapshot;
+
+  @Setup
+  public void setup() throws Exception {
+    var items = new ArrayList<ShoppingCart.LineItem>();
+    for (int i = 0; i < lines; i++) {
+      items.add(new ShoppingCart.LineItem("product-" + i, "Product number " + i, 1 + i % 5));
+    }
+    cart = new ShoppingCart("cart-" + lines, LineItems.of(items), false);
+    persistedCart = new PersistedShoppingCart(cart);
+    protobufSnapshot = objectMapper.writeValueAsBytes(persistedCart);
+    jsonSnapshot = objectMapper.writeValueAsBytes(cart);
+  }
+
+  @Benchmark
+  public byte[] writeProtobuf() throws Exception {
+    return objectMapper.writeValueAsBytes(persistedCart);
+  }
+
+  @Benchmark
+  public byte[] writeJson() throws Exception {
+    return objectMapper.writeValueAsBytes(cart);
+  }
+
+  @Benchmark
+  public PersistedShoppingCart readProtobuf() throws Exception {
+    return objectMapper.readValue(protobufSnapshot, PersistedShoppingCart.class);
+  }
+
+  @Benchmark
+  public ShoppingCart readJson() throws Exception {
+    return objectMapper.readValue(jsonSnapshot, ShoppingCart.class);
+  }
+
+  @Benchmark
+  public PersistedShoppingCart readJsonSnapshotAsPersistedCart() throws Exception {
+    return objectMapper.readValue(jsonSnapshot, PersistedShoppingCart.class);
+  }
+}
@@ -0,0 +1,102 @@
+package shoppingcart.geminilive;
+
+import akka.http.javadsl.model.ws.TextMessage;
+import akka.util.ByteString;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import shoppingcart.geminilive.LiveProtocol.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of the Gemini Live websocket json protocol, using the same code path as
+ * {@link GeminiLiveApiClient#connect}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeminiCodecBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class JpegFrame {
+
+    // typical webcam jpeg sizes, 50-200 KB
+    @Param({"51200", "153600", "204800"})
+    public int jpegBytes;
+
+    LiveClientMessage realtimeInput;
+    TextMessage realtimeInputJson;
+
+    @Setup
+    public void setup() {
+      var jpeg = new byte[jpegBytes];
+      new Random(42).nextBytes(jpeg);
+      // SOI marker, content does not matter for the codec
+      jpeg[0] = (byte) 0xFF;
+      jpeg[1] = (byte) 0xD8;
+
+      realtimeInput = LiveClientMessage.realtimeInput(new LiveClientRealtimeInput(List.of(new Blob(jpeg, "image/jpeg"))));
+      try {
+        realtimeInputJson = TextMessage.create(GeminiLiveApiClient.objectMapper.writeValueAsString(realtimeInput));
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  private final TextMessage serverContentJson = TextMessage.create(
+      "{\"serverContent\":{\"modelTurn\":{\"parts\":[{\"text\":\"I can see a television on a low table, " +
+          "it looks like the Super TV 55' from your cart.\"}],\"role\":\"model\"}}}");
+  private final ByteString serverContentBytes = ByteString.fromString(serverContentJson.getStrictText());
+  private final TextMessage setupCompleteJson = TextMessage.create("{\"setupComplete\":{}}");
+
+  @Benchmark
+  public Object encodeRealtimeInputDatabind(JpegFrame frame) throws Exception {
+    return TextMessage.create(GeminiLiveApiClient.objectMapper.writeValueAsString(frame.realtimeInput));
+  }
+
+  @Benchmark
+  public void encodeRealtimeInputSegments(JpegFrame frame, Blackhole blackhole) {
+    // what the websocket client pulls out of the streamed text message returned by multiModalInputToWsMessage
+    var segments = new RealtimeInputJsonSegments(frame.realtimeInput.realtimeInput().get());
+    while (segments.hasNext()) {
+      blackhole.consume(segments.next());
+    }
+  }
+
+  @Benchmark
+  public Object decodeRealtimeInput(JpegFrame frame) throws Exception {
+    return GeminiLiveApiClient.objectMapper.readValue(frame.realtimeInputJson.getStrictText(), LiveClientMessage.class);
+  }
+
+  @Benchmark
+  public Object decodeServerContent() throws Exception {
+    return GeminiLiveApiClient.decodeStrict(serverContentJson, GeminiLiveApiClient.DEFAULT_MAX_MESSAGE_BYTES);
+  }
+
+  @Benchmark
+  public Object decodeServerContentDatabind() throws Exception {
+    // the reflective databind model, what the hand written codec falls back to
+    return GeminiLiveApiClient.objectMapper.readValue(serverContentJson.getStrictText(), LiveServerMessage.class);
+  }
+
+  @Benchmark
+  public Object decodeServerContentInParts() throws Exception {
+    // a streamed message, parsed part by part as they arrive
+    var half = serverContentBytes.size() / 2;
+    return new LiveServerMessageDecoder(GeminiLiveApiClient.objectMapper, GeminiLiveApiClient.DEFAULT_MAX_MESSAGE_BYTES)
+        .feed(serverContentBytes.take(half))
+        .feed(serverContentBytes.drop(half))
+        .end();
+  }
+
+  @Benchmark
+  public Object decodeSetupComplete() throws Exception {
+    return GeminiLiveApiClient.decodeStrict(setupCompleteJson, GeminiLiveApiClient.DEFAULT_MAX_MESSAGE_BYTES);
+  }
+}
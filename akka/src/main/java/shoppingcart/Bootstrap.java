@@ -0,0 +1,114 @@
+package shoppingcart;
+
+import akka.javasdk.DependencyProvider;
+import akka.javasdk.ServiceSetup;
+import akka.javasdk.annotations.Setup;
+import akka.javasdk.client.ComponentClient;
+import akka.stream.Materializer;
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import shoppingcart.api.VideoServiceEndpointImpl;
+import shoppingcart.api.VideoWebSocketEndpoint;
+import shoppingcart.application.AIContextCache;
+import shoppingcart.application.AIContextEntity;
+import shoppingcart.application.CartChangesView;
+import shoppingcart.application.CartSessions;
+import shoppingcart.application.IngestRateLimiter;
+import shoppingcart.application.ResponseFeed;
+import shoppingcart.application.ResponsesView;
+import shoppingcart.application.SessionAdmission;
+import shoppingcart.application.VideoPipelineMetrics;
+import shoppingcart.geminilive.GeminiLiveApiClient;
+import shoppingcart.geminilive.GeminiLiveSessionPool;
+
+import java.time.Instant;
+
+@Setup
+public class Bootstrap implements ServiceSetup {
+
+  private static final Logger logger = LoggerFactory.getLogger(Bootstrap.class);
+
+  private final boolean warmOnStartup;
+  private final GeminiLiveSessionPool sessionPool;
+  private final AIContextCache aiContextCache;
+  private final ResponseFeed responseFeed;
+  private final CartSessions cartSessions;
+  private final SessionAdmission sessionAdmission;
+  private final IngestRateLimiter ingestRateLimiter;
+  private final VideoPipelineMetrics videoPipelineMetrics = new VideoPipelineMetrics();
+  private final Materializer materializer;
+  private final VideoWebSocketEndpoint.Settings videoWebSocketSettings;
+  private final VideoWebSocketEndpoint videoWebSocketEndpoint;
+
+  public Bootstrap(Config config, ComponentClient componentClient, Materializer materializer) {
+    // missing key fails on connect rather than on startup, so that the rest of the service can run without it
+    var apiKey = config.hasPath("app.gemini-api-key") ? config.getString("app.gemini-api-key") : "";
+    this.warmOnStartup = !apiKey.isEmpty() && config.getBoolean("app.gemini-session-pool.warm-on-startup");
+    var client = new GeminiLiveApiClient(apiKey, config.getBytes("app.gemini-live.max-message-size"));
+    this.sessionPool = new GeminiLiveSessionPool(
+        client,
+        GeminiLiveSessionPool.Settings.fromConfig(config.getConfig("app.gemini-session-pool")),
+        materializer);
+    this.aiContextCache = new AIContextCache(
+        AIContextCache.Settings.fromConfig(config.getConfig("app.ai-context-cache")),
+        aiContextId -> componentClient.forKeyValueEntity(aiContextId).method(AIContextEntity::get).invokeAsync(),
+        System::nanoTime);
+    this.responseFeed = new ResponseFeed(
+        () -> componentClient.forView().stream(ResponsesView::streamStores).source(),
+        Instant::now);
+    this.cartSessions = new CartSessions(
+        CartSessions.Settings.fromConfig(config.getConfig("app.cart-updates")),
+        cartId -> componentClient.forView().stream(CartChangesView::streamChanges).source(cartId));
+    this.sessionAdmission = new SessionAdmission(SessionAdmission.Settings.fromConfig(config.getConfig("app.video-sessions")));
+    this.ingestRateLimiter = new IngestRateLimiter(
+        IngestRateLimiter.Settings.fromConfig(config.getConfig("app.ingest-rate-limit")),
+        System::nanoTime);
+    this.materializer = materializer;
+    this.videoWebSocketSettings = VideoWebSocketEndpoint.Settings.fromConfig(config.getConfig("app.video-websocket"));
+    this.videoWebSocketEndpoint = new VideoWebSocketEndpoint(
+        new VideoServiceEndpointImpl(config, componentClient, materializer, sessionPool, aiContextCache, cartSessions,
+            sessionAdmission, ingestRateLimiter, videoPipelineMetrics),
+        videoWebSocketSettings);
+  }
+
+  @Override
+  public void onStartup() {
+    if (warmOnStartup) {
+      logger.info("Warming Gemini Live session pool");
+      sessionPool.warm(VideoServiceEndpointImpl.GEMINI_SETUP);
+    }
+    if (videoWebSocketSettings.enabled()) {
+      videoWebSocketEndpoint.bind(materializer.system()).whenComplete((binding, error) -> {
+        if (error != null) logger.error("Failed to bind video websocket endpoint", error);
+      });
+    }
+  }
+
+  @Override
+  public DependencyProvider createDependencyProvider() {
+    return new DependencyProvider() {
+      @Override
+      @SuppressWarnings("unchecked")
+      public <T> T getDependency(Class<T> clazz) {
+        if (clazz == GeminiLiveSessionPool.class) {
+          return (T) sessionPool;
+        } else if (clazz == AIContextCache.class) {
+          return (T) aiContextCache;
+        } else if (clazz == ResponseFeed.class) {
+          return (T) responseFeed;
+        } else if (clazz == CartSessions.class) {
+          return (T) cartSessions;
+        } else if (clazz == SessionAdmission.class) {
+          return (T) sessionAdmission;
+        } else if (clazz == IngestRateLimiter.class) {
+          return (T) ingestRateLimiter;
+        } else if (clazz == VideoPipelineMetrics.class) {
+          return (T) videoPipelineMetrics;
+        } else {
+          throw new IllegalArgumentException("Unknown dependency type: " + clazz);
+        }
+      }
+    };
+  }
+}
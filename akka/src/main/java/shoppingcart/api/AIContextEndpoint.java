@@ -1,13 +1,18 @@
 package shoppingcart.api;
 
+import akka.http.javadsl.model.HttpResponse;
 import akka.javasdk.annotations.Acl;
+import akka.javasdk.annotations.http.Delete;
 import akka.javasdk.annotations.http.HttpEndpoint;
 import akka.javasdk.annotations.http.Get;
 import akka.javasdk.annotations.http.Post;
+import akka.javasdk.annotations.http.Put;
 import akka.javasdk.client.ComponentClient;
+import akka.javasdk.http.HttpResponses;
 
 import java.util.concurrent.CompletionStage;
 
+import shoppingcart.application.AIContextCache;
 import shoppingcart.application.AIContextEntity;
 import shoppingcart.domain.AIContext;
 
@@ -16,9 +21,11 @@ import shoppingcart.domain.AIContext;
 public class AIContextEndpoint {
 
     private final ComponentClient componentClient;
+    private final AIContextCache aiContextCache;
     
-    public AIContextEndpoint(ComponentClient componentClient) {
+    public AIContextEndpoint(ComponentClient componentClient, AIContextCache aiContextCache) {
         this.componentClient = componentClient;
+        this.aiContextCache = aiContextCache;
     }
 
     @Post("/{aiContextId}")
@@ -26,7 +33,32 @@ public class AIContextEndpoint {
         return componentClient.forKeyValueEntity(aiContextId)
           .method(AIContextEntity::set)
           .invokeAsync(aiContext.context())
-          .thenApply(AIContext::context);
+          .thenApply(updated -> {
+            aiContextCache.invalidate(aiContextId);
+            return updated.context();
+          });
+    }
+
+    @Put("/{aiContextId}/frame-deduplication")
+    public CompletionStage<HttpResponse> enableFrameDeduplication(String aiContextId, AIContext.FrameDeduplication frameDeduplication) {
+      return componentClient.forKeyValueEntity(aiContextId)
+        .method(AIContextEntity::enableFrameDeduplication)
+        .invokeAsync(frameDeduplication)
+        .thenApply(__ -> {
+          aiContextCache.invalidate(aiContextId);
+          return HttpResponses.ok();
+        });
+    }
+
+    @Delete("/{aiContextId}/frame-deduplication")
+    public CompletionStage<HttpResponse> disableFrameDeduplication(String aiContextId) {
+      return componentClient.forKeyValueEntity(aiContextId)
+        .method(AIContextEntity::disableFrameDeduplication)
+        .invokeAsync()
+        .thenApply(__ -> {
+          aiContextCache.invalidate(aiContextId);
+          return HttpResponses.ok();
+        });
     }
 
     @Get("/{aiContextId}")
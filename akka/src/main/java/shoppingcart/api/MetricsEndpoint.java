@@ -0,0 +1,104 @@
+package shoppingcart.api;
+
+import akka.http.javadsl.model.ContentTypes;
+import akka.http.javadsl.model.HttpResponse;
+import akka.http.javadsl.model.StatusCodes;
+import akka.javasdk.annotations.Acl;
+import akka.javasdk.annotations.http.Get;
+import akka.javasdk.annotations.http.HttpEndpoint;
+import akka.javasdk.http.HttpResponses;
+import shoppingcart.application.AIContextCache;
+import shoppingcart.application.CartSessions;
+import shoppingcart.application.IngestRateLimiter;
+import shoppingcart.application.ResponseFeed;
+import shoppingcart.application.SessionAdmission;
+import shoppingcart.application.VideoPipelineMetrics;
+import shoppingcart.geminilive.GeminiLiveSessionPool;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Metrics of this node for Prometheus to scrape, each node of the service has its own.
+ */
+@Acl(allow = @Acl.Matcher(principal = Acl.Principal.INTERNET))
+@HttpEndpoint("/metrics")
+public class MetricsEndpoint {
+
+  private final VideoPipelineMetrics videoPipelineMetrics;
+  private final AIContextCache aiContextCache;
+  private final ResponseFeed responseFeed;
+  private final CartSessions cartSessions;
+  private final GeminiLiveSessionPool sessionPool;
+  private final SessionAdmission sessionAdmission;
+  private final IngestRateLimiter ingestRateLimiter;
+
+  public MetricsEndpoint(VideoPipelineMetrics videoPipelineMetrics, AIContextCache aiContextCache,
+                         ResponseFeed responseFeed, CartSessions cartSessions, GeminiLiveSessionPool sessionPool,
+                         SessionAdmission sessionAdmission, IngestRateLimiter ingestRateLimiter) {
+    this.videoPipelineMetrics = videoPipelineMetrics;
+    this.aiContextCache = aiContextCache;
+    this.responseFeed = responseFeed;
+    this.cartSessions = cartSessions;
+    this.sessionPool = sessionPool;
+    this.sessionAdmission = sessionAdmission;
+    this.ingestRateLimiter = ingestRateLimiter;
+  }
+
+  @Get
+  public HttpResponse metrics() {
+    return HttpResponses.of(StatusCodes.OK, ContentTypes.parse(PrometheusText.CONTENT_TYPE),
+        scrape().getBytes(StandardCharsets.UTF_8));
+  }
+
+  String scrape() {
+    var video = videoPipelineMetrics;
+    var cache = aiContextCache.stats();
+    var feed = responseFeed.stats();
+    var admission = sessionAdmission.stats();
+    return new PrometheusText()
+        .gauge("video_sessions_active", "Video streams running on this node", video.activeSessions())
+        .counter("video_sessions_started_total", "Video streams started on this node", video.sessionsStarted())
+        .gauge("video_sessions_admitted", "Video streams holding one of the node's session slots", admission.active())
+        .gauge("video_sessions_max", "Video streams allowed to run at the same time on this node", admission.maxActive())
+        .gauge("video_sessions_queued", "Video streams waiting for a session slot", admission.queued())
+        .counter("video_sessions_admitted_total", "Video streams given a session slot", admission.admitted())
+        .counter("video_sessions_rejected_queue_full_total", "Video streams rejected because the wait queue was full", admission.rejectedQueueFull())
+        .counter("video_sessions_rejected_max_wait_total", "Video streams rejected after waiting the max wait time for a slot", admission.rejectedMaxWait())
+        .histogram("video_session_setup_seconds", "Time from a video stream connecting to Gemini, or borrowing a pooled session, to the session setup being complete", video.sessionSetup())
+        .histogram("video_chunk_queue_delay_seconds", "Time a media chunk waited in the realtime media queue, after rate limiting, deduplication, downscaling and audio batching, before being passed on to the Gemini websocket", video.chunkQueueDelay())
+        .histogram("video_chunk_ingest_to_send_seconds", "Time from a media chunk being received from the client to it being passed on to the Gemini websocket, for a batch of audio chunks from the first chunk in it", video.chunkIngestToSend())
+        .histogram("gemini_time_to_first_token_seconds", "Time from a completed user turn being sent to the first text of the model turn, only the initial context of a session completes a turn so this is about one per session", video.timeToFirstToken())
+        .histogram("gemini_turn_duration_seconds", "Time from the first text of a model turn to the turn being complete or interrupted", video.turnDuration())
+        .histogram("gemini_reconnect_gap_seconds", "Time from a Gemini connection being lost to the first message over the new connection", video.reconnectGap())
+        .counter("video_received_chunks_total", "Media chunks received from clients", video.chunksReceived())
+        .counter("video_received_bytes_total", "Media bytes received from clients", video.bytesReceived())
+        .counter("video_sent_chunks_total", "Media chunks sent to Gemini", video.chunksSent())
+        .counter("video_sent_bytes_total", "Media bytes sent to Gemini", video.bytesSent())
+        .counter("video_frames_deduplicated_total", "Video frames dropped as duplicates of the last frame sent", video.framesDeduplicated())
+        .counter("video_frames_downscaled_total", "Video frames downscaled to the max dimension", video.framesDownscaled())
+        .counter("video_downscaling_saved_bytes_total", "Bytes saved by downscaling video frames", video.downscalingBytesSaved())
+        .counter("video_frames_superseded_total", "Video frames dropped for a newer frame while Gemini was not keeping up", video.framesSuperseded())
+        .counter("video_frames_rate_limited_total", "Video frames dropped by the frame rate limit of their AI context", video.framesRateLimited())
+        .counter("video_chunks_rate_limited_total", "Video frames and other non audio chunks dropped by the byte rate limit of their AI context", video.chunksRateLimited())
+        .gauge("video_rate_limited_ai_contexts", "AI contexts with rate limited video streams on this node", ingestRateLimiter.tenants())
+        .counter("video_audio_chunks_dropped_total", "Audio chunks dropped because the audio buffer was full", video.audioChunksDropped())
+        .counter("video_audio_chunks_batched_total", "Audio chunks merged into batches", video.audioChunksBatched())
+        .counter("video_audio_batches_total", "Audio batches sent to Gemini", video.audioBatches())
+        .counter("gemini_response_fragments_total", "Text fragments received from Gemini", video.responseFragments())
+        .counter("gemini_responses_assembled_total", "Responses assembled from the fragments and stored", video.responsesAssembled())
+        .counter("gemini_reconnect_attempts_total", "Attempts to reconnect a lost Gemini connection", video.reconnectAttempts())
+        .counter("gemini_reconnects_total", "Lost Gemini connections reconnected", video.reconnects())
+        .counter("gemini_reconnects_given_up_total", "Video streams failed after not reconnecting within the max attempts", video.reconnectsGivenUp())
+        .counter("gemini_reconnect_dropped_messages_total", "Client messages dropped from the replay buffer while reconnecting", video.reconnectDropped())
+        .gauge("gemini_session_pool_ready", "Gemini sessions set up and ready to be used", sessionPool.readyCount(VideoServiceEndpointImpl.GEMINI_SETUP))
+        .counter("ai_context_cache_hits_total", "AI context cache hits", cache.hits())
+        .counter("ai_context_cache_misses_total", "AI context cache misses", cache.misses())
+        .counter("ai_context_cache_evictions_total", "AI contexts evicted from the cache", cache.evictions())
+        .counter("ai_context_cache_invalidations_total", "AI contexts invalidated in the cache after a change", cache.invalidations())
+        .gauge("cart_update_sessions_active", "Video streams receiving cart updates", cartSessions.activeSessions())
+        .counter("response_feed_sent_total", "Responses sent to response feed subscribers", feed.sent())
+        .gauge("response_feed_subscribers", "Response feed subscribers", feed.subscribers())
+        .counter("response_feed_resets_total", "Response feed subscribers told that responses may have been missed", feed.resets())
+        .toString();
+  }
+}
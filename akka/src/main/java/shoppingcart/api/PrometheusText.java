@@ -0,0 +1,51 @@
+package shoppingcart.api;
+
+import shoppingcart.application.VideoPipelineMetrics;
+
+/**
+ * Writes metrics in the Prometheus text exposition format, latency histograms are written as Prometheus histograms
+ * in seconds, with cumulative counts per bucket.
+ */
+final class PrometheusText {
+
+  static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  // upper bounds of the histogram buckets in seconds, from a millisecond to a minute
+  private static final double[] BUCKETS = {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60};
+
+  private final StringBuilder text = new StringBuilder(4096);
+
+  PrometheusText counter(String name, String help, long value) {
+    header(name, help, "counter");
+    text.append(name).append(' ').append(value).append('\n');
+    return this;
+  }
+
+  PrometheusText gauge(String name, String help, long value) {
+    header(name, help, "gauge");
+    text.append(name).append(' ').append(value).append('\n');
+    return this;
+  }
+
+  PrometheusText histogram(String name, String help, VideoPipelineMetrics.Snapshot snapshot) {
+    header(name, help, "histogram");
+    for (var bucket : BUCKETS) {
+      text.append(name).append("_bucket{le=\"").append(bucket).append("\"} ")
+          .append(snapshot.countAtOrBelowSeconds(bucket)).append('\n');
+    }
+    text.append(name).append("_bucket{le=\"+Inf\"} ").append(snapshot.count()).append('\n');
+    text.append(name).append("_sum ").append(snapshot.sumSeconds()).append('\n');
+    text.append(name).append("_count ").append(snapshot.count()).append('\n');
+    return this;
+  }
+
+  private void header(String name, String help, String type) {
+    text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  @Override
+  public String toString() {
+    return text.toString();
+  }
+}
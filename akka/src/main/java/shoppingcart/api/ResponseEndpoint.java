@@ -0,0 +1,88 @@
+package shoppingcart.api;
+
+import akka.http.javadsl.model.ContentTypes;
+import akka.http.javadsl.model.HttpEntities;
+import akka.http.javadsl.model.HttpResponse;
+import akka.http.javadsl.model.MediaTypes;
+import akka.javasdk.annotations.Acl;
+import akka.javasdk.annotations.http.Get;
+import akka.javasdk.annotations.http.HttpEndpoint;
+import akka.javasdk.client.ComponentClient;
+import akka.javasdk.http.AbstractHttpEndpoint;
+import akka.javasdk.http.HttpException;
+import akka.util.ByteString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.typesafe.config.Config;
+import shoppingcart.application.ResponseFeed;
+import shoppingcart.application.ResponsesView;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+
+@Acl(allow = @Acl.Matcher(principal = Acl.Principal.INTERNET))
+@HttpEndpoint("/responses")
+public class ResponseEndpoint extends AbstractHttpEndpoint {
+
+  public record LatestResponses(List<String> responses) {}
+
+  public record FeedResponse(String responseStoreId, String response, String storedAt) {}
+
+  public record FeedReset(String reason) {}
+
+  private static final ByteString KEEP_ALIVE = ByteString.fromString(":\n\n");
+
+  private final ComponentClient componentClient;
+  private final ResponseFeed responseFeed;
+  private final Duration keepAliveInterval;
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  public ResponseEndpoint(ComponentClient componentClient, ResponseFeed responseFeed, Config config) {
+    this.componentClient = componentClient;
+    this.responseFeed = responseFeed;
+    this.keepAliveInterval = config.getDuration("app.response-feed.keep-alive-interval");
+  }
+
+  /**
+   * The latest responses across all sessions, newest first by the time they were stored. A store holds the most recent
+   * responses of one session, so the latest n responses are among the latest n updated stores. At most
+   * {@link ResponsesView#RESPONSES_PER_STORE} responses are returned, a larger limit is lowered to that, since the
+   * view does not have more of one session.
+   */
+  @Get("/latest/{limit}")
+  public CompletionStage<LatestResponses> latest(int limit) {
+    if (limit < 0) throw HttpException.badRequest("Limit must not be negative");
+    var capped = Math.min(limit, ResponsesView.RESPONSES_PER_STORE);
+    return componentClient.forView()
+        .method(ResponsesView::getRecentlyUpdated)
+        .invokeAsync(capped)
+        .thenApply(rows -> new LatestResponses(ResponsesView.newestFirst(rows.stores(), capped)));
+  }
+
+  /**
+   * Server sent events with new responses as they are stored, across all sessions and nodes. A client reconnecting,
+   * to any node, with a Last-Event-ID header, or an offset query parameter, resumes after that event. If responses
+   * after it may have been missed, because the view no longer has them or the id is not one of the feed, a
+   * {@code reset} event is sent and the client should read the latest responses instead.
+   */
+  @Get("/feed")
+  public HttpResponse feed() {
+    var events = responseFeed.subscribe(resumeEventId())
+        .map(event -> ByteString.fromString(switch (event) {
+          case ResponseFeed.Entry entry -> "id: " + entry.position().eventId() + "\ndata: " + objectMapper.writeValueAsString(
+              new FeedResponse(entry.position().responseStoreId(), entry.response(), entry.position().storedAt().toString())) + "\n\n";
+          case ResponseFeed.Reset reset -> "event: reset\ndata: " + objectMapper.writeValueAsString(
+              new FeedReset("Responses after the requested offset are not available, read /responses/latest")) + "\n\n";
+        }))
+        .keepAlive(keepAliveInterval, () -> KEEP_ALIVE);
+    return HttpResponse.create()
+        .withEntity(HttpEntities.createChunked(ContentTypes.create(MediaTypes.TEXT_EVENT_STREAM), events));
+  }
+
+  private Optional<String> resumeEventId() {
+    return requestContext().requestHeader("Last-Event-ID").map(header -> header.value())
+        .or(() -> requestContext().queryParams().getString("offset"))
+        .map(String::trim);
+  }
+}
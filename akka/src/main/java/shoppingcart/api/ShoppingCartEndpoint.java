@@ -8,12 +8,19 @@ import akka.javasdk.annotations.http.HttpEndpoint;
 import akka.javasdk.annotations.http.Get;
 import akka.javasdk.annotations.http.Put;
 import akka.javasdk.client.ComponentClient;
+import akka.javasdk.http.AbstractHttpEndpoint;
+import akka.javasdk.http.HttpException;
 import akka.javasdk.http.HttpResponses;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import shoppingcart.application.ShoppingCartEntity;
+import shoppingcart.application.ShoppingCartsView;
 import shoppingcart.domain.ShoppingCart;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.List;
 import java.util.concurrent.CompletionStage;
 
 
@@ -22,12 +29,22 @@ import java.util.concurrent.CompletionStage;
 // For actual services meant for production this must be carefully considered, and often set more limited
 @Acl(allow = @Acl.Matcher(principal = Acl.Principal.INTERNET))
 @HttpEndpoint("/carts") // <1>
-public class ShoppingCartEndpoint {
+public class ShoppingCartEndpoint extends AbstractHttpEndpoint {
 
   private final ComponentClient componentClient;
 
   private static final Logger logger = LoggerFactory.getLogger(ShoppingCartEndpoint.class);
 
+  /**
+   * A page of carts not updated since a cutoff, the cutoff is computed for the first page and must be passed as
+   * updatedBefore with the pageToken of the next pages, so that they page through the same carts.
+   */
+  public record NotUpdatedPage(List<ShoppingCartsView.CartRow> carts, String nextPageToken, boolean hasMore,
+                               Instant updatedBefore) {}
+
+  private static final int DEFAULT_PAGE_SIZE = 20;
+  private static final int MAX_PAGE_SIZE = 100;
+
   public ShoppingCartEndpoint(ComponentClient componentClient) { // <2>
     this.componentClient = componentClient;
   }
@@ -42,6 +59,56 @@ public class ShoppingCartEndpoint {
   }
 
 
+  /**
+   * Open carts containing the product, paged with the optional query parameters pageToken and pageSize.
+   */
+  @Get("/by-product/{productId}")
+  public CompletionStage<ShoppingCartsView.CartsPage> getCartsWithProduct(String productId) {
+    logger.info("Get carts with product id={}", productId);
+    return componentClient.forView()
+      .method(ShoppingCartsView::getCartsWithProduct)
+      .invokeAsync(new ShoppingCartsView.ProductQuery(productId, pageToken(), pageSize()));
+  }
+
+
+  /**
+   * Open carts that have not been updated for the given number of hours, least recently updated first, paged with
+   * the optional query parameters pageToken and pageSize. The next pages also need the updatedBefore of the first
+   * page, the hours are then not used.
+   */
+  @Get("/not-updated/{hours}")
+  public CompletionStage<NotUpdatedPage> getCartsNotUpdated(int hours) {
+    logger.info("Get carts not updated for {} hours", hours);
+    var updatedBefore = updatedBefore(hours);
+    return componentClient.forView()
+      .method(ShoppingCartsView::getCartsNotUpdatedSince)
+      .invokeAsync(new ShoppingCartsView.NotUpdatedQuery(updatedBefore, pageToken(), pageSize()))
+      .thenApply(page -> new NotUpdatedPage(page.carts(), page.nextPageToken(), page.hasMore(), updatedBefore));
+  }
+
+  private Instant updatedBefore(int hours) {
+    var updatedBefore = requestContext().queryParams().getString("updatedBefore");
+    if (updatedBefore.isEmpty()) {
+      if (!pageToken().isEmpty()) throw HttpException.badRequest("The updatedBefore of the first page is required with a pageToken");
+      return Instant.now().minus(Duration.ofHours(hours));
+    }
+    try {
+      return Instant.parse(updatedBefore.get());
+    } catch (DateTimeParseException e) {
+      throw HttpException.badRequest("updatedBefore must be an ISO-8601 instant");
+    }
+  }
+
+  private String pageToken() {
+    return requestContext().queryParams().getString("pageToken").orElse("");
+  }
+
+  private int pageSize() {
+    var pageSize = requestContext().queryParams().getInteger("pageSize").orElse(DEFAULT_PAGE_SIZE);
+    return Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+  }
+
+
   @Put("/{cartId}/item") // <6>
   public CompletionStage<HttpResponse> addItem(String cartId, ShoppingCart.LineItem item) {
     logger.info("Adding item to cart id={} item={}", cartId, item);
@@ -52,6 +119,16 @@ public class ShoppingCartEndpoint {
   }
 
 
+  @Put("/{cartId}/items")
+  public CompletionStage<HttpResponse> updateItems(String cartId, ShoppingCartEntity.ItemChanges changes) {
+    logger.info("Updating items of cart id={} adding {} items, removing {} items", cartId, changes.add().size(), changes.remove().size());
+    return componentClient.forEventSourcedEntity(cartId)
+      .method(ShoppingCartEntity::updateItems)
+      .invokeAsync(changes)
+      .thenApply(__ -> HttpResponses.ok());
+  }
+
+
   @Delete("/{cartId}/item/{productId}")
   public CompletionStage<HttpResponse> removeItem(String cartId, String productId) {
     logger.info("Removing item from cart id={} item={}", cartId, productId);
@@ -1,33 +1,57 @@
 package shoppingcart.api;
 
 import akka.NotUsed;
+import akka.grpc.GrpcServiceException;
 import akka.javasdk.annotations.GrpcEndpoint;
 import akka.javasdk.annotations.Acl;
 import akka.javasdk.client.ComponentClient;
+import akka.stream.FlowShape;
 import akka.stream.Materializer;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.GraphDSL;
+import akka.stream.javadsl.Merge;
+import akka.stream.javadsl.Partition;
 import akka.stream.javadsl.Source;
 import akka.japi.Pair;
 import akka.japi.pf.PFBuilder;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.typesafe.config.Config;
-import shoppingcart.application.AIContextEntity;
+import shoppingcart.application.AIContextCache;
+import shoppingcart.application.AckCoalescing;
+import shoppingcart.application.Acks;
+import shoppingcart.application.AudioChunkBatching;
+import shoppingcart.application.CartSessions;
+import shoppingcart.application.FrameDeduplicator;
+import shoppingcart.application.FrameDownscaling;
+import shoppingcart.application.IngestRateLimiter;
+import shoppingcart.application.RealtimeMediaConflation;
+import shoppingcart.application.ReceivedChunk;
+import shoppingcart.application.ResponseTurnAssembly;
+import shoppingcart.application.SessionAdmission;
 import shoppingcart.application.ShoppingCartEntity;
+import shoppingcart.application.VideoPipelineMetrics;
 import shoppingcart.video.Ack;
 import shoppingcart.video.Chunk;
 import shoppingcart.video.ContextIds;
+import shoppingcart.video.Status;
 import shoppingcart.video.StreamInput;
 import shoppingcart.video.VideoServiceEndpoint;
 import shoppingcart.application.ResponseStoreEntity;
-import shoppingcart.geminilive.GeminiLiveApiClient;
+import shoppingcart.geminilive.GeminiLiveSessionPool;
+import shoppingcart.geminilive.ReconnectingLiveSession;
 import shoppingcart.geminilive.LiveProtocol.*;
 import shoppingcart.domain.ShoppingCart;
+import shoppingcart.domain.ShoppingCartEvent;
 import shoppingcart.domain.AIContext;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -37,34 +61,62 @@ import org.slf4j.LoggerFactory;
 @GrpcEndpoint
 public class VideoServiceEndpointImpl implements VideoServiceEndpoint {
 
-    private final Logger logger = LoggerFactory.getLogger(VideoServiceEndpointImpl.class);
+    private static final Logger logger = LoggerFactory.getLogger(VideoServiceEndpointImpl.class);
+
+    public static final GenerateContentSetup GEMINI_SETUP = GenerateContentSetup.modelWithDefaults("models/gemini-2.0-flash-exp", "TEXT");
 
     private final Config config;
     private final ComponentClient componentClient;
     private final Materializer materializer;
     private final ObjectMapper objectMapper;
 
-    private final String geminiAPIKey;
+    private final GeminiLiveSessionPool sessionPool;
+    private final AIContextCache aiContextCache;
+    private final CartSessions cartSessions;
+    private final SessionAdmission sessionAdmission;
+    private final IngestRateLimiter ingestRateLimiter;
+    private final VideoPipelineMetrics metrics;
+    private final RealtimeMediaConflation.Settings realtimeInputSettings;
+    private final AudioChunkBatching.Settings audioBatchSettings;
+    private final FrameDownscaling.Settings frameDownscalingSettings;
+    private final FrameDeduplicator.Settings frameDeduplicatorSettings;
+    private final ResponseTurnAssembly.Settings responseTurnSettings;
+    private final AckCoalescing.Settings ackSettings;
+    private final ReconnectingLiveSession.Settings reconnectSettings;
 
-    public VideoServiceEndpointImpl(Config config, ComponentClient componentClient, Materializer materializer) {
+    public VideoServiceEndpointImpl(Config config, ComponentClient componentClient, Materializer materializer,
+                                    GeminiLiveSessionPool sessionPool, AIContextCache aiContextCache,
+                                    CartSessions cartSessions, SessionAdmission sessionAdmission,
+                                    IngestRateLimiter ingestRateLimiter, VideoPipelineMetrics metrics) {
         this.config = config;
         this.componentClient = componentClient;
         this.materializer = materializer;
         this.objectMapper = new ObjectMapper();
 
-        this.geminiAPIKey = config.getString("app.gemini-api-key");
+        this.sessionPool = sessionPool;
+        this.aiContextCache = aiContextCache;
+        this.cartSessions = cartSessions;
+        this.sessionAdmission = sessionAdmission;
+        this.ingestRateLimiter = ingestRateLimiter;
+        this.metrics = metrics;
+        this.realtimeInputSettings = RealtimeMediaConflation.Settings.fromConfig(config.getConfig("app.realtime-input"));
+        this.audioBatchSettings = AudioChunkBatching.Settings.fromConfig(config.getConfig("app.realtime-input"));
+        this.frameDownscalingSettings = FrameDownscaling.Settings.fromConfig(config.getConfig("app.frame-downscaling"));
+        this.frameDeduplicatorSettings = FrameDeduplicator.Settings.fromConfig(config.getConfig("app.frame-deduplication"));
+        this.responseTurnSettings = ResponseTurnAssembly.Settings.fromConfig(config.getConfig("app.response-turns"));
+        this.ackSettings = AckCoalescing.Settings.fromConfig(config.getConfig("app.acks"));
+        this.reconnectSettings = ReconnectingLiveSession.Settings.fromConfig(config.getConfig("app.gemini-reconnect"));
     }
 
-    private Source<LiveClientMessage, NotUsed> getAIContext(String aiContextId, String cartId) {
-        logger.info("Fetching AI Context for id '{}' and Cart id '{}'", aiContextId, cartId);
-        CompletionStage<AIContext> aiContextFuture = componentClient.forKeyValueEntity(aiContextId)
-                .method(AIContextEntity::get)
-                .invokeAsync();
-
-        CompletionStage<ShoppingCart> cartFuture = componentClient.forEventSourcedEntity(cartId)
-                .method(ShoppingCartEntity::getCart)
+    private CompletionStage<ShoppingCartEntity.VersionedCart> getCart(String cartId) {
+        logger.info("Fetching Cart id '{}' for AI Context", cartId);
+        return componentClient.forEventSourcedEntity(cartId)
+                .method(ShoppingCartEntity::getVersionedCart)
                 .invokeAsync();
+    }
 
+    private Source<LiveClientMessage, NotUsed> getAIContext(CompletionStage<AIContext> aiContextFuture,
+                                                            CompletionStage<ShoppingCart> cartFuture, String cartId) {
         CompletionStage<LiveClientMessage> combinedFuture = aiContextFuture.thenCombine(cartFuture, (aiContext, cart) -> {
             try {
                 String cartJson = objectMapper.writeValueAsString(cart);
@@ -83,10 +135,44 @@ public class VideoServiceEndpointImpl implements VideoServiceEndpoint {
         return Source.completionStage(combinedFuture);
     }
 
+    /**
+     * A compact description of the cart changes, added to the conversation without asking for a response.
+     */
+    static LiveClientMessage cartUpdate(List<ShoppingCartEvent> events) {
+        var changes = events.stream()
+            .map(event -> switch (event) {
+                case ShoppingCartEvent.ItemAdded evt ->
+                    "added " + evt.item().quantity() + "\u00d7 " + evt.item().name() + " (" + evt.item().productId() + ")";
+                case ShoppingCartEvent.ItemRemoved evt -> "removed " + evt.productId();
+                case ShoppingCartEvent.CheckedOut evt -> "checked out";
+            })
+            .collect(Collectors.joining("; "));
+        var content = new Content(List.of(Part.text("Shopping cart update: " + changes)), Optional.of("user"));
+        return LiveClientMessage.clientContent(new LiveClientContent(List.of(content), false));
+    }
+
+    // package private for benchmarks
+    static Chunk toChunk(StreamInput streamInput) {
+        if (!streamInput.hasChunk()) {
+            String errorMsg = "Expected Chunk message after ContextIds, but received: " + streamInput.getContentCase();
+            logger.warn(errorMsg);
+            throw new IllegalArgumentException(errorMsg);
+        }
+        return streamInput.getChunk();
+    }
+
+    static LiveClientMessage toRealtimeInput(Chunk chunk) {
+        // a view of the received gRPC payload, no copy
+        var mediaChunks = List.of(new Blob(chunk.getPayload().asReadOnlyByteBuffer(), chunk.getMimeType()));
+        return LiveClientMessage.realtimeInput(new LiveClientRealtimeInput(mediaChunks));
+    }
+
     @Override
     public Source<Ack, NotUsed> streamVideo(Source<StreamInput, NotUsed> in) {
 
-        var client = new GeminiLiveApiClient(geminiAPIKey);
+        // responses are stored per AI context and cart, known once the ContextIds message has been received
+        var responseStoreId = new AtomicReference<String>();
+        var session = metrics.newSession();
 
         Source<LiveClientMessage, NotUsed> contentStream = in.prefixAndTail(1)
             .flatMapConcat(pair -> {
@@ -105,24 +191,60 @@ public class VideoServiceEndpointImpl implements VideoServiceEndpoint {
                     }
 
                     logger.info("Received ContextIds: aiContextId={}, cartId={}", aiContextId, cartId);
+                    responseStoreId.set(ResponseStoreEntity.entityId(aiContextId, cartId));
+
+                    CompletionStage<AIContext> aiContextFuture = aiContextCache.get(aiContextId);
 
-                    Source<LiveClientMessage, NotUsed> initialContextSource = getAIContext(aiContextId, cartId);
+                    // changes to the cart while the session runs, sent after the initial context without the changes
+                    // already in it
+                    var cartRead = new CompletableFuture<Long>();
+                    Source<LiveClientMessage, NotUsed> cartUpdates = cartSessions.updatesAfter(cartId, cartRead)
+                        .groupedWithin(cartSessions.settings().maxBatchSize(), cartSessions.settings().batchWindow())
+                        .map(VideoServiceEndpointImpl::cartUpdate);
+                    CompletionStage<ShoppingCartEntity.VersionedCart> cartFuture = getCart(cartId);
+                    cartFuture.whenComplete((cart, error) -> {
+                        if (error != null) cartRead.completeExceptionally(error);
+                        else cartRead.complete(cart.sequenceNumber());
+                    });
 
-                    Source<LiveClientMessage, NotUsed> chunkStream = tail
-                        .map(streamInput -> {
-                            if (!streamInput.hasChunk()) {
-                                String errorMsg = "Expected Chunk message after ContextIds, but received: " + streamInput.getContentCase();
-                                logger.warn(errorMsg);
-                                throw new IllegalArgumentException(errorMsg);
+                    Source<LiveClientMessage, NotUsed> initialContextSource = getAIContext(
+                            aiContextFuture, cartFuture.thenApply(ShoppingCartEntity.VersionedCart::cart), cartId)
+                        .map(message -> {
+                            session.turnRequested();
+                            return message;
+                        });
+
+                    Source<LiveClientMessage, NotUsed> chunkStream = Source.completionStage(aiContextFuture)
+                        .flatMapConcat(aiContext -> {
+                            Source<ReceivedChunk, NotUsed> chunks = tail.map(input -> {
+                                // the receive time travels with the chunk, through the stages dropping, replacing and batching chunks
+                                var chunk = ReceivedChunk.receivedNow(toChunk(input));
+                                session.chunkReceived(chunk.payload().size());
+                                return chunk;
+                            });
+                            if (ingestRateLimiter.settings().enabled()) {
+                                chunks = chunks.via(ingestRateLimiter.flow(aiContextId, metrics));
+                            }
+                            if (aiContext.frameDeduplication().isPresent()) {
+                                chunks = chunks.via(FrameDeduplicator.flow(aiContext.frameDeduplication().get(),
+                                    frameDeduplicatorSettings, "cart " + cartId, metrics));
                             }
-                            return streamInput.getChunk();
-                        })
-                        .map(chunk -> {
-                            var mediaChunks = List.of(new Blob(chunk.getPayload().toByteArray(), chunk.getMimeType()));
-                            return LiveClientMessage.realtimeInput(new LiveClientRealtimeInput(mediaChunks));
+                            if (frameDownscalingSettings.enabled()) {
+                                // after deduplication, so that dropped frames are not downscaled
+                                chunks = chunks.via(FrameDownscaling.flow(frameDownscalingSettings, "cart " + cartId, metrics));
+                            }
+                            if (audioBatchSettings.enabled()) {
+                                chunks = chunks.via(new AudioChunkBatching(audioBatchSettings, "cart " + cartId, metrics));
+                            }
+                            return chunks
+                                .via(new RealtimeMediaConflation(realtimeInputSettings, "cart " + cartId, metrics))
+                                .map(chunk -> {
+                                    session.chunkSent(chunk.payload().size(), chunk.receivedNanos());
+                                    return toRealtimeInput(chunk.chunk());
+                                });
                         });
 
-                    return initialContextSource.concat(chunkStream);
+                    return initialContextSource.concat(chunkStream.merge(cartUpdates, true));
 
                 } else {
                     String errorMsg = firstList.isEmpty() ? "Input stream was empty. Expected ContextIds message first."
@@ -132,53 +254,129 @@ public class VideoServiceEndpointImpl implements VideoServiceEndpoint {
                 }
             });
 
-        return client.connect(GenerateContentSetup.modelWithDefaults("models/gemini-2.0-flash-exp", "TEXT"), contentStream)
+        // a dropped Gemini connection is reopened with the setup and initial context, instead of failing the stream
+        Source<LiveServerMessage, NotUsed> serverMessages = reconnectSettings.enabled()
+            ? contentStream.via(new ReconnectingLiveSession(reconnectSettings, input -> sessionPool.connect(GEMINI_SETUP, input), session))
+            : sessionPool.connect(GEMINI_SETUP, contentStream);
+
+        Source<Ack, NotUsed> acks = serverMessages
             .mapMaterializedValue(whatever -> {
                 logger.info("Stream to Gemini connected");
                 return whatever;
-            }).map(liveServerMessage -> {
-                var ack = Ack.newBuilder();
-                boolean responseAdded = false;
-
-                if (liveServerMessage.setupComplete().isPresent()) {
-                     ack.setMessage("Setup complete");
-                }
-
-                if (ack.getMessage().isEmpty() && liveServerMessage.serverContent().isPresent()) {
-                    LiveServerContent serverContent = liveServerMessage.serverContent().get();
-                    if (serverContent.modelTurn().isPresent() &&
-                      !serverContent.modelTurn().get().parts().isEmpty() &&
-                      serverContent.modelTurn().get().parts().get(0).text().isPresent()) {
-                        var response = serverContent.modelTurn().get().parts().get(0).text().get();
-                        if (!response.isBlank()) {
-                           logger.info("Storing Gemini Response snippet");
-                           componentClient
-                               .forEventSourcedEntity("gemini")
-                               .method(ResponseStoreEntity::addResponse)
-                               .invokeAsync(response);
-                           ack.setMessage("Content: " + response);
-                           responseAdded = true;
-                        }
-                    }
-                }
-
-                if (!responseAdded) {
-                   if (liveServerMessage.toolCall().isPresent()) {
-                       ack.setMessage("Tool call received");
-                   } else if (liveServerMessage.toolCallCancellation().isPresent()) {
-                       ack.setMessage("Tool call cancellation received");
-                   } else if (ack.getMessage().isEmpty()){
-                       ack.setMessage("Processing...");
-                   }
-                }
-
-                return ack.build();
             })
+            .map(message -> {
+                session.serverMessage(message);
+                return message;
+            })
+            .via(new ResponseTurnAssembly(responseTurnSettings, "video stream", metrics))
+            .via(acks(responseTurnSettings.maxInFlightWrites(), response -> storeResponse(responseStoreId.get(), response)))
             .recover(new PFBuilder<Throwable, Ack>()
                 .matchAny(e -> {
                     logger.error("Error in Gemini stream processing: {}", e.getMessage(), e);
-                    return Ack.newBuilder().setMessage("Error: " + e.getMessage()).build();
+                    return Acks.error(e.getMessage());
                 })
                 .build());
+
+        if (ackSettings.compact()) {
+            acks = acks.via(new AckCoalescing(ackSettings, "video stream"));
+        }
+
+        Source<Ack, NotUsed> admitted = sessionAdmission.admit(acks
+            .via(Acks.numbered())
+            .watchTermination((notUsed, done) -> {
+                session.started();
+                done.whenComplete((__, error) -> session.closed());
+                return notUsed;
+            }));
+
+        // a stream not admitted on this node fails with a status the client can act on, rather than an error ack
+        return admitted.mapError(new PFBuilder<Throwable, Throwable>()
+            .match(SessionAdmission.RejectedException.class, e -> {
+                logger.warn("Rejected video stream: {}", e.getMessage());
+                return new GrpcServiceException(io.grpc.Status.RESOURCE_EXHAUSTED.withDescription(e.getMessage()));
+            })
+            .build());
+    }
+
+    /**
+     * @return the acks for a server message, usually one
+     */
+    static List<Ack> toAcks(LiveServerMessage liveServerMessage) {
+        var acks = new ArrayList<Ack>(1);
+
+        if (liveServerMessage.setupComplete().isPresent()) {
+            acks.add(Acks.status(Status.Code.SETUP_COMPLETE, "Setup complete"));
+        }
+
+        if (liveServerMessage.serverContent().isPresent()) {
+            LiveServerContent serverContent = liveServerMessage.serverContent().get();
+            if (serverContent.modelTurn().isPresent()) {
+                var text = new StringBuilder();
+                for (Part part : serverContent.modelTurn().get().parts()) {
+                    part.text().ifPresent(text::append);
+                }
+                // whitespace is kept, the deltas are concatenated by the client
+                if (!text.isEmpty()) {
+                    acks.add(Acks.contentDelta(text.toString()));
+                }
+            }
+            var interrupted = serverContent.interrupted().orElse(false);
+            if (interrupted || serverContent.turnComplete().orElse(false)) {
+                acks.add(Acks.turnComplete(interrupted));
+            }
+        }
+
+        liveServerMessage.toolCall().ifPresent(toolCall -> acks.add(Acks.toolCall(
+            toolCall.functionCalls().stream().map(FunctionCall::name).toList(),
+            toolCall.functionCalls().stream().flatMap(call -> call.id().stream()).toList())));
+
+        liveServerMessage.toolCallCancellation().ifPresent(cancellation ->
+            acks.add(Acks.toolCallCancellation(cancellation.ids())));
+
+        if (acks.isEmpty()) {
+            acks.add(Acks.status(Status.Code.PROCESSING, "Processing..."));
+        }
+
+        return acks;
+    }
+
+    /**
+     * The acks of each server message right away, in order, and the ack of each assembled response once it is stored.
+     * Responses are stored on a branch of their own, so acks of later messages do not wait for them: the ack of a
+     * stored response comes after those of the messages received while it was being stored. When max in flight
+     * writes responses are being stored, a further response backpressures the stream.
+     */
+    static Flow<ResponseTurnAssembly.Output, Ack, NotUsed> acks(
+            int maxInFlightWrites, Function<String, CompletionStage<Ack>> storeResponse) {
+        return Flow.fromGraph(GraphDSL.create(builder -> {
+            var partition = builder.add(Partition.<ResponseTurnAssembly.Output>create(2,
+                output -> output instanceof ResponseTurnAssembly.TurnAssembled ? 1 : 0));
+            var merge = builder.add(Merge.<Ack>create(2));
+            var received = builder.add(Flow.<ResponseTurnAssembly.Output>create()
+                .mapConcat(output -> toAcks(((ResponseTurnAssembly.Received) output).message())));
+            var stored = builder.add(Flow.<ResponseTurnAssembly.Output>create()
+                .mapAsyncUnordered(maxInFlightWrites, output ->
+                    storeResponse.apply(((ResponseTurnAssembly.TurnAssembled) output).response())));
+            builder.from(partition.out(0)).via(received).toInlet(merge.in(0));
+            builder.from(partition.out(1)).via(stored).toInlet(merge.in(1));
+            return FlowShape.of(partition.in(), merge.out());
+        }));
+    }
+
+    private CompletionStage<Ack> storeResponse(String responseStoreId, String response) {
+        if (responseStoreId == null) {
+            // content is only sent to Gemini after the ContextIds message, so there can be no response before it
+            return CompletableFuture.completedFuture(Acks.error("Response received before ContextIds"));
+        }
+        logger.info("Storing Gemini Response for {}", responseStoreId);
+        return componentClient
+            .forEventSourcedEntity(responseStoreId)
+            .method(ResponseStoreEntity::addResponse)
+            .invokeAsync(response)
+            .thenApply(done -> Acks.status(Status.Code.RESPONSE_STORED, "Response stored"))
+            .exceptionally(e -> {
+                logger.error("Failed to store Gemini Response for {}", responseStoreId, e);
+                return Acks.error("Failed to store response: " + e.getMessage());
+            });
     }
 }
@@ -0,0 +1,205 @@
+package shoppingcart.api;
+
+import akka.NotUsed;
+import akka.actor.ActorSystem;
+import akka.http.javadsl.Http;
+import akka.http.javadsl.ServerBinding;
+import akka.http.javadsl.model.ws.Message;
+import akka.http.javadsl.model.ws.TextMessage;
+import akka.stream.Materializer;
+import akka.stream.javadsl.AsPublisher;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.protobuf.UnsafeByteOperations;
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import shoppingcart.video.Ack;
+import shoppingcart.video.Chunk;
+import shoppingcart.video.ContextIds;
+import shoppingcart.video.StreamInput;
+import shoppingcart.video.VideoServiceEndpoint;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static akka.http.javadsl.server.Directives.handleWebSocketMessages;
+import static akka.http.javadsl.server.Directives.path;
+
+/**
+ * Binary websocket alternative to the gRPC {@link VideoServiceEndpointImpl#streamVideo}, so that browsers can stream
+ * media to the service directly, without a relay decoding base64 and re-encoding it as gRPC.
+ * <p>
+ * The first message is a text message with the context ids as json, {@code {"aiContextId": "...", "cartId": "..."}},
+ * followed by one binary message per media chunk: one byte with the length of the mime type, the mime type in
+ * US-ASCII and then the payload. The acks are sent back as text messages, json objects with the fields of the
+ * {@link Ack}: {@code {"seq": 1, "serverTimeMillis": ..., "kind": "contentDelta", "message": "...", "text": "..."}}.
+ * <p>
+ * The SDK does not support websocket endpoints, so this is served by its own HTTP server, bound by the service
+ * setup on a separate port. That server is outside of the SDK's ACLs and TLS and does not authenticate clients, so it
+ * is off by default and only binds to the loopback interface unless configured otherwise.
+ */
+public final class VideoWebSocketEndpoint {
+
+  private static final Logger logger = LoggerFactory.getLogger(VideoWebSocketEndpoint.class);
+
+  /**
+   * @param enabled Whether the websocket server is started
+   * @param host Interface to bind to
+   * @param port Port to bind to
+   * @param maxChunkBytes Binary messages larger than this fail the stream
+   * @param messageTimeout Max time to receive one streamed message
+   */
+  public record Settings(boolean enabled, String host, int port, int maxChunkBytes, Duration messageTimeout) {
+    public Settings {
+      if (maxChunkBytes <= 0) throw new IllegalArgumentException("max-chunk-bytes must be greater than zero");
+    }
+
+    public static Settings fromConfig(Config config) {
+      return new Settings(
+          config.getBoolean("enabled"),
+          config.getString("host"),
+          config.getInt("port"),
+          (int) config.getBytes("max-chunk-bytes").longValue(),
+          config.getDuration("message-timeout"));
+    }
+  }
+
+  public record ContextIdsMessage(String aiContextId, String cartId) {}
+
+  /**
+   * @param kind The ack variant, {@code contentDelta}, {@code turnComplete}, {@code toolCall}, {@code status} or
+   *    {@code error}, followed by the fields of that variant
+   */
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  public record AckMessage(long seq, long serverTimeMillis, String kind, String message, String text,
+                           Boolean interrupted, List<String> functionNames, Boolean cancellation, List<String> ids,
+                           String status, String error) {}
+
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  private final VideoServiceEndpoint videoService;
+  private final Settings settings;
+
+  public VideoWebSocketEndpoint(VideoServiceEndpoint videoService, Settings settings) {
+    this.videoService = videoService;
+    this.settings = settings;
+  }
+
+  public CompletionStage<ServerBinding> bind(ActorSystem system) {
+    return Http.get(system).newServerAt(settings.host(), settings.port())
+        .bind(path("video", () -> handleWebSocketMessages(flow())))
+        .thenApply(binding -> {
+          logger.info("Video websocket endpoint listening on {}", binding.localAddress());
+          return binding;
+        });
+  }
+
+  /**
+   * The handler of one websocket connection.
+   */
+  public Flow<Message, Message, NotUsed> flow() {
+    return Flow.<Message, Message, NotUsed>fromMaterializer((materializer, attributes) -> {
+      var inputs = Sink.<StreamInput>asPublisher(AsPublisher.WITHOUT_FANOUT).preMaterialize(materializer);
+      var fromClient = Flow.<Message>create()
+          .mapAsync(1, message -> toStreamInput(message, materializer))
+          .to(inputs.second());
+      var toClient = videoService.streamVideo(Source.fromPublisher(inputs.first()))
+          .map(VideoWebSocketEndpoint::toMessage);
+      return Flow.fromSinkAndSourceCoupled(fromClient, toClient);
+    }).mapMaterializedValue(ignored -> NotUsed.getInstance());
+  }
+
+  private CompletionStage<StreamInput> toStreamInput(Message message, Materializer materializer) {
+    if (message.isText()) {
+      var text = message.asTextMessage();
+      var json = text.isStrict()
+          ? CompletableFuture.completedFuture(text.getStrictText())
+          : text.getStreamedText()
+              .limitWeighted(settings.maxChunkBytes(), part -> (long) part.length())
+              .completionTimeout(settings.messageTimeout())
+              .runFold("", String::concat, materializer);
+      return json.thenApply(VideoWebSocketEndpoint::contextIds);
+    } else {
+      var binary = message.asBinaryMessage();
+      if (binary.isStrict()) {
+        if (binary.getStrictData().size() > settings.maxChunkBytes()) throw chunkTooLarge();
+        return CompletableFuture.completedFuture(chunk(binary.getStrictData()));
+      }
+      return binary.getStreamedData()
+          .limitWeighted(settings.maxChunkBytes(), part -> (long) part.size())
+          .completionTimeout(settings.messageTimeout())
+          .runFold(ByteString.emptyByteString(), ByteString::concat, materializer)
+          .thenApply(VideoWebSocketEndpoint::chunk);
+    }
+  }
+
+  private IllegalArgumentException chunkTooLarge() {
+    return new IllegalArgumentException("Binary message larger than " + settings.maxChunkBytes() + " bytes");
+  }
+
+  // package private for testing
+  static StreamInput contextIds(String json) {
+    try {
+      var ids = objectMapper.readValue(json, ContextIdsMessage.class);
+      // missing ids are rejected by the video stream
+      return StreamInput.newBuilder()
+          .setContextIds(ContextIds.newBuilder()
+              .setAiContextId(ids.aiContextId() == null ? "" : ids.aiContextId())
+              .setCartId(ids.cartId() == null ? "" : ids.cartId()))
+          .build();
+    } catch (JsonProcessingException e) {
+      throw new IllegalArgumentException("Text message is not a context ids json object", e);
+    }
+  }
+
+  // package private for testing
+  static StreamInput chunk(ByteString message) {
+    var mimeTypeLength = message.isEmpty() ? 0 : message.apply(0) & 0xff;
+    if (mimeTypeLength == 0 || message.size() < 1 + mimeTypeLength) {
+      throw new IllegalArgumentException("Binary message must start with the length of the mime type and the mime type");
+    }
+    var mimeType = message.slice(1, 1 + mimeTypeLength).decodeString(StandardCharsets.US_ASCII);
+    // a view of the received bytes, no copy
+    var payload = UnsafeByteOperations.unsafeWrap(message.drop(1 + mimeTypeLength).asByteBuffer());
+    return StreamInput.newBuilder()
+        .setChunk(Chunk.newBuilder().setMimeType(mimeType).setPayload(payload))
+        .build();
+  }
+
+  private static Message toMessage(Ack ack) {
+    return TextMessage.create(toJson(ack));
+  }
+
+  // package private for testing
+  static String toJson(Ack ack) {
+    var json = switch (ack.getKindCase()) {
+      case CONTENT_DELTA -> new AckMessage(ack.getSeq(), ack.getServerTimeMillis(), "contentDelta", ack.getMessage(),
+          ack.getContentDelta().getText(), null, null, null, null, null, null);
+      case TURN_COMPLETE -> new AckMessage(ack.getSeq(), ack.getServerTimeMillis(), "turnComplete", ack.getMessage(),
+          null, ack.getTurnComplete().getInterrupted(), null, null, null, null, null);
+      case TOOL_CALL -> new AckMessage(ack.getSeq(), ack.getServerTimeMillis(), "toolCall", ack.getMessage(),
+          null, null, ack.getToolCall().getFunctionNamesList(), ack.getToolCall().getCancellation(),
+          ack.getToolCall().getIdsList(), null, null);
+      case STATUS -> new AckMessage(ack.getSeq(), ack.getServerTimeMillis(), "status", ack.getMessage(),
+          null, null, null, null, null, ack.getStatus().getCode().name(), null);
+      case ERROR -> new AckMessage(ack.getSeq(), ack.getServerTimeMillis(), "error", ack.getMessage(),
+          null, null, null, null, null, null, ack.getError().getMessage());
+      case KIND_NOT_SET -> new AckMessage(ack.getSeq(), ack.getServerTimeMillis(), null, ack.getMessage(),
+          null, null, null, null, null, null, null);
+    };
+    try {
+      return objectMapper.writeValueAsString(json);
+    } catch (JsonProcessingException e) {
+      throw new RuntimeException("Failed to serialize ack", e);
+    }
+  }
+}
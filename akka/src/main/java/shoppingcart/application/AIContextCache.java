@@ -0,0 +1,102 @@
+package shoppingcart.application;
+
+import com.typesafe.config.Config;
+import shoppingcart.domain.AIContext;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Node local cache of {@link AIContext} by id, so that starting a stream does not need a round trip to the
+ * {@link AIContextEntity}.
+ * <p>
+ * Entries expire after a TTL, and the least recently used entry is evicted when the cache is full. Entries are
+ * invalidated when the context is changed through this node, and by {@link AIContextCacheInvalidator} for the
+ * changes it sees. Consumers only run on one node for each entity, so on other nodes the TTL bounds how stale an
+ * entry can be.
+ */
+public final class AIContextCache {
+
+  /**
+   * @param maxEntries Max number of cached contexts
+   * @param ttl How long a loaded context is used before it is loaded again
+   */
+  public record Settings(int maxEntries, Duration ttl) {
+    public static Settings fromConfig(Config config) {
+      return new Settings(config.getInt("max-entries"), config.getDuration("ttl"));
+    }
+  }
+
+  public record Stats(long hits, long misses, long evictions, long invalidations) {}
+
+  private record Entry(CompletionStage<AIContext> aiContext, long loadedNanos) {}
+
+  private final Settings settings;
+  private final Function<String, CompletionStage<AIContext>> loader;
+  private final LongSupplier nanoClock;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder invalidations = new LongAdder();
+
+  // access ordered, guarded by itself
+  private final LinkedHashMap<String, Entry> entries;
+
+  public AIContextCache(Settings settings, Function<String, CompletionStage<AIContext>> loader, LongSupplier nanoClock) {
+    this.settings = settings;
+    this.loader = loader;
+    this.nanoClock = nanoClock;
+    this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        if (size() > settings.maxEntries()) {
+          evictions.increment();
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  public CompletionStage<AIContext> get(String aiContextId) {
+    var now = nanoClock.getAsLong();
+    Entry entry;
+    synchronized (entries) {
+      entry = entries.get(aiContextId);
+      if (entry != null && now - entry.loadedNanos() < settings.ttl().toNanos()) {
+        hits.increment();
+        return entry.aiContext();
+      }
+      misses.increment();
+      // concurrent gets for the same id share the same load
+      entry = new Entry(loader.apply(aiContextId), now);
+      entries.put(aiContextId, entry);
+    }
+
+    var loaded = entry;
+    loaded.aiContext().whenComplete((aiContext, error) -> {
+      if (error != null) {
+        synchronized (entries) {
+          entries.remove(aiContextId, loaded);
+        }
+      }
+    });
+    return loaded.aiContext();
+  }
+
+  public void invalidate(String aiContextId) {
+    synchronized (entries) {
+      if (entries.remove(aiContextId) != null) invalidations.increment();
+    }
+  }
+
+  public Stats stats() {
+    return new Stats(hits.sum(), misses.sum(), evictions.sum(), invalidations.sum());
+  }
+}
@@ -0,0 +1,29 @@
+package shoppingcart.application;
+
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.annotations.Consume;
+import akka.javasdk.consumer.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import shoppingcart.domain.AIContext;
+
+@ComponentId("ai-context-cache-invalidator")
+@Consume.FromKeyValueEntity(AIContextEntity.class)
+public class AIContextCacheInvalidator extends Consumer {
+
+  private static final Logger logger = LoggerFactory.getLogger(AIContextCacheInvalidator.class);
+
+  private final AIContextCache aiContextCache;
+
+  public AIContextCacheInvalidator(AIContextCache aiContextCache) {
+    this.aiContextCache = aiContextCache;
+  }
+
+  public Effect onUpdate(AIContext aiContext) {
+    messageContext().eventSubject().ifPresent(aiContextId -> {
+      logger.debug("AI context id={} changed, invalidating cached context", aiContextId);
+      aiContextCache.invalidate(aiContextId);
+    });
+    return effects().done();
+  }
+}
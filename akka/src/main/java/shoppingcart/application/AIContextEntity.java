@@ -5,6 +5,8 @@ import akka.javasdk.keyvalueentity.KeyValueEntity;
 
 import shoppingcart.domain.AIContext;
 
+import java.util.Optional;
+
 @ComponentId("ai-context-entity")
 public class AIContextEntity extends KeyValueEntity<AIContext> {
 
@@ -14,7 +16,21 @@ public class AIContextEntity extends KeyValueEntity<AIContext> {
     }
 
     public Effect<AIContext> set(String context) {
-        var newAIContext = new AIContext(context);
+        var newAIContext = currentState().withContext(context);
+        return effects()
+            .updateState(newAIContext)
+            .thenReply(newAIContext);
+    }
+
+    public Effect<AIContext> enableFrameDeduplication(AIContext.FrameDeduplication frameDeduplication) {
+        var newAIContext = currentState().withFrameDeduplication(Optional.of(frameDeduplication));
+        return effects()
+            .updateState(newAIContext)
+            .thenReply(newAIContext);
+    }
+
+    public Effect<AIContext> disableFrameDeduplication() {
+        var newAIContext = currentState().withFrameDeduplication(Optional.empty());
         return effects()
             .updateState(newAIContext)
             .thenReply(newAIContext);
@@ -0,0 +1,156 @@
+package shoppingcart.application;
+
+import akka.stream.Attributes;
+import akka.stream.FlowShape;
+import akka.stream.Inlet;
+import akka.stream.Outlet;
+import akka.stream.stage.AbstractInHandler;
+import akka.stream.stage.AbstractOutHandler;
+import akka.stream.stage.GraphStage;
+import akka.stream.stage.GraphStageLogic;
+import akka.stream.stage.TimerGraphStageLogic;
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import shoppingcart.video.Ack;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+
+/**
+ * The compact ack mode: status acks are not sent and consecutive content deltas are merged into one delta, so that a
+ * client gets one ack per burst of model text instead of one per Gemini fragment.
+ * <p>
+ * A merged delta is emitted when its time window has passed since its first delta, when it reaches the max size, or
+ * when any other ack arrives, which keeps the order of the text relative to turn complete, tool call and error acks.
+ */
+public final class AckCoalescing extends GraphStage<FlowShape<Ack, Ack>> {
+
+  private static final Logger logger = LoggerFactory.getLogger(AckCoalescing.class);
+
+  /**
+   * @param compact Whether status acks are suppressed and content deltas coalesced
+   * @param coalesceWindow How long to wait for more text after the first content delta of a merged delta
+   * @param coalesceMaxChars A merged delta is emitted as soon as it contains at least this many characters
+   */
+  public record Settings(boolean compact, Duration coalesceWindow, int coalesceMaxChars) {
+    public Settings {
+      if (coalesceMaxChars <= 0) throw new IllegalArgumentException("coalesce-max-chars must be greater than zero");
+    }
+
+    public static Settings fromConfig(Config config) {
+      return new Settings(
+          config.getBoolean("compact"),
+          config.getDuration("coalesce-window"),
+          config.getInt("coalesce-max-chars"));
+    }
+  }
+
+  private final Settings settings;
+  private final String sessionDescription;
+
+  public final Inlet<Ack> in = Inlet.create("AckCoalescing.in");
+  public final Outlet<Ack> out = Outlet.create("AckCoalescing.out");
+  private final FlowShape<Ack, Ack> shape = FlowShape.of(in, out);
+
+  public AckCoalescing(Settings settings, String sessionDescription) {
+    this.settings = settings;
+    this.sessionDescription = sessionDescription;
+  }
+
+  @Override
+  public FlowShape<Ack, Ack> shape() {
+    return shape;
+  }
+
+  @Override
+  public GraphStageLogic createLogic(Attributes inheritedAttributes) {
+    return new TimerGraphStageLogic(shape) {
+      private final ArrayDeque<Ack> ready = new ArrayDeque<>();
+      private StringBuilder text = null;
+
+      private long acksIn = 0;
+      private long acksOut = 0;
+
+      {
+        setHandler(in, new AbstractInHandler() {
+          @Override
+          public void onPush() {
+            var ack = grab(in);
+            acksIn++;
+            switch (ack.getKindCase()) {
+              case STATUS -> {}
+              case CONTENT_DELTA -> {
+                if (text == null) {
+                  text = new StringBuilder();
+                  if (!settings.coalesceWindow().isZero()) scheduleOnce("window", settings.coalesceWindow());
+                }
+                text.append(ack.getContentDelta().getText());
+                if (text.length() >= settings.coalesceMaxChars() || settings.coalesceWindow().isZero()) flush();
+              }
+              default -> {
+                flush();
+                ready.add(ack);
+              }
+            }
+            emitReady();
+            pullIfIdle();
+          }
+
+          @Override
+          public void onUpstreamFinish() {
+            flush();
+            emitReady();
+          }
+        });
+
+        setHandler(out, new AbstractOutHandler() {
+          @Override
+          public void onPull() {
+            emitReady();
+            pullIfIdle();
+          }
+        });
+      }
+
+      @Override
+      public void preStart() {
+        pull(in);
+      }
+
+      @Override
+      public void onTimer(Object timerKey) {
+        flush();
+        emitReady();
+        pullIfIdle();
+      }
+
+      @Override
+      public void postStop() {
+        if (acksIn > 0) {
+          logger.info("Acks for {}: {} compacted to {}", sessionDescription, acksIn, acksOut);
+        }
+      }
+
+      private void flush() {
+        if (text == null) return;
+        cancelTimer("window");
+        if (!text.isEmpty()) ready.add(Acks.contentDelta(text.toString()));
+        text = null;
+      }
+
+      private void emitReady() {
+        if (!ready.isEmpty() && isAvailable(out)) {
+          push(out, ready.poll());
+          acksOut++;
+        }
+        if (isClosed(in) && ready.isEmpty() && text == null) completeStage();
+      }
+
+      private void pullIfIdle() {
+        // keep pulling while a delta is being merged, but not while there are acks waiting for demand
+        if (ready.isEmpty() && !hasBeenPulled(in) && !isClosed(in)) pull(in);
+      }
+    };
+  }
+}
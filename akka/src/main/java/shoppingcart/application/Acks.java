@@ -0,0 +1,77 @@
+package shoppingcart.application;
+
+import akka.NotUsed;
+import akka.stream.javadsl.Flow;
+import shoppingcart.video.Ack;
+import shoppingcart.video.ContentDelta;
+import shoppingcart.video.Status;
+import shoppingcart.video.StreamError;
+import shoppingcart.video.ToolCall;
+import shoppingcart.video.TurnComplete;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The typed acks of a video stream. Each ack also has a human readable message, the same text as before the acks
+ * were typed, for clients that only show the message.
+ */
+public final class Acks {
+
+  private Acks() {}
+
+  public static Ack contentDelta(String text) {
+    return Ack.newBuilder()
+        .setMessage("Content: " + text)
+        .setContentDelta(ContentDelta.newBuilder().setText(text))
+        .build();
+  }
+
+  public static Ack turnComplete(boolean interrupted) {
+    return Ack.newBuilder()
+        .setMessage(interrupted ? "Turn interrupted" : "Turn complete")
+        .setTurnComplete(TurnComplete.newBuilder().setInterrupted(interrupted))
+        .build();
+  }
+
+  public static Ack toolCall(List<String> functionNames, List<String> ids) {
+    return Ack.newBuilder()
+        .setMessage("Tool call received")
+        .setToolCall(ToolCall.newBuilder().addAllFunctionNames(functionNames).addAllIds(ids))
+        .build();
+  }
+
+  public static Ack toolCallCancellation(List<String> ids) {
+    return Ack.newBuilder()
+        .setMessage("Tool call cancellation received")
+        .setToolCall(ToolCall.newBuilder().setCancellation(true).addAllIds(ids))
+        .build();
+  }
+
+  public static Ack status(Status.Code code, String message) {
+    return Ack.newBuilder()
+        .setMessage(message)
+        .setStatus(Status.newBuilder().setCode(code))
+        .build();
+  }
+
+  public static Ack error(String message) {
+    return Ack.newBuilder()
+        .setMessage("Error: " + message)
+        .setError(StreamError.newBuilder().setMessage(message))
+        .build();
+  }
+
+  /**
+   * Sets the sequence number and the server time of each ack, the sequence numbers of a stream start at 1.
+   */
+  public static Flow<Ack, Ack, NotUsed> numbered() {
+    return Flow.<Ack, Ack, NotUsed>fromMaterializer((materializer, attributes) -> {
+      var seq = new AtomicLong();
+      return Flow.<Ack>create().map(ack -> ack.toBuilder()
+          .setSeq(seq.incrementAndGet())
+          .setServerTimeMillis(System.currentTimeMillis())
+          .build());
+    }).mapMaterializedValue(ignored -> NotUsed.getInstance());
+  }
+}
@@ -0,0 +1,167 @@
+package shoppingcart.application;
+
+import akka.stream.Attributes;
+import akka.stream.FlowShape;
+import akka.stream.Inlet;
+import akka.stream.Outlet;
+import akka.stream.stage.AbstractInHandler;
+import akka.stream.stage.AbstractOutHandler;
+import akka.stream.stage.GraphStage;
+import akka.stream.stage.GraphStageLogic;
+import akka.stream.stage.TimerGraphStageLogic;
+import com.google.protobuf.ByteString;
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import shoppingcart.video.Chunk;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+
+/**
+ * Merges consecutive raw PCM audio chunks into one chunk, so that they are sent to Gemini as one realtime input
+ * message instead of one websocket message each.
+ * <p>
+ * A batch is emitted when its time window has passed since its first chunk, when it reaches the max size, or when
+ * a chunk of another type (or another PCM format) arrives. Chunks that are not PCM audio pass through unchanged and
+ * keep their position relative to the batches.
+ */
+public final class AudioChunkBatching extends GraphStage<FlowShape<ReceivedChunk, ReceivedChunk>> {
+
+  private static final Logger logger = LoggerFactory.getLogger(AudioChunkBatching.class);
+
+  /**
+   * @param window How long to wait for more chunks after the first chunk of a batch
+   * @param maxBytes A batch is emitted as soon as it contains at least this many bytes
+   */
+  public record Settings(Duration window, int maxBytes) {
+    public Settings {
+      if (maxBytes <= 0) throw new IllegalArgumentException("audio-batch-max-bytes must be greater than zero");
+    }
+
+    public boolean enabled() {
+      return !window.isZero();
+    }
+
+    public static Settings fromConfig(Config config) {
+      return new Settings(config.getDuration("audio-batch-window"), config.getInt("audio-batch-max-bytes"));
+    }
+  }
+
+  private final Settings settings;
+  private final String sessionDescription;
+  private final VideoPipelineMetrics metrics;
+
+  public final Inlet<ReceivedChunk> in = Inlet.create("AudioChunkBatching.in");
+  public final Outlet<ReceivedChunk> out = Outlet.create("AudioChunkBatching.out");
+  private final FlowShape<ReceivedChunk, ReceivedChunk> shape = FlowShape.of(in, out);
+
+  public AudioChunkBatching(Settings settings, String sessionDescription, VideoPipelineMetrics metrics) {
+    this.settings = settings;
+    this.sessionDescription = sessionDescription;
+    this.metrics = metrics;
+  }
+
+  @Override
+  public FlowShape<ReceivedChunk, ReceivedChunk> shape() {
+    return shape;
+  }
+
+  private static boolean isPcm(ReceivedChunk chunk) {
+    return chunk.mimeType().startsWith("audio/pcm");
+  }
+
+  @Override
+  public GraphStageLogic createLogic(Attributes inheritedAttributes) {
+    return new TimerGraphStageLogic(shape) {
+      private final ArrayDeque<ReceivedChunk> ready = new ArrayDeque<>();
+      private String batchMimeType = null;
+      private ByteString batch = ByteString.EMPTY;
+      // of the first chunk in the batch, so that the batch latency includes the wait for the later chunks
+      private long batchReceivedNanos;
+
+      private long chunksIn = 0;
+      private long batchesOut = 0;
+
+      {
+        setHandler(in, new AbstractInHandler() {
+          @Override
+          public void onPush() {
+            var chunk = grab(in);
+            if (isPcm(chunk)) {
+              chunksIn++;
+              metrics.audioChunksBatched.increment();
+              if (batchMimeType != null && !batchMimeType.equals(chunk.mimeType())) flush();
+              if (batchMimeType == null) {
+                batchMimeType = chunk.mimeType();
+                batchReceivedNanos = chunk.receivedNanos();
+                scheduleOnce("window", settings.window());
+              }
+              // rope concatenation, the bytes are copied only once when the batch is serialized
+              batch = batch.concat(chunk.payload());
+              if (batch.size() >= settings.maxBytes()) flush();
+            } else {
+              flush();
+              ready.add(chunk);
+            }
+            emitReady();
+            pullIfIdle();
+          }
+
+          @Override
+          public void onUpstreamFinish() {
+            flush();
+            emitReady();
+          }
+        });
+
+        setHandler(out, new AbstractOutHandler() {
+          @Override
+          public void onPull() {
+            emitReady();
+            pullIfIdle();
+          }
+        });
+      }
+
+      @Override
+      public void preStart() {
+        pull(in);
+      }
+
+      @Override
+      public void onTimer(Object timerKey) {
+        flush();
+        emitReady();
+        pullIfIdle();
+      }
+
+      @Override
+      public void postStop() {
+        if (batchesOut > 0) {
+          logger.info("Audio for {} sent as {} batches of {} chunks", sessionDescription, batchesOut, chunksIn);
+        }
+      }
+
+      private void flush() {
+        if (batchMimeType == null) return;
+        cancelTimer("window");
+        ready.add(new ReceivedChunk(Chunk.newBuilder().setMimeType(batchMimeType).setPayload(batch).build(), batchReceivedNanos));
+        batchesOut++;
+        metrics.audioBatches.increment();
+        batchMimeType = null;
+        batch = ByteString.EMPTY;
+      }
+
+      private void emitReady() {
+        if (!ready.isEmpty() && isAvailable(out)) push(out, ready.poll());
+        if (isClosed(in) && ready.isEmpty() && batchMimeType == null) completeStage();
+      }
+
+      private void pullIfIdle() {
+        // keep pulling while a batch is filling up, but not while there are completed chunks waiting for demand
+        if (ready.isEmpty() && !hasBeenPulled(in) && !isClosed(in)) pull(in);
+      }
+    };
+  }
+}
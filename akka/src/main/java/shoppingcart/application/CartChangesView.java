@@ -0,0 +1,81 @@
+package shoppingcart.application;
+
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.annotations.Consume;
+import akka.javasdk.annotations.Query;
+import akka.javasdk.annotations.Table;
+import akka.javasdk.view.TableUpdater;
+import akka.javasdk.view.View;
+import shoppingcart.domain.PersistedShoppingCartEvent;
+import shoppingcart.domain.ShoppingCart;
+import shoppingcart.domain.ShoppingCartEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The most recent changes of each cart with the sequence number of their event, streamed to the video sessions of the
+ * cart on whichever node they run.
+ */
+@ComponentId("cart-changes-view")
+public class CartChangesView extends View {
+
+  // changes kept per cart, a session not getting the updates of the cart for longer than this many changes misses some
+  public static final int CHANGES_PER_CART = 50;
+
+  /**
+   * One event of the cart, flattened for the view.
+   *
+   * @param type item-added, item-removed or checked-out
+   */
+  public record CartChange(long sequenceNumber, String type, String productId, String name, int quantity) {
+
+    static CartChange of(long sequenceNumber, ShoppingCartEvent event) {
+      return switch (event.event()) {
+        case ShoppingCartEvent.ItemAdded evt ->
+            new CartChange(sequenceNumber, "item-added", evt.item().productId(), evt.item().name(), evt.item().quantity());
+        case ShoppingCartEvent.ItemRemoved evt -> new CartChange(sequenceNumber, "item-removed", evt.productId(), "", 0);
+        case ShoppingCartEvent.CheckedOut evt -> new CartChange(sequenceNumber, "checked-out", "", "", 0);
+      };
+    }
+
+    public ShoppingCartEvent event() {
+      return switch (type) {
+        case "item-added" -> new ShoppingCartEvent.ItemAdded(new ShoppingCart.LineItem(productId, name, quantity));
+        case "item-removed" -> new ShoppingCartEvent.ItemRemoved(productId);
+        case "checked-out" -> new ShoppingCartEvent.CheckedOut();
+        default -> throw new IllegalStateException("Unknown cart change type: " + type);
+      };
+    }
+  }
+
+  /**
+   * @param changes oldest first
+   */
+  public record CartChangesRow(String cartId, List<CartChange> changes) {}
+
+  @Table("cart_changes")
+  @Consume.FromEventSourcedEntity(ShoppingCartEntity.class)
+  public static class CartChangesUpdater extends TableUpdater<CartChangesRow> {
+
+    public Effect<CartChangesRow> onEvent(PersistedShoppingCartEvent event) {
+      var previous = rowState() == null ? List.<CartChange>of() : rowState().changes();
+      // events of an entity are applied in order, so the next one follows the last one kept if the metadata lacks it
+      var sequenceNumber = updateContext().metadata().get("ce-sequence")
+          .map(Long::parseLong)
+          .orElseGet(() -> previous.isEmpty() ? 1L : previous.get(previous.size() - 1).sequenceNumber() + 1);
+      var changes = new ArrayList<CartChange>(CHANGES_PER_CART);
+      changes.addAll(previous.subList(Math.max(0, previous.size() - (CHANGES_PER_CART - 1)), previous.size()));
+      changes.add(CartChange.of(sequenceNumber, event.event()));
+      return effects().updateRow(new CartChangesRow(updateContext().eventSubject().orElse(""), changes));
+    }
+  }
+
+  /**
+   * The changes of the cart as they are now, then again on every further change.
+   */
+  @Query(value = "SELECT * FROM cart_changes WHERE cartId = :cartId", streamUpdates = true)
+  public QueryStreamEffect<CartChangesRow> streamChanges(String cartId) {
+    return queryStreamResult();
+  }
+}
@@ -0,0 +1,105 @@
+package shoppingcart.application;
+
+import akka.NotUsed;
+import akka.japi.Pair;
+import akka.stream.javadsl.Source;
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import shoppingcart.application.CartChangesView.CartChange;
+import shoppingcart.application.CartChangesView.CartChangesRow;
+import shoppingcart.domain.ShoppingCartEvent;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * The changes to a cart while a video session for it runs, so that they can be pushed into the session.
+ * <p>
+ * Every session has its own subscription to the {@link CartChangesView} row of its cart, which streams the changes to
+ * the node the session runs on, whichever node consumes the events of the cart. A row holds the most recent changes
+ * with the sequence number of their event, so a session subscribing after it read the cart skips the changes already
+ * in what it read, and gets those made in between. A session falling more than
+ * {@link CartChangesView#CHANGES_PER_CART} changes behind the view misses the older ones, which is logged.
+ */
+public final class CartSessions {
+
+  private static final Logger logger = LoggerFactory.getLogger(CartSessions.class);
+
+  /**
+   * @param maxBatchSize Cart events sent to Gemini as one update at most
+   * @param batchWindow Cart events within this time are sent to Gemini as one update
+   */
+  public record Settings(int maxBatchSize, Duration batchWindow) {
+    public Settings {
+      if (maxBatchSize <= 0) throw new IllegalArgumentException("max-batch-size must be greater than zero");
+    }
+
+    public static Settings fromConfig(Config config) {
+      return new Settings(config.getInt("max-batch-size"), config.getDuration("batch-window"));
+    }
+  }
+
+  private final Settings settings;
+  private final Function<String, Source<CartChangesRow, NotUsed>> changesOfCart;
+  private final AtomicInteger activeSessions = new AtomicInteger();
+
+  /**
+   * @param changesOfCart the row of the cart as it is and then on every change, from the {@link CartChangesView}
+   */
+  public CartSessions(Settings settings, Function<String, Source<CartChangesRow, NotUsed>> changesOfCart) {
+    this.settings = settings;
+    this.changesOfCart = changesOfCart;
+  }
+
+  public Settings settings() {
+    return settings;
+  }
+
+  /**
+   * The events of the cart after the cart as read, with the given sequence number, once it is known. Subscribes when
+   * the returned source is materialized, until it is cancelled.
+   */
+  public Source<ShoppingCartEvent, NotUsed> updatesAfter(String cartId, CompletionStage<Long> readSequenceNumber) {
+    return Source.completionStage(readSequenceNumber)
+        .flatMapConcat(read -> changesOfCart.apply(cartId)
+            .statefulMap(
+                () -> read,
+                (lastSeen, row) -> {
+                  var changes = changesAfter(row, lastSeen);
+                  if (!row.changes().isEmpty() && row.changes().get(0).sequenceNumber() > lastSeen + 1) {
+                    logger.warn("Session for cart id={} missed cart changes after sequence number {}, the view only has changes from {}",
+                        cartId, lastSeen, row.changes().get(0).sequenceNumber());
+                  }
+                  var newLastSeen = changes.isEmpty() ? lastSeen : changes.get(changes.size() - 1).sequenceNumber();
+                  return Pair.create(newLastSeen, changes);
+                },
+                lastSeen -> Optional.empty()))
+        .mapConcat(changes -> changes.stream().map(CartChange::event).toList())
+        .watchTermination((notUsed, termination) -> {
+          activeSessions.incrementAndGet();
+          termination.whenComplete((done, error) -> activeSessions.decrementAndGet());
+          return notUsed;
+        });
+  }
+
+  private static List<CartChange> changesAfter(CartChangesRow row, long sequenceNumber) {
+    var changes = new ArrayList<CartChange>();
+    for (var change : row.changes()) {
+      if (change.sequenceNumber() > sequenceNumber) changes.add(change);
+    }
+    return changes;
+  }
+
+  /**
+   * @return the number of sessions on this node receiving cart updates
+   */
+  public int activeSessions() {
+    return activeSessions.get();
+  }
+}
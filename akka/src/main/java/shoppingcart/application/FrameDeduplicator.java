@@ -0,0 +1,213 @@
+package shoppingcart.application;
+
+import akka.NotUsed;
+import akka.stream.javadsl.Flow;
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import shoppingcart.domain.AIContext.FrameDeduplication;
+import shoppingcart.video.Chunk;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Drops video frames that look the same as the last frame forwarded to the model. Frames are compared using a 64 bit
+ * difference hash (dHash) of a downsampled decode of the image, so small changes like sensor noise or
+ * re-compression artifacts do not count as a change of scene.
+ * <p>
+ * Chunks that are not images, or that cannot be decoded, are always forwarded. Not thread safe, one instance
+ * per stream. In a stream the frames are decoded and hashed on a dispatcher for blocking work, and compared in the
+ * order they were received.
+ */
+public final class FrameDeduplicator {
+
+  private static final Logger logger = LoggerFactory.getLogger(FrameDeduplicator.class);
+
+  // the image is decoded with subsampling so that it is roughly this wide before hashing
+  private static final int DECODE_WIDTH = 64;
+
+  private final FrameDeduplication settings;
+  private final LongSupplier nanoClock;
+
+  private long lastForwardedHash;
+  private long lastForwardedNanos;
+  private boolean forwardedAny = false;
+
+  private long forwarded = 0;
+  private long dropped = 0;
+  private long keyframes = 0;
+
+  public FrameDeduplicator(FrameDeduplication settings, LongSupplier nanoClock) {
+    this.settings = settings;
+    this.nanoClock = nanoClock;
+  }
+
+  /**
+   * How the frames of a stream are hashed, the thresholds are in the {@link FrameDeduplication} of the AI context.
+   *
+   * @param parallelism Max frames being hashed at the same time per stream
+   * @param dispatcher Id of the dispatcher to decode and hash the frames on
+   */
+  public record Settings(int parallelism, String dispatcher) {
+    public Settings {
+      if (parallelism <= 0) throw new IllegalArgumentException("parallelism must be greater than zero");
+    }
+
+    public static Settings fromConfig(Config config) {
+      return new Settings(config.getInt("parallelism"), config.getString("dispatcher"));
+    }
+  }
+
+  private record HashedFrame(ReceivedChunk chunk, boolean isImage, Long hash) {}
+
+  /**
+   * A stage dropping duplicate frames, the drop counters are logged when the stream completes.
+   */
+  public static Flow<ReceivedChunk, ReceivedChunk, NotUsed> flow(FrameDeduplication deduplication, Settings settings,
+                                                                 String sessionDescription, VideoPipelineMetrics metrics) {
+    return Flow.<ReceivedChunk, ReceivedChunk, NotUsed>fromMaterializer((materializer, attributes) -> {
+      var executor = materializer.system().dispatchers().lookup(settings.dispatcher());
+      var deduplicator = new FrameDeduplicator(deduplication, System::nanoTime);
+      return Flow.<ReceivedChunk>create()
+          .mapAsync(settings.parallelism(), received -> {
+            if (!isImage(received.chunk())) return CompletableFuture.completedFuture(new HashedFrame(received, false, null));
+            return CompletableFuture.supplyAsync(() -> new HashedFrame(received, true, dHash(received.chunk())), executor);
+          })
+          .filter(frame -> {
+            if (!frame.isImage() || deduplicator.shouldForward(frame.hash())) return true;
+            metrics.framesDeduplicated.increment();
+            return false;
+          })
+          .map(HashedFrame::chunk)
+          .watchTermination((notUsed, done) -> {
+            done.whenComplete((__, error) -> logger.info("Frame deduplication for {}: {}", sessionDescription, deduplicator));
+            return notUsed;
+          });
+    }).mapMaterializedValue(ignored -> NotUsed.getInstance());
+  }
+
+  public boolean shouldForward(Chunk chunk) {
+    if (!isImage(chunk)) return true;
+    return shouldForward(dHash(chunk));
+  }
+
+  /**
+   * @param hash the hash of an image frame, null if it could not be decoded
+   */
+  private boolean shouldForward(Long hash) {
+    if (hash == null) {
+      forwarded++;
+      return true;
+    }
+
+    var now = nanoClock.getAsLong();
+    if (!forwardedAny) {
+      return forward(hash, now);
+    } else if (now - lastForwardedNanos >= TimeUnit.SECONDS.toNanos(settings.keyframeIntervalSeconds())) {
+      keyframes++;
+      return forward(hash, now);
+    } else if (Long.bitCount(hash ^ lastForwardedHash) > settings.maxHammingDistance()) {
+      return forward(hash, now);
+    } else {
+      dropped++;
+      return false;
+    }
+  }
+
+  private boolean forward(long hash, long now) {
+    forwardedAny = true;
+    lastForwardedHash = hash;
+    lastForwardedNanos = now;
+    forwarded++;
+    return true;
+  }
+
+  public long forwarded() {
+    return forwarded;
+  }
+
+  public long dropped() {
+    return dropped;
+  }
+
+  public long keyframes() {
+    return keyframes;
+  }
+
+  @Override
+  public String toString() {
+    return "forwarded " + forwarded + " (" + keyframes + " forced keyframes), dropped " + dropped;
+  }
+
+  private static boolean isImage(Chunk chunk) {
+    return chunk.getMimeType().startsWith("image/");
+  }
+
+  /**
+   * @return the difference hash of the image or null if it could not be decoded
+   */
+  private static Long dHash(Chunk chunk) {
+    try {
+      var image = decodeDownsampled(chunk.getPayload().newInput());
+      return image == null ? null : dHash(image);
+    } catch (IOException | RuntimeException e) {
+      logger.debug("Could not decode {} frame for deduplication", chunk.getMimeType(), e);
+      return null;
+    }
+  }
+
+  private static BufferedImage decodeDownsampled(InputStream in) throws IOException {
+    // cached in memory, ImageIO.createImageInputStream would cache each frame in a temporary file
+    try (var imageIn = new MemoryCacheImageInputStream(in)) {
+      var readers = ImageIO.getImageReaders(imageIn);
+      if (!readers.hasNext()) return null;
+      var reader = readers.next();
+      try {
+        reader.setInput(imageIn, true, true);
+        var subsampling = Math.max(1, reader.getWidth(0) / DECODE_WIDTH);
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        return reader.read(0, param);
+      } finally {
+        reader.dispose();
+      }
+    }
+  }
+
+  /**
+   * Average luminance over a 9x8 grid, each bit is whether a cell is brighter than its right neighbour.
+   */
+  static long dHash(BufferedImage image) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    var luminance = new long[8][9];
+    var counts = new int[8][9];
+    for (int y = 0; y < height; y++) {
+      int row = y * 8 / height;
+      for (int x = 0; x < width; x++) {
+        int column = x * 9 / width;
+        int rgb = image.getRGB(x, y);
+        luminance[row][column] += (299L * ((rgb >> 16) & 0xFF) + 587L * ((rgb >> 8) & 0xFF) + 114L * (rgb & 0xFF));
+        counts[row][column]++;
+      }
+    }
+    long hash = 0;
+    for (int row = 0; row < 8; row++) {
+      for (int column = 0; column < 8; column++) {
+        // compare averages without dividing, cells can differ in pixel count
+        long left = luminance[row][column] * Math.max(1, counts[row][column + 1]);
+        long right = luminance[row][column + 1] * Math.max(1, counts[row][column]);
+        hash = (hash << 1) | (left > right ? 1 : 0);
+      }
+    }
+    return hash;
+  }
+}
@@ -0,0 +1,167 @@
+package shoppingcart.application;
+
+import akka.NotUsed;
+import akka.stream.javadsl.Flow;
+import com.google.protobuf.ByteString;
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import shoppingcart.video.Chunk;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Downscales JPEG video frames larger than a max dimension and re-encodes them, so that no bytes (and input tokens)
+ * are spent on a resolution the model does not use.
+ * <p>
+ * Decoding and encoding is blocking CPU work, it is done on a dedicated dispatcher with bounded parallelism, in the
+ * order the frames were received. Frames within the max dimension, frames that can not be decoded and frames that
+ * would not get smaller are passed on unchanged.
+ */
+public final class FrameDownscaling {
+
+  private static final Logger logger = LoggerFactory.getLogger(FrameDownscaling.class);
+
+  /**
+   * @param enabled Whether frames are downscaled at all
+   * @param maxDimension Frames are scaled so that neither width nor height is larger than this
+   * @param jpegQuality Quality of the re-encoded frames, between 0 and 1
+   * @param parallelism Max frames being downscaled at the same time per stream
+   * @param dispatcher Id of the dispatcher to run the image work on
+   */
+  public record Settings(boolean enabled, int maxDimension, float jpegQuality, int parallelism, String dispatcher) {
+    public Settings {
+      if (maxDimension <= 0) throw new IllegalArgumentException("max-dimension must be greater than zero");
+      if (jpegQuality <= 0 || jpegQuality > 1) throw new IllegalArgumentException("jpeg-quality must be in (0, 1]");
+      if (parallelism <= 0) throw new IllegalArgumentException("parallelism must be greater than zero");
+    }
+
+    public static Settings fromConfig(Config config) {
+      return new Settings(
+          config.getBoolean("enabled"),
+          config.getInt("max-dimension"),
+          (float) config.getDouble("jpeg-quality"),
+          config.getInt("parallelism"),
+          config.getString("dispatcher"));
+    }
+  }
+
+  private FrameDownscaling() {}
+
+  /**
+   * A stage downscaling JPEG frames, the frames downscaled and bytes saved are logged when the stream completes.
+   */
+  public static Flow<ReceivedChunk, ReceivedChunk, NotUsed> flow(Settings settings, String sessionDescription,
+                                                                  VideoPipelineMetrics metrics) {
+    return Flow.<ReceivedChunk, ReceivedChunk, NotUsed>fromMaterializer((materializer, attributes) -> {
+      var executor = materializer.system().dispatchers().lookup(settings.dispatcher());
+      // updated from the dispatcher threads
+      var downscaled = new LongAdder();
+      var bytesSaved = new LongAdder();
+      return Flow.<ReceivedChunk>create()
+          .mapAsync(settings.parallelism(), received -> {
+            if (!received.mimeType().equals("image/jpeg")) return CompletableFuture.completedFuture(received);
+            return CompletableFuture.supplyAsync(() -> {
+              var chunk = received.chunk();
+              var result = downscale(chunk, settings);
+              if (result == chunk) return received;
+              var saved = chunk.getPayload().size() - result.getPayload().size();
+              if (saved > 0) {
+                downscaled.increment();
+                bytesSaved.add(saved);
+                metrics.framesDownscaled.increment();
+                metrics.downscalingBytesSaved.add(saved);
+              }
+              return new ReceivedChunk(result, received.receivedNanos());
+            }, executor);
+          })
+          .watchTermination((notUsed, done) -> {
+            done.whenComplete((__, error) -> {
+              if (downscaled.sum() > 0) {
+                logger.info("Frames for {}: downscaled {}, saved {} bytes", sessionDescription, downscaled.sum(), bytesSaved.sum());
+              }
+            });
+            return notUsed;
+          });
+    }).mapMaterializedValue(ignored -> NotUsed.getInstance());
+  }
+
+  /**
+   * @return the frame downscaled, or the given frame if it is small enough, could not be decoded or would grow
+   */
+  static Chunk downscale(Chunk chunk, Settings settings) {
+    try {
+      var image = decode(chunk.getPayload(), settings.maxDimension());
+      if (image == null) return chunk;
+      var payload = encode(image, settings.jpegQuality());
+      if (payload.size() >= chunk.getPayload().size()) return chunk;
+      return chunk.toBuilder().setPayload(payload).build();
+    } catch (IOException | RuntimeException e) {
+      logger.debug("Could not downscale {} frame", chunk.getMimeType(), e);
+      return chunk;
+    }
+  }
+
+  /**
+   * @return the image scaled to fit the max dimension, or null if it already fits
+   */
+  private static BufferedImage decode(ByteString jpeg, int maxDimension) throws IOException {
+    // cached in memory, ImageIO.createImageInputStream would cache each frame in a temporary file
+    try (var imageIn = new MemoryCacheImageInputStream(jpeg.newInput())) {
+      var readers = ImageIO.getImageReaders(imageIn);
+      if (!readers.hasNext()) throw new IOException("No image reader");
+      var reader = readers.next();
+      try {
+        reader.setInput(imageIn, true, true);
+        var width = reader.getWidth(0);
+        var height = reader.getHeight(0);
+        var scale = (double) maxDimension / Math.max(width, height);
+        if (scale >= 1) return null;
+        var targetWidth = Math.max(1, (int) Math.round(width * scale));
+        var targetHeight = Math.max(1, (int) Math.round(height * scale));
+        // skip decoding pixels that would be scaled away, subsampled no further than the target size
+        var subsampling = Math.max(1, (int) Math.floor(1 / scale));
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        var decoded = reader.read(0, param);
+
+        var scaled = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_RGB);
+        var graphics = scaled.createGraphics();
+        try {
+          graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+          graphics.drawImage(decoded, 0, 0, targetWidth, targetHeight, null);
+        } finally {
+          graphics.dispose();
+        }
+        return scaled;
+      } finally {
+        reader.dispose();
+      }
+    }
+  }
+
+  private static ByteString encode(BufferedImage image, float quality) throws IOException {
+    var writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+    var out = ByteString.newOutput();
+    try (var imageOut = new MemoryCacheImageOutputStream(out)) {
+      writer.setOutput(imageOut);
+      var param = writer.getDefaultWriteParam();
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      param.setCompressionQuality(quality);
+      writer.write(null, new IIOImage(image, null, null), param);
+    } finally {
+      writer.dispose();
+    }
+    return out.toByteString();
+  }
+}
@@ -0,0 +1,155 @@
+package shoppingcart.application;
+
+import akka.NotUsed;
+import akka.stream.javadsl.Flow;
+import com.typesafe.config.Config;
+import shoppingcart.video.Chunk;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Node local rate limits on the media received per AI context, shared by all the streams of the AI context on the
+ * node, so that one tenant can not take all of the node's bandwidth and Gemini quota.
+ * <p>
+ * Each AI context has a token bucket for video frames per second and one for bytes per second, filled at the rate
+ * and holding up to a burst. A video frame over the limits is dropped rather than slowing down the client, like
+ * frames the realtime input can not keep up with. A frame larger than the byte burst is let through when the bucket is
+ * full. Audio is never dropped, since a gap would corrupt it rather than lower its quality, its bytes are only counted
+ * so that video gives way to it.
+ */
+public final class IngestRateLimiter {
+
+  /**
+   * @param enabled Whether chunks are limited at all
+   * @param framesPerSecond Video frames let through per second and AI context
+   * @param framesBurst Video frames let through at once after a pause
+   * @param bytesPerSecond Media bytes let through per second and AI context
+   * @param bytesBurst Media bytes let through at once after a pause
+   */
+  public record Settings(boolean enabled, double framesPerSecond, long framesBurst, double bytesPerSecond, long bytesBurst) {
+    public Settings {
+      if (framesPerSecond <= 0 || bytesPerSecond <= 0) throw new IllegalArgumentException("Rates must be greater than zero");
+      if (framesBurst <= 0 || bytesBurst <= 0) throw new IllegalArgumentException("Bursts must be greater than zero");
+    }
+
+    public static Settings fromConfig(Config config) {
+      return new Settings(
+          config.getBoolean("enabled"),
+          config.getDouble("frames-per-second"),
+          config.getLong("frames-burst"),
+          config.getBytes("bytes-per-second"),
+          config.getBytes("bytes-burst"));
+    }
+  }
+
+  /**
+   * Tokens filled at a rate up to a capacity, taking more than is available leaves a debt that is filled first. The
+   * debt is at most the capacity, so that the chunks never dropped can not keep the others out for longer than it
+   * takes to fill the bucket twice.
+   */
+  static final class TokenBucket {
+    private final double perNano;
+    private final double capacity;
+    private double tokens;
+    private long updatedNanos;
+
+    TokenBucket(double perSecond, long capacity, long nowNanos) {
+      this.perNano = perSecond / 1_000_000_000.0;
+      this.capacity = capacity;
+      this.tokens = capacity;
+      this.updatedNanos = nowNanos;
+    }
+
+    void refill(long nowNanos) {
+      tokens = Math.min(capacity, tokens + (nowNanos - updatedNanos) * perNano);
+      updatedNanos = nowNanos;
+    }
+
+    boolean canTake(long amount) {
+      return tokens >= Math.min(amount, capacity);
+    }
+
+    void take(long amount) {
+      tokens = Math.max(-capacity, tokens - amount);
+    }
+  }
+
+  private final class Tenant {
+    private final TokenBucket frames;
+    private final TokenBucket bytes;
+    // guarded by the map entry
+    private int streams = 0;
+
+    Tenant(long nowNanos) {
+      this.frames = new TokenBucket(settings.framesPerSecond(), settings.framesBurst(), nowNanos);
+      this.bytes = new TokenBucket(settings.bytesPerSecond(), settings.bytesBurst(), nowNanos);
+    }
+
+    synchronized boolean tryAcquire(Chunk chunk, VideoPipelineMetrics metrics) {
+      var now = nanoClock.getAsLong();
+      var isFrame = chunk.getMimeType().startsWith("image/");
+      var size = chunk.getPayload().size();
+      bytes.refill(now);
+      if (chunk.getMimeType().startsWith("audio/")) {
+        bytes.take(size);
+        return true;
+      }
+      if (isFrame) {
+        frames.refill(now);
+        if (!frames.canTake(1)) {
+          metrics.framesRateLimited.increment();
+          return false;
+        }
+      }
+      if (!bytes.canTake(size)) {
+        metrics.chunksRateLimited.increment();
+        return false;
+      }
+      if (isFrame) frames.take(1);
+      bytes.take(size);
+      return true;
+    }
+  }
+
+  private final Settings settings;
+  private final LongSupplier nanoClock;
+  private final ConcurrentHashMap<String, Tenant> tenants = new ConcurrentHashMap<>();
+
+  public IngestRateLimiter(Settings settings, LongSupplier nanoClock) {
+    this.settings = settings;
+    this.nanoClock = nanoClock;
+  }
+
+  public Settings settings() {
+    return settings;
+  }
+
+  /**
+   * A stage dropping the video frames and other non audio chunks over the limits of the AI context. The limits of an
+   * AI context are kept while it has streams on this node.
+   */
+  public Flow<ReceivedChunk, ReceivedChunk, NotUsed> flow(String aiContextId, VideoPipelineMetrics metrics) {
+    return Flow.<ReceivedChunk, ReceivedChunk, NotUsed>fromMaterializer((materializer, attributes) -> {
+      var tenant = tenants.compute(aiContextId, (id, existing) -> {
+        var result = existing != null ? existing : new Tenant(nanoClock.getAsLong());
+        result.streams++;
+        return result;
+      });
+      return Flow.<ReceivedChunk>create()
+          .filter(received -> tenant.tryAcquire(received.chunk(), metrics))
+          .watchTermination((notUsed, done) -> {
+            done.whenComplete((__, error) ->
+                tenants.computeIfPresent(aiContextId, (id, existing) -> --existing.streams == 0 ? null : existing));
+            return notUsed;
+          });
+    }).mapMaterializedValue(ignored -> NotUsed.getInstance());
+  }
+
+  /**
+   * @return the number of AI contexts with streams on this node
+   */
+  public int tenants() {
+    return tenants.size();
+  }
+}
@@ -0,0 +1,195 @@
+package shoppingcart.application;
+
+import akka.stream.Attributes;
+import akka.stream.BufferOverflowException;
+import akka.stream.FlowShape;
+import akka.stream.Inlet;
+import akka.stream.Outlet;
+import akka.stream.stage.AbstractInHandler;
+import akka.stream.stage.AbstractOutHandler;
+import akka.stream.stage.GraphStage;
+import akka.stream.stage.GraphStageLogic;
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+
+/**
+ * Keeps realtime media flowing without letting it go stale when downstream (the Gemini websocket) backpressures.
+ * <p>
+ * Video frames are conflated: only the newest frame not yet sent downstream is kept, older ones are superseded and
+ * dropped. Audio, and any other non image chunks, is kept in order in a bounded buffer and always emitted before
+ * the pending video frame. What happens when the audio buffer is full is decided by the {@link OverflowStrategy}.
+ * <p>
+ * How long each chunk waited in the stage before being passed on, and the superseded and dropped chunks, are recorded
+ * in the {@link VideoPipelineMetrics}.
+ */
+public final class RealtimeMediaConflation extends GraphStage<FlowShape<ReceivedChunk, ReceivedChunk>> {
+
+  private static final Logger logger = LoggerFactory.getLogger(RealtimeMediaConflation.class);
+
+  public enum OverflowStrategy {
+    /** Drop the oldest buffered audio chunk to make room */
+    DROP_OLDEST,
+    /** Drop the incoming audio chunk */
+    DROP_NEWEST,
+    /** Stop pulling from upstream until there is room, this also holds back newer video frames */
+    BACKPRESSURE,
+    /** Fail the stream */
+    FAIL
+  }
+
+  /**
+   * @param conflateVideo If false, video frames are buffered in order together with the audio
+   * @param audioBufferSize Max number of buffered audio chunks
+   * @param overflowStrategy What to do when the audio buffer is full
+   */
+  public record Settings(boolean conflateVideo, int audioBufferSize, OverflowStrategy overflowStrategy) {
+    public Settings {
+      if (audioBufferSize <= 0) throw new IllegalArgumentException("audio-buffer-size must be greater than zero");
+    }
+
+    public static Settings fromConfig(Config config) {
+      return new Settings(
+          config.getBoolean("conflate-video"),
+          config.getInt("audio-buffer-size"),
+          OverflowStrategy.valueOf(config.getString("audio-overflow-strategy").toUpperCase().replace('-', '_')));
+    }
+  }
+
+  private final Settings settings;
+  private final String sessionDescription;
+  private final VideoPipelineMetrics metrics;
+
+  public final Inlet<ReceivedChunk> in = Inlet.create("RealtimeMediaConflation.in");
+  public final Outlet<ReceivedChunk> out = Outlet.create("RealtimeMediaConflation.out");
+  private final FlowShape<ReceivedChunk, ReceivedChunk> shape = FlowShape.of(in, out);
+
+  public RealtimeMediaConflation(Settings settings, String sessionDescription, VideoPipelineMetrics metrics) {
+    this.settings = settings;
+    this.sessionDescription = sessionDescription;
+    this.metrics = metrics;
+  }
+
+  @Override
+  public FlowShape<ReceivedChunk, ReceivedChunk> shape() {
+    return shape;
+  }
+
+  @Override
+  public GraphStageLogic createLogic(Attributes inheritedAttributes) {
+    return new GraphStageLogic(shape) {
+      private final ArrayDeque<ReceivedChunk> buffered = new ArrayDeque<>();
+      // when each buffered chunk was received, a ring in the same order as the buffer
+      private final long[] bufferedNanos = new long[settings.audioBufferSize()];
+      private int bufferedNanosHead = 0;
+      private ReceivedChunk latestFrame = null;
+      private long latestFrameNanos;
+
+      private long framesSuperseded = 0;
+      private long audioDropped = 0;
+
+      {
+        setHandler(in, new AbstractInHandler() {
+          @Override
+          public void onPush() {
+            var chunk = grab(in);
+            var now = System.nanoTime();
+            if (settings.conflateVideo() && chunk.mimeType().startsWith("image/")) {
+              if (latestFrame != null) {
+                framesSuperseded++;
+                metrics.framesSuperseded.increment();
+              }
+              latestFrame = chunk;
+              latestFrameNanos = now;
+            } else if (buffered.size() < settings.audioBufferSize()) {
+              addBuffered(chunk, now);
+            } else {
+              switch (settings.overflowStrategy()) {
+                case DROP_OLDEST -> {
+                  pollBuffered();
+                  addBuffered(chunk, now);
+                  audioDropped++;
+                  metrics.audioChunksDropped.increment();
+                }
+                case DROP_NEWEST -> {
+                  audioDropped++;
+                  metrics.audioChunksDropped.increment();
+                }
+                // the stage only pulls when there is room, so a full buffer cannot receive more
+                case BACKPRESSURE -> throw new IllegalStateException("Received a chunk while the audio buffer was full");
+                case FAIL -> {
+                  failStage(new BufferOverflowException(
+                      "Audio buffer of " + settings.audioBufferSize() + " chunks full for " + sessionDescription));
+                  return;
+                }
+              }
+            }
+
+            if (isAvailable(out)) emitNext();
+            pullIfRoom();
+          }
+
+          @Override
+          public void onUpstreamFinish() {
+            if (buffered.isEmpty() && latestFrame == null) completeStage();
+            // else completed once drained in onPull
+          }
+        });
+
+        setHandler(out, new AbstractOutHandler() {
+          @Override
+          public void onPull() {
+            emitNext();
+            if (isClosed(in)) {
+              if (buffered.isEmpty() && latestFrame == null) completeStage();
+            } else {
+              pullIfRoom();
+            }
+          }
+        });
+      }
+
+      @Override
+      public void preStart() {
+        pull(in);
+      }
+
+      @Override
+      public void postStop() {
+        if (framesSuperseded > 0 || audioDropped > 0) {
+          logger.info("Realtime media for {} under backpressure: {} video frames superseded, {} audio chunks dropped",
+              sessionDescription, framesSuperseded, audioDropped);
+        }
+      }
+
+      private void emitNext() {
+        if (!buffered.isEmpty()) {
+          var receivedNanos = bufferedNanos[bufferedNanosHead];
+          push(out, pollBuffered());
+          metrics.chunkQueueDelay.recordNanos(System.nanoTime() - receivedNanos);
+        } else if (latestFrame != null) {
+          push(out, latestFrame);
+          latestFrame = null;
+          metrics.chunkQueueDelay.recordNanos(System.nanoTime() - latestFrameNanos);
+        }
+      }
+
+      private void addBuffered(ReceivedChunk chunk, long receivedNanos) {
+        bufferedNanos[(bufferedNanosHead + buffered.size()) % bufferedNanos.length] = receivedNanos;
+        buffered.add(chunk);
+      }
+
+      private ReceivedChunk pollBuffered() {
+        bufferedNanosHead = (bufferedNanosHead + 1) % bufferedNanos.length;
+        return buffered.poll();
+      }
+
+      private void pullIfRoom() {
+        var full = settings.overflowStrategy() == OverflowStrategy.BACKPRESSURE && buffered.size() >= settings.audioBufferSize();
+        if (!full && !hasBeenPulled(in) && !isClosed(in)) pull(in);
+      }
+    };
+  }
+}
@@ -0,0 +1,25 @@
+package shoppingcart.application;
+
+import com.google.protobuf.ByteString;
+import shoppingcart.video.Chunk;
+
+/**
+ * A media chunk of a video stream with the time it was received by the service, carried through the stages dropping,
+ * replacing and batching chunks to measure the time to it being sent to Gemini.
+ *
+ * @param receivedNanos {@link System#nanoTime()} when the chunk was received, or for a batch its first chunk
+ */
+public record ReceivedChunk(Chunk chunk, long receivedNanos) {
+
+  public static ReceivedChunk receivedNow(Chunk chunk) {
+    return new ReceivedChunk(chunk, System.nanoTime());
+  }
+
+  public String mimeType() {
+    return chunk.getMimeType();
+  }
+
+  public ByteString payload() {
+    return chunk.getPayload();
+  }
+}
@@ -0,0 +1,169 @@
+package shoppingcart.application;
+
+import akka.NotUsed;
+import akka.japi.Pair;
+import akka.stream.javadsl.Source;
+import shoppingcart.application.ResponsesView.ResponseStoreRow;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Feed of the Gemini responses stored across all nodes, pushed to any number of subscribers.
+ * <p>
+ * Every subscriber has its own subscription to the stores of the {@link ResponsesView}, which streams each store
+ * again whenever a response is stored in it, on whichever node the subscriber is connected to. The responses new to
+ * the subscriber are told apart by the sequence number of their event in the store.
+ * <p>
+ * Every response has a {@link Position}, the time it was stored, its store and its sequence number, which is the same
+ * on every node and across restarts. A subscriber resuming after a position gets the responses stored after it, those
+ * the view still has: when a store has more responses after the position than the view keeps, the subscriber first
+ * gets a {@link Reset}, and should read the latest responses from the view. The view may stream the stores in another
+ * order than the responses were stored, so resuming may skip a response stored just before the position that the
+ * subscriber had not got yet.
+ */
+public final class ResponseFeed {
+
+  /**
+   * What a subscriber gets.
+   */
+  public sealed interface Event {}
+
+  public record Entry(Position position, String response) implements Event {}
+
+  /**
+   * The subscriber can not resume from the position it asked for, responses after it may have been missed.
+   */
+  public record Reset() implements Event {}
+
+  /**
+   * Where a response is in the feed, ordered by the time it was stored.
+   */
+  public record Position(Instant storedAt, String responseStoreId, long sequenceNumber) {
+
+    static final Comparator<Position> ORDER = Comparator.comparing(Position::storedAt)
+        .thenComparing(Position::responseStoreId)
+        .thenComparingLong(Position::sequenceNumber);
+
+    /**
+     * @return the id of the event for subscribers, to resume after it
+     */
+    public String eventId() {
+      return storedAt.getEpochSecond() + "." + storedAt.getNano() + ":" + sequenceNumber + ":" + responseStoreId;
+    }
+
+    /**
+     * @return the position of the event id, empty if it is not one
+     */
+    public static Optional<Position> fromEventId(String eventId) {
+      var parts = eventId.split(":", 3);
+      if (parts.length != 3) return Optional.empty();
+      var time = parts[0].split("\\.", 2);
+      try {
+        var storedAt = Instant.ofEpochSecond(Long.parseLong(time[0]), time.length == 2 ? Long.parseLong(time[1]) : 0);
+        return Optional.of(new Position(storedAt, parts[2], Long.parseLong(parts[1])));
+      } catch (RuntimeException e) {
+        return Optional.empty();
+      }
+    }
+  }
+
+  public record Stats(long sent, long subscribers, long resets) {}
+
+  private final Supplier<Source<ResponseStoreRow, NotUsed>> stores;
+  private final Supplier<Instant> clock;
+
+  private final LongAdder sent = new LongAdder();
+  private final AtomicInteger subscribers = new AtomicInteger();
+  private final LongAdder resets = new LongAdder();
+
+  /**
+   * @param stores every store of the {@link ResponsesView} as it is, then again on every response stored in it
+   */
+  public ResponseFeed(Supplier<Source<ResponseStoreRow, NotUsed>> stores, Supplier<Instant> clock) {
+    this.stores = stores;
+    this.clock = clock;
+  }
+
+  /**
+   * @param afterEventId resume after the response with this event id, or only new responses if empty
+   */
+  public Source<Event, NotUsed> subscribe(Optional<String> afterEventId) {
+    return Source.lazySource(() -> {
+          var after = afterEventId.map(Position::fromEventId);
+          // without a position to resume from, the responses stored from now on
+          var cutoff = after.flatMap(position -> position)
+              .orElseGet(() -> new Position(clock.get(), "", Long.MAX_VALUE));
+          var resetFirst = after.isPresent() && after.get().isEmpty();
+          return stores.get().statefulMap(
+              () -> new Subscriber(cutoff, after.isPresent(), resetFirst),
+              (subscriber, row) -> Pair.create(subscriber, subscriber.newEvents(row)),
+              subscriber -> Optional.empty());
+        })
+        .mapConcat(events -> events)
+        .map(event -> {
+          switch (event) {
+            case Entry entry -> sent.increment();
+            case Reset reset -> resets.increment();
+          }
+          return event;
+        })
+        .watchTermination((notUsed, termination) -> {
+          subscribers.incrementAndGet();
+          termination.whenComplete((done, error) -> subscribers.decrementAndGet());
+          return NotUsed.getInstance();
+        });
+  }
+
+  private static final class Subscriber {
+    private final Position cutoff;
+    private final boolean resuming;
+    private boolean resetFirst;
+    // newest sequence number seen per store
+    private final Map<String, Long> lastSeen = new HashMap<>();
+
+    Subscriber(Position cutoff, boolean resuming, boolean resetFirst) {
+      this.cutoff = cutoff;
+      this.resuming = resuming;
+      this.resetFirst = resetFirst;
+    }
+
+    List<Event> newEvents(ResponseStoreRow row) {
+      var events = new ArrayList<Event>();
+      if (resetFirst) {
+        events.add(new Reset());
+        resetFirst = false;
+      }
+      var responses = row.responses();
+      if (responses.isEmpty()) return events;
+      var last = lastSeen.get(row.responseStoreId());
+      var oldest = responses.get(responses.size() - 1);
+      var missed = last != null
+          ? oldest.sequenceNumber() > last + 1
+          : resuming && responses.size() == ResponsesView.RESPONSES_PER_STORE
+              && Position.ORDER.compare(new Position(oldest.storedAt(), row.responseStoreId(), oldest.sequenceNumber()), cutoff) > 0;
+      if (missed) events.add(new Reset());
+      // newest first in the view
+      for (int i = responses.size() - 1; i >= 0; i--) {
+        var response = responses.get(i);
+        var position = new Position(response.storedAt(), row.responseStoreId(), response.sequenceNumber());
+        var isNew = last != null ? response.sequenceNumber() > last : Position.ORDER.compare(position, cutoff) > 0;
+        if (isNew) events.add(new Entry(position, response.response()));
+      }
+      lastSeen.merge(row.responseStoreId(), responses.get(0).sequenceNumber(), Math::max);
+      return events;
+    }
+  }
+
+  public Stats stats() {
+    return new Stats(sent.sum(), subscribers.get(), resets.sum());
+  }
+}
@@ -4,34 +4,46 @@ import akka.Done;
 import akka.javasdk.annotations.ComponentId;
 import akka.javasdk.eventsourcedentity.EventSourcedEntity;
 import akka.javasdk.eventsourcedentity.EventSourcedEntityContext;
+import com.typesafe.config.Config;
 
+import shoppingcart.domain.PersistedResponseStore;
+import shoppingcart.domain.PersistedResponseStoreEvent;
 import shoppingcart.domain.ResponseStore;
 import shoppingcart.domain.ResponseStoreEvent;
 
-import java.util.ArrayList;
 
 @ComponentId("reponse-store")
-public class ResponseStoreEntity extends EventSourcedEntity<ResponseStore, ResponseStoreEvent> {
+public class ResponseStoreEntity extends EventSourcedEntity<PersistedResponseStore, PersistedResponseStoreEvent> {
 
-  public ResponseStoreEntity(EventSourcedEntityContext context) {
+  public ResponseStoreEntity(EventSourcedEntityContext context, Config config) {
     this.entityId = context.entityId();
+    this.capacity = config.getInt("app.response-store.capacity");
   }
 
   private final String entityId;
+  // responses kept, stores restored from a snapshot with another capacity are resized on the next response
+  private final int capacity;
+
+  /**
+   * Responses are stored per AI context and cart, so that concurrent sessions are spread over many entities.
+   */
+  public static String entityId(String aiContextId, String cartId) {
+    return aiContextId + ":" + cartId;
+  }
 
   @Override
-  public ResponseStore emptyState() {
-    return new ResponseStore(entityId, new ArrayList<>());
+  public PersistedResponseStore emptyState() {
+    return new PersistedResponseStore(ResponseStore.empty(entityId, capacity));
   }
 
   public Effect<Done> addResponse(String response) {
-    return effects().persist(new ResponseStoreEvent.AddReponse(response)).thenReply(newState -> Done.getInstance());
+    return effects().persist(PersistedResponseStoreEvent.of(new ResponseStoreEvent.AddReponse(response))).thenReply(newState -> Done.getInstance());
   }
 
   @Override
-  public ResponseStore applyEvent(ResponseStoreEvent event) {
-    return switch (event) {
-      case ResponseStoreEvent.AddReponse evt -> currentState().onAddResponse(evt); 
-    };
+  public PersistedResponseStore applyEvent(PersistedResponseStoreEvent event) {
+    return new PersistedResponseStore(switch (event.event()) {
+      case ResponseStoreEvent.AddReponse evt -> currentState().store().withCapacity(capacity).onAddResponse(evt);
+    });
   }
 }
@@ -0,0 +1,196 @@
+package shoppingcart.application;
+
+import akka.stream.Attributes;
+import akka.stream.FlowShape;
+import akka.stream.Inlet;
+import akka.stream.Outlet;
+import akka.stream.stage.AbstractInHandler;
+import akka.stream.stage.AbstractOutHandler;
+import akka.stream.stage.GraphStage;
+import akka.stream.stage.GraphStageLogic;
+import akka.stream.stage.TimerGraphStageLogic;
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import shoppingcart.geminilive.LiveProtocol.LiveServerContent;
+import shoppingcart.geminilive.LiveProtocol.LiveServerMessage;
+import shoppingcart.geminilive.LiveProtocol.Part;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Optional;
+
+/**
+ * Assembles the text fragments streamed by Gemini into whole responses, so that a model turn is stored as one
+ * response instead of one per fragment.
+ * <p>
+ * Every server message is passed on as is, and after the message completing a turn the assembled response is emitted.
+ * A turn is complete when the server signals turn complete or interrupted, or when it reaches the max size or max
+ * duration, in which case the rest of the turn is emitted as another response. When the server messages end, or fail,
+ * the text of a turn in progress is emitted as a response before the stage completes, or fails.
+ */
+public final class ResponseTurnAssembly extends GraphStage<FlowShape<LiveServerMessage, ResponseTurnAssembly.Output>> {
+
+  private static final Logger logger = LoggerFactory.getLogger(ResponseTurnAssembly.class);
+
+  /**
+   * @param maxChars A response is emitted as soon as it contains at least this many characters
+   * @param maxDuration A response is emitted at the latest this long after its first fragment
+   * @param maxInFlightWrites Max number of responses being stored at the same time for one stream
+   */
+  public record Settings(int maxChars, Duration maxDuration, int maxInFlightWrites) {
+    public Settings {
+      if (maxChars <= 0) throw new IllegalArgumentException("max-chars must be greater than zero");
+      if (maxInFlightWrites <= 0) throw new IllegalArgumentException("max-in-flight-writes must be greater than zero");
+    }
+
+    public static Settings fromConfig(Config config) {
+      return new Settings(
+          config.getInt("max-chars"),
+          config.getDuration("max-duration"),
+          config.getInt("max-in-flight-writes"));
+    }
+  }
+
+  public sealed interface Output {}
+
+  public record Received(LiveServerMessage message) implements Output {}
+
+  public record TurnAssembled(String response) implements Output {}
+
+  private final Settings settings;
+  private final String sessionDescription;
+  private final VideoPipelineMetrics metrics;
+
+  public final Inlet<LiveServerMessage> in = Inlet.create("ResponseTurnAssembly.in");
+  public final Outlet<Output> out = Outlet.create("ResponseTurnAssembly.out");
+  private final FlowShape<LiveServerMessage, Output> shape = FlowShape.of(in, out);
+
+  public ResponseTurnAssembly(Settings settings, String sessionDescription, VideoPipelineMetrics metrics) {
+    this.settings = settings;
+    this.sessionDescription = sessionDescription;
+    this.metrics = metrics;
+  }
+
+  @Override
+  public FlowShape<LiveServerMessage, Output> shape() {
+    return shape;
+  }
+
+  /**
+   * @return the text of all text parts of the server content in the message, if any
+   */
+  static Optional<String> text(LiveServerMessage message) {
+    return message.serverContent()
+        .flatMap(LiveServerContent::modelTurn)
+        .map(content -> {
+          var text = new StringBuilder();
+          for (Part part : content.parts()) {
+            part.text().ifPresent(text::append);
+          }
+          return text.toString();
+        })
+        .filter(text -> !text.isEmpty());
+  }
+
+  private static boolean endsTurn(LiveServerMessage message) {
+    return message.serverContent()
+        .map(content -> content.turnComplete().orElse(false) || content.interrupted().orElse(false))
+        .orElse(false);
+  }
+
+  @Override
+  public GraphStageLogic createLogic(Attributes inheritedAttributes) {
+    return new TimerGraphStageLogic(shape) {
+      private final ArrayDeque<Output> ready = new ArrayDeque<>();
+      private final StringBuilder turn = new StringBuilder();
+      // failed after the messages received and the turn in progress are emitted
+      private Throwable failure = null;
+
+      private long fragmentsIn = 0;
+      private long responsesOut = 0;
+
+      {
+        setHandler(in, new AbstractInHandler() {
+          @Override
+          public void onPush() {
+            var message = grab(in);
+            ready.add(new Received(message));
+            text(message).ifPresent(text -> {
+              fragmentsIn++;
+              metrics.responseFragments.increment();
+              if (turn.isEmpty()) scheduleOnce("max-duration", settings.maxDuration());
+              turn.append(text);
+            });
+            if (endsTurn(message) || turn.length() >= settings.maxChars()) flush();
+            emitReady();
+            pullIfIdle();
+          }
+
+          @Override
+          public void onUpstreamFinish() {
+            flush();
+            emitReady();
+          }
+
+          @Override
+          public void onUpstreamFailure(Throwable ex) {
+            failure = ex;
+            flush();
+            emitReady();
+          }
+        });
+
+        setHandler(out, new AbstractOutHandler() {
+          @Override
+          public void onPull() {
+            emitReady();
+            pullIfIdle();
+          }
+        });
+      }
+
+      @Override
+      public void preStart() {
+        pull(in);
+      }
+
+      @Override
+      public void onTimer(Object timerKey) {
+        flush();
+        emitReady();
+        pullIfIdle();
+      }
+
+      @Override
+      public void postStop() {
+        if (fragmentsIn > 0) {
+          logger.info("Gemini responses for {} assembled into {} responses from {} fragments",
+              sessionDescription, responsesOut, fragmentsIn);
+        }
+      }
+
+      private void flush() {
+        if (turn.isEmpty()) return;
+        cancelTimer("max-duration");
+        ready.add(new TurnAssembled(turn.toString()));
+        responsesOut++;
+        metrics.responsesAssembled.increment();
+        turn.setLength(0);
+      }
+
+      private void emitReady() {
+        if (!ready.isEmpty() && isAvailable(out)) push(out, ready.poll());
+        if (isClosed(in) && ready.isEmpty() && turn.isEmpty()) {
+          if (failure != null) failStage(failure);
+          else completeStage();
+        }
+      }
+
+      private void pullIfIdle() {
+        // a turn in progress does not hold back the messages, only wait for demand for those already received
+        if (ready.isEmpty() && !hasBeenPulled(in) && !isClosed(in)) pull(in);
+      }
+    };
+  }
+}
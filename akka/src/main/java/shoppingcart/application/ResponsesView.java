@@ -0,0 +1,109 @@
+package shoppingcart.application;
+
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.annotations.Consume;
+import akka.javasdk.annotations.Query;
+import akka.javasdk.annotations.Table;
+import akka.javasdk.view.TableUpdater;
+import akka.javasdk.view.View;
+import shoppingcart.domain.PersistedResponseStoreEvent;
+import shoppingcart.domain.ResponseStoreEvent;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The most recent responses across all response stores, one row per store with its latest responses, each with the
+ * time it was stored.
+ */
+@ComponentId("responses-view")
+public class ResponsesView extends View {
+
+  // responses kept per store in the view, and so the max number of latest responses that can be read across all
+  // stores, as they may all be from one session
+  public static final int RESPONSES_PER_STORE = 20;
+
+  /**
+   * @param sequenceNumber of the event of the response in its response store
+   */
+  public record StoredResponse(String response, Instant storedAt, long sequenceNumber) {}
+
+  /**
+   * @param responses newest first
+   * @param updatedAt when the newest response was stored
+   */
+  public record ResponseStoreRow(String responseStoreId, List<StoredResponse> responses, Instant updatedAt) {}
+
+  public record ResponseStoreRows(List<ResponseStoreRow> stores) {}
+
+  @Table("responses")
+  @Consume.FromEventSourcedEntity(ResponseStoreEntity.class)
+  public static class ResponsesUpdater extends TableUpdater<ResponseStoreRow> {
+
+    public Effect<ResponseStoreRow> onEvent(PersistedResponseStoreEvent event) {
+      return switch (event.event()) {
+        case ResponseStoreEvent.AddReponse evt -> {
+          var storedAt = eventTime();
+          // events of an entity are applied in order, so the next one follows the newest one kept if the metadata lacks it
+          var sequenceNumber = updateContext().metadata().get("ce-sequence")
+              .map(Long::parseLong)
+              .orElseGet(() -> rowState() == null || rowState().responses().isEmpty()
+                  ? 1L : rowState().responses().get(0).sequenceNumber() + 1);
+          var responses = new ArrayList<StoredResponse>(RESPONSES_PER_STORE);
+          responses.add(new StoredResponse(evt.response(), storedAt, sequenceNumber));
+          if (rowState() != null) {
+            var previous = rowState().responses();
+            responses.addAll(previous.subList(0, Math.min(previous.size(), RESPONSES_PER_STORE - 1)));
+          }
+          var responseStoreId = updateContext().eventSubject().orElse("");
+          yield effects().updateRow(new ResponseStoreRow(responseStoreId, responses, storedAt));
+        }
+      };
+    }
+
+    private Instant eventTime() {
+      return updateContext().metadata().asCloudEvent().time().map(ZonedDateTime::toInstant).orElseGet(Instant::now);
+    }
+  }
+
+  @Query("SELECT * AS stores FROM responses ORDER BY updatedAt DESC LIMIT :limit")
+  public QueryEffect<ResponseStoreRows> getRecentlyUpdated(int limit) {
+    return queryResult();
+  }
+
+  /**
+   * Every store as it is now, then again on every response stored, for the response feed.
+   */
+  @Query(value = "SELECT * FROM responses", streamUpdates = true)
+  public QueryStreamEffect<ResponseStoreRow> streamStores() {
+    return queryStreamResult();
+  }
+
+  /**
+   * The newest responses of the given stores, merged by the time they were stored.
+   */
+  public static List<String> newestFirst(List<ResponseStoreRow> stores, int limit) {
+    if (limit < 0) throw new IllegalArgumentException("limit must not be negative");
+    record Cursor(List<StoredResponse> responses, int index) {
+      StoredResponse current() {
+        return responses.get(index);
+      }
+    }
+    var cursors = new PriorityQueue<Cursor>(
+        Comparator.comparing((Cursor cursor) -> cursor.current().storedAt()).reversed());
+    for (var store : stores) {
+      if (!store.responses().isEmpty()) cursors.add(new Cursor(store.responses(), 0));
+    }
+    var result = new ArrayList<String>(Math.min(limit, stores.size() * RESPONSES_PER_STORE));
+    while (result.size() < limit && !cursors.isEmpty()) {
+      var cursor = cursors.poll();
+      result.add(cursor.current().response());
+      if (cursor.index() + 1 < cursor.responses().size()) cursors.add(new Cursor(cursor.responses(), cursor.index() + 1));
+    }
+    return result;
+  }
+}
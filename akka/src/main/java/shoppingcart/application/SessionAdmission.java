@@ -0,0 +1,135 @@
+package shoppingcart.application;
+
+import akka.Done;
+import akka.NotUsed;
+import akka.stream.javadsl.Source;
+import com.typesafe.config.Config;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Node wide limit on the number of video streams running at the same time, each holding a Gemini Live connection.
+ * <p>
+ * A stream starting when the node is full waits in a bounded queue for a running stream to end, in the order they
+ * arrived. When the queue is full, or a stream has waited for the max wait time, it is rejected right away with a
+ * {@link RejectedException} instead of piling up connections and memory.
+ */
+public final class SessionAdmission {
+
+  /**
+   * @param maxActive Max number of streams running on this node
+   * @param maxQueued Max number of streams waiting to run, further streams are rejected
+   * @param maxWait Max time a stream waits to run before it is rejected
+   */
+  public record Settings(int maxActive, int maxQueued, Duration maxWait) {
+    public Settings {
+      if (maxActive <= 0) throw new IllegalArgumentException("max-active must be greater than zero");
+      if (maxQueued < 0) throw new IllegalArgumentException("max-queued must not be negative");
+    }
+
+    public static Settings fromConfig(Config config) {
+      return new Settings(config.getInt("max-active"), config.getInt("max-queued"), config.getDuration("max-wait"));
+    }
+  }
+
+  public record Stats(int active, int queued, int maxActive, long admitted, long rejectedQueueFull, long rejectedMaxWait) {}
+
+  public static final class RejectedException extends RuntimeException {
+    RejectedException(String message) {
+      super(message, null, false, false);
+    }
+  }
+
+  private final Settings settings;
+
+  private final LongAdder admitted = new LongAdder();
+  private final LongAdder rejectedQueueFull = new LongAdder();
+  private final LongAdder rejectedMaxWait = new LongAdder();
+
+  // guarded by this
+  private int active = 0;
+  private final ArrayDeque<CompletableFuture<Done>> waiting = new ArrayDeque<>();
+
+  public SessionAdmission(Settings settings) {
+    this.settings = settings;
+  }
+
+  /**
+   * The given stream, run once admitted. Fails with a {@link RejectedException} if it is not admitted.
+   */
+  public <T> Source<T, NotUsed> admit(Source<T, NotUsed> stream) {
+    return Source.<T, NotUsed>fromMaterializer((materializer, attributes) -> {
+      var admission = acquire();
+      return Source.completionStage(admission)
+          .flatMapConcat(done -> stream)
+          .watchTermination((notUsed, termination) -> {
+            termination.whenComplete((__, error) -> release(admission));
+            return notUsed;
+          });
+    }).mapMaterializedValue(ignored -> NotUsed.getInstance());
+  }
+
+  // package private for testing
+  CompletableFuture<Done> acquire() {
+    CompletableFuture<Done> admission;
+    synchronized (this) {
+      if (active < settings.maxActive() && waiting.isEmpty()) {
+        active++;
+        admitted.increment();
+        return CompletableFuture.completedFuture(Done.getInstance());
+      }
+      if (waiting.size() >= settings.maxQueued()) {
+        rejectedQueueFull.increment();
+        return CompletableFuture.failedFuture(new RejectedException(
+            "Video stream limit of " + settings.maxActive() + " reached on this node, and " + settings.maxQueued() + " streams waiting"));
+      }
+      admission = new CompletableFuture<>();
+      waiting.add(admission);
+    }
+    CompletableFuture.delayedExecutor(settings.maxWait().toMillis(), TimeUnit.MILLISECONDS).execute(() -> {
+      if (admission.completeExceptionally(new RejectedException(
+          "Video stream waited " + settings.maxWait().toMillis() + " ms to run on this node"))) {
+        rejectedMaxWait.increment();
+        synchronized (this) {
+          waiting.remove(admission);
+        }
+      }
+    });
+    return admission;
+  }
+
+  /**
+   * Releases an admission, or gives up waiting for it, when the stream ends.
+   */
+  // package private for testing
+  void release(CompletableFuture<Done> admission) {
+    if (admission.completeExceptionally(new RejectedException("Video stream ended while waiting to run"))) {
+      synchronized (this) {
+        waiting.remove(admission);
+      }
+      return;
+    }
+    if (admission.isCompletedExceptionally()) return;
+    synchronized (this) {
+      CompletableFuture<Done> next;
+      while ((next = waiting.poll()) != null) {
+        // the slot is handed over, unless the stream just gave up waiting
+        if (next.complete(Done.getInstance())) {
+          admitted.increment();
+          return;
+        }
+      }
+      active--;
+    }
+  }
+
+  public Stats stats() {
+    synchronized (this) {
+      return new Stats(active, waiting.size(), settings.maxActive(), admitted.sum(), rejectedQueueFull.sum(), rejectedMaxWait.sum());
+    }
+  }
+}
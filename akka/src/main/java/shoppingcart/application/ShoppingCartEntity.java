@@ -6,32 +6,57 @@ import akka.javasdk.eventsourcedentity.EventSourcedEntity;
 import akka.javasdk.eventsourcedentity.EventSourcedEntityContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import shoppingcart.domain.LineItems;
+import shoppingcart.domain.PersistedShoppingCart;
+import shoppingcart.domain.PersistedShoppingCartEvent;
 import shoppingcart.domain.ShoppingCart;
 import shoppingcart.domain.ShoppingCart.LineItem;
 import shoppingcart.domain.ShoppingCartEvent;
 
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 
 
 @ComponentId("shopping-cart") // <2>
-public class ShoppingCartEntity extends EventSourcedEntity<ShoppingCart, ShoppingCartEvent> { // <1>
+public class ShoppingCartEntity extends EventSourcedEntity<PersistedShoppingCart, PersistedShoppingCartEvent> { // <1>
 
   private final String entityId;
 
   private static final Logger logger = LoggerFactory.getLogger(ShoppingCartEntity.class);
 
+  /**
+   * @param add items to add, quantities are added to those of items already in the cart
+   * @param remove product ids of items to remove
+   */
+  public record ItemChanges(List<LineItem> add, List<String> remove) {
+    public ItemChanges {
+      add = add == null ? List.of() : add;
+      remove = remove == null ? List.of() : remove;
+    }
+  }
+
+  /**
+   * @param sequenceNumber of the last event applied to the cart
+   */
+  public record VersionedCart(ShoppingCart cart, long sequenceNumber) {}
+
   public ShoppingCartEntity(EventSourcedEntityContext context) {
     this.entityId = context.entityId(); // <1>
   }
 
   @Override
-  public ShoppingCart emptyState() { // <2>
-    return new ShoppingCart(entityId, Collections.emptyList(), false);
+  public PersistedShoppingCart emptyState() { // <2>
+    return new PersistedShoppingCart(new ShoppingCart(entityId, LineItems.EMPTY, false));
+  }
+
+  private ShoppingCart cart() {
+    return currentState().cart();
   }
 
 
   public Effect<Done> addItem(LineItem item) {
-    if (currentState().checkedOut()) {
+    if (cart().checkedOut()) {
       logger.info("Cart id={} is already checked out.", entityId);
       return effects().error("Cart is already checked out.");
     }
@@ -43,17 +68,17 @@ public class ShoppingCartEntity extends EventSourcedEntity<ShoppingCart, Shoppin
     var event = new ShoppingCartEvent.ItemAdded(item); // <2>
 
     return effects()
-        .persist(event) // <3>
+        .persist(PersistedShoppingCartEvent.of(event)) // <3>
         .thenReply(newState -> Done.getInstance()); // <4>
   }
 
 
   public Effect<Done> removeItem(String productId) {
-    if (currentState().checkedOut()) {
+    if (cart().checkedOut()) {
       logger.info("Cart id={} is already checked out.", entityId);
       return effects().error("Cart is already checked out.");
     }
-    if (currentState().findItemByProductId(productId).isEmpty()) {
+    if (cart().findItemByProductId(productId).isEmpty()) {
       logger.info("Cannot remove item {} because it is not in the cart.", productId);
       return effects().error("Cannot remove item " + productId + " because it is not in the cart.");
     }
@@ -61,30 +86,71 @@ public class ShoppingCartEntity extends EventSourcedEntity<ShoppingCart, Shoppin
     var event = new ShoppingCartEvent.ItemRemoved(productId);
 
     return effects()
-        .persist(event)
+        .persist(PersistedShoppingCartEvent.of(event))
+        .thenReply(newState -> Done.getInstance());
+  }
+
+  /**
+   * Add and remove several items at once. Removals are applied before additions, all changes are validated
+   * together and either all or none of them are persisted.
+   */
+  public Effect<Done> updateItems(ItemChanges changes) {
+    if (cart().checkedOut()) {
+      logger.info("Cart id={} is already checked out.", entityId);
+      return effects().error("Cart is already checked out.");
+    }
+
+    var events = new ArrayList<ShoppingCartEvent>();
+    var removed = new HashSet<String>();
+    for (var productId : changes.remove()) {
+      if (cart().findItemByProductId(productId).isEmpty()) {
+        logger.info("Cannot remove item {} because it is not in the cart.", productId);
+        return effects().error("Cannot remove item " + productId + " because it is not in the cart.");
+      }
+      if (removed.add(productId)) events.add(new ShoppingCartEvent.ItemRemoved(productId));
+    }
+    for (var item : changes.add()) {
+      if (item.quantity() <= 0) {
+        logger.info("Quantity for item {} must be greater than zero.", item.productId());
+        return effects().error("Quantity for item " + item.productId() + " must be greater than zero.");
+      }
+      events.add(new ShoppingCartEvent.ItemAdded(item));
+    }
+
+    if (events.isEmpty()) return effects().reply(Done.getInstance());
+
+    return effects()
+        .persistAll(events.stream().map(PersistedShoppingCartEvent::of).toList())
         .thenReply(newState -> Done.getInstance());
   }
 
   public ReadOnlyEffect<ShoppingCart> getCart() {
-    return effects().reply(currentState()); // <3>
+    return effects().reply(cart()); // <3>
+  }
+
+  /**
+   * The cart with the sequence number it is at, to tell which cart events are already included in it.
+   */
+  public ReadOnlyEffect<VersionedCart> getVersionedCart() {
+    return effects().reply(new VersionedCart(cart(), commandContext().sequenceNumber()));
   }
 
   public Effect<Done> checkout() {
-    if (currentState().checkedOut())
+    if (cart().checkedOut())
       return effects().reply(Done.getInstance());
 
     return effects()
-        .persist(new ShoppingCartEvent.CheckedOut()) // <1>
+        .persist(PersistedShoppingCartEvent.of(new ShoppingCartEvent.CheckedOut())) // <1>
         .deleteEntity() // <2>
         .thenReply(newState -> Done.getInstance());
   }
 
   @Override
-  public ShoppingCart applyEvent(ShoppingCartEvent event) {
-    return switch (event) {
-      case ShoppingCartEvent.ItemAdded evt -> currentState().onItemAdded(evt); // <5>
-      case ShoppingCartEvent.ItemRemoved evt -> currentState().onItemRemoved(evt);
-      case ShoppingCartEvent.CheckedOut evt -> currentState().onCheckedOut();
-    };
+  public PersistedShoppingCart applyEvent(PersistedShoppingCartEvent event) {
+    return new PersistedShoppingCart(switch (event.event()) {
+      case ShoppingCartEvent.ItemAdded evt -> cart().onItemAdded(evt); // <5>
+      case ShoppingCartEvent.ItemRemoved evt -> cart().onItemRemoved(evt);
+      case ShoppingCartEvent.CheckedOut evt -> cart().onCheckedOut();
+    });
   }
 }
@@ -0,0 +1,100 @@
+package shoppingcart.application;
+
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.annotations.Consume;
+import akka.javasdk.annotations.Query;
+import akka.javasdk.annotations.Table;
+import akka.javasdk.view.TableUpdater;
+import akka.javasdk.view.View;
+import shoppingcart.domain.PersistedShoppingCartEvent;
+import shoppingcart.domain.ShoppingCartEvent;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Open shopping carts, for queries across carts that would otherwise need to read every cart entity. Carts are
+ * removed from the view when checked out.
+ */
+@ComponentId("shopping-carts-view")
+public class ShoppingCartsView extends View {
+
+  /**
+   * @param productIds sorted product ids of the items in the cart
+   * @param updatedAt time of the last change to the cart
+   */
+  public record CartRow(String cartId, List<String> productIds, Instant updatedAt) {}
+
+  /**
+   * @param nextPageToken pass to get the next page, if there are more carts
+   */
+  public record CartsPage(List<CartRow> carts, String nextPageToken, boolean hasMore) {}
+
+  /**
+   * @param pageToken empty for the first page
+   */
+  public record ProductQuery(String productId, String pageToken, int pageSize) {}
+
+  /**
+   * @param pageToken empty for the first page
+   */
+  public record NotUpdatedQuery(Instant updatedBefore, String pageToken, int pageSize) {}
+
+  @Table("carts")
+  @Consume.FromEventSourcedEntity(ShoppingCartEntity.class)
+  public static class CartsUpdater extends TableUpdater<CartRow> {
+
+    public Effect<CartRow> onEvent(PersistedShoppingCartEvent event) {
+      return switch (event.event()) {
+        case ShoppingCartEvent.ItemAdded evt -> {
+          var productIds = new TreeSet<>(productIds());
+          productIds.add(evt.item().productId());
+          yield effects().updateRow(new CartRow(cartId(), List.copyOf(productIds), eventTime()));
+        }
+        case ShoppingCartEvent.ItemRemoved evt -> {
+          var productIds = new TreeSet<>(productIds());
+          productIds.remove(evt.productId());
+          yield effects().updateRow(new CartRow(cartId(), List.copyOf(productIds), eventTime()));
+        }
+        case ShoppingCartEvent.CheckedOut evt -> effects().deleteRow();
+      };
+    }
+
+    private String cartId() {
+      return updateContext().eventSubject().orElse("");
+    }
+
+    private List<String> productIds() {
+      return rowState() == null ? List.of() : rowState().productIds();
+    }
+
+    private Instant eventTime() {
+      return updateContext().metadata().asCloudEvent().time().map(ZonedDateTime::toInstant).orElseGet(Instant::now);
+    }
+  }
+
+  @Query("""
+      SELECT * AS carts, next_page_token() AS nextPageToken, has_more() AS hasMore
+      FROM carts
+      WHERE :productId = ANY(productIds)
+      OFFSET page_token_offset(:pageToken)
+      LIMIT :pageSize
+      """)
+  public QueryEffect<CartsPage> getCartsWithProduct(ProductQuery query) {
+    return queryResult();
+  }
+
+  @Query("""
+      SELECT * AS carts, next_page_token() AS nextPageToken, has_more() AS hasMore
+      FROM carts
+      WHERE updatedAt < :updatedBefore
+      ORDER BY updatedAt
+      OFFSET page_token_offset(:pageToken)
+      LIMIT :pageSize
+      """)
+  public QueryEffect<CartsPage> getCartsNotUpdatedSince(NotUpdatedQuery query) {
+    return queryResult();
+  }
+}
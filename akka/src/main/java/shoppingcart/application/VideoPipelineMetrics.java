@@ -0,0 +1,326 @@
+package shoppingcart.application;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import shoppingcart.geminilive.LiveProtocol.LiveServerContent;
+import shoppingcart.geminilive.LiveProtocol.LiveServerMessage;
+import shoppingcart.geminilive.LiveProtocol.Part;
+import shoppingcart.geminilive.ReconnectingLiveSession;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Node local latency histograms and counters of the video streams, shared by all streams on the node.
+ * <p>
+ * Recording is allocation free and does not block, so that it can be done per chunk and per Gemini message: counters
+ * are {@link LongAdder}s and latencies are recorded into HDR histograms with microsecond resolution. Everything is
+ * cumulative since the node started, latencies are exposed as cumulative bucket counts so that the current
+ * distribution is what Prometheus computes from their rate over a window, and so that nodes can be aggregated.
+ */
+public final class VideoPipelineMetrics {
+
+  /**
+   * A latency distribution, values are recorded in microseconds with two significant digits and up to an hour.
+   */
+  public static final class Latency {
+    private static final long HIGHEST_MICROS = TimeUnit.HOURS.toMicros(1);
+
+    private final ConcurrentHistogram histogram = new ConcurrentHistogram(HIGHEST_MICROS, 2);
+    private final LongAdder sumMicros = new LongAdder();
+
+    public void recordNanos(long nanos) {
+      var micros = Math.min(Math.max(0, nanos / 1000), HIGHEST_MICROS);
+      histogram.recordValue(micros);
+      sumMicros.add(micros);
+    }
+
+    public Snapshot snapshot() {
+      return new Snapshot(histogram.copy(), sumMicros.sum());
+    }
+  }
+
+  public record Snapshot(Histogram histogram, long sumMicros) {
+    public long count() {
+      return histogram.getTotalCount();
+    }
+
+    public double sumSeconds() {
+      return sumMicros / 1_000_000.0;
+    }
+
+    /**
+     * @param quantile between 0 and 1
+     */
+    public double valueAtQuantileSeconds(double quantile) {
+      return histogram.getValueAtPercentile(quantile * 100) / 1_000_000.0;
+    }
+
+    /**
+     * @return the number of values recorded up to the given bound, within the precision of the histogram
+     */
+    public long countAtOrBelowSeconds(double seconds) {
+      var micros = (long) (seconds * 1_000_000);
+      if (micros >= histogram.getMaxValue()) return histogram.getTotalCount();
+      return histogram.getCountBetweenValues(0, micros);
+    }
+  }
+
+  /**
+   * Timings of one video stream session, feeding the node wide histograms.
+   */
+  public final class Session implements ReconnectingLiveSession.Listener {
+    private long startNanos;
+    private boolean setupSeen = false;
+    // the model turn is followed on the Gemini output, the turn requests come from the input side
+    private volatile long turnRequestedNanos = -1;
+    private long turnStartNanos = -1;
+    private boolean closed = false;
+
+    private Session() {}
+
+    /** The stream was materialized and is connecting to Gemini */
+    public void started() {
+      startNanos = System.nanoTime();
+      activeSessions.incrementAndGet();
+      sessionsStarted.increment();
+    }
+
+    /**
+     * Client content completing a user turn was passed on to Gemini, the model is expected to respond. Only the
+     * initial context completes a turn, turns the model starts on its own from the realtime media have no request.
+     */
+    public void turnRequested() {
+      turnRequestedNanos = System.nanoTime();
+    }
+
+    public void chunkReceived(int bytes) {
+      chunksReceived.increment();
+      bytesReceived.add(bytes);
+    }
+
+    /**
+     * @param receivedNanos when the chunk was received, or for a batch the first chunk in it
+     */
+    public void chunkSent(int bytes, long receivedNanos) {
+      chunksSent.increment();
+      bytesSent.add(bytes);
+      chunkIngestToSend.recordNanos(System.nanoTime() - receivedNanos);
+    }
+
+    public void serverMessage(LiveServerMessage message) {
+      var now = System.nanoTime();
+      if (!setupSeen && message.setupComplete().isPresent()) {
+        setupSeen = true;
+        sessionSetup.recordNanos(now - startNanos);
+      }
+      var content = message.serverContent();
+      if (content.isEmpty()) return;
+      if (turnStartNanos < 0 && hasText(content.get())) {
+        turnStartNanos = now;
+        var requested = turnRequestedNanos;
+        if (requested >= 0) {
+          timeToFirstToken.recordNanos(now - requested);
+          turnRequestedNanos = -1;
+        }
+      }
+      if (content.get().turnComplete().orElse(false) || content.get().interrupted().orElse(false)) {
+        if (turnStartNanos >= 0) turnDuration.recordNanos(now - turnStartNanos);
+        turnStartNanos = -1;
+      }
+    }
+
+    @Override
+    public void disconnected(int attempt, Throwable cause) {
+      reconnectAttempts.increment();
+    }
+
+    @Override
+    public void reconnected(long gapNanos, int dropped) {
+      reconnects.increment();
+      reconnectGap.recordNanos(gapNanos);
+      reconnectDropped.add(dropped);
+    }
+
+    @Override
+    public void gaveUp() {
+      reconnectsGivenUp.increment();
+    }
+
+    public void closed() {
+      if (!closed) {
+        closed = true;
+        activeSessions.decrementAndGet();
+      }
+    }
+
+    private static boolean hasText(LiveServerContent content) {
+      if (content.modelTurn().isEmpty()) return false;
+      for (Part part : content.modelTurn().get().parts()) {
+        if (part.text().isPresent() && !part.text().get().isEmpty()) return true;
+      }
+      return false;
+    }
+  }
+
+  private final AtomicInteger activeSessions = new AtomicInteger();
+  final LongAdder sessionsStarted = new LongAdder();
+
+  final Latency sessionSetup = new Latency();
+  final Latency chunkQueueDelay = new Latency();
+  final Latency chunkIngestToSend = new Latency();
+  final Latency timeToFirstToken = new Latency();
+  final Latency turnDuration = new Latency();
+  final Latency reconnectGap = new Latency();
+
+  final LongAdder chunksReceived = new LongAdder();
+  final LongAdder bytesReceived = new LongAdder();
+  final LongAdder chunksSent = new LongAdder();
+  final LongAdder bytesSent = new LongAdder();
+  final LongAdder framesDeduplicated = new LongAdder();
+  final LongAdder framesDownscaled = new LongAdder();
+  final LongAdder downscalingBytesSaved = new LongAdder();
+  final LongAdder framesSuperseded = new LongAdder();
+  final LongAdder framesRateLimited = new LongAdder();
+  final LongAdder chunksRateLimited = new LongAdder();
+  final LongAdder audioChunksDropped = new LongAdder();
+  final LongAdder audioChunksBatched = new LongAdder();
+  final LongAdder audioBatches = new LongAdder();
+  final LongAdder responseFragments = new LongAdder();
+  final LongAdder responsesAssembled = new LongAdder();
+  final LongAdder reconnectAttempts = new LongAdder();
+  final LongAdder reconnects = new LongAdder();
+  final LongAdder reconnectsGivenUp = new LongAdder();
+  final LongAdder reconnectDropped = new LongAdder();
+
+  /**
+   * @return the timings of a new video stream, {@link Session#started()} must be called when it is materialized
+   */
+  public Session newSession() {
+    return new Session();
+  }
+
+  public int activeSessions() {
+    return activeSessions.get();
+  }
+
+  public long sessionsStarted() {
+    return sessionsStarted.sum();
+  }
+
+  /** From connecting to Gemini, or borrowing a pooled session, to the setup complete message */
+  public Snapshot sessionSetup() {
+    return sessionSetup.snapshot();
+  }
+
+  /**
+   * From a chunk entering the realtime media queue, after rate limiting, deduplication, downscaling and audio
+   * batching, to it being passed on to the Gemini websocket
+   */
+  public Snapshot chunkQueueDelay() {
+    return chunkQueueDelay.snapshot();
+  }
+
+  /**
+   * From a chunk being received from the client to it being passed on to the Gemini websocket, through all the
+   * stages of the stream, for a batch of audio chunks from the first chunk in it
+   */
+  public Snapshot chunkIngestToSend() {
+    return chunkIngestToSend.snapshot();
+  }
+
+  /**
+   * From a completed user turn being sent to the first text of the model turn, in practice one per session for the
+   * initial context
+   */
+  public Snapshot timeToFirstToken() {
+    return timeToFirstToken.snapshot();
+  }
+
+  /** From the first text of a model turn to the turn being complete or interrupted */
+  public Snapshot turnDuration() {
+    return turnDuration.snapshot();
+  }
+
+  /** From a Gemini connection being lost to the first message over the new connection */
+  public Snapshot reconnectGap() {
+    return reconnectGap.snapshot();
+  }
+
+  public long chunksReceived() {
+    return chunksReceived.sum();
+  }
+
+  public long bytesReceived() {
+    return bytesReceived.sum();
+  }
+
+  public long chunksSent() {
+    return chunksSent.sum();
+  }
+
+  public long bytesSent() {
+    return bytesSent.sum();
+  }
+
+  public long framesDeduplicated() {
+    return framesDeduplicated.sum();
+  }
+
+  public long framesDownscaled() {
+    return framesDownscaled.sum();
+  }
+
+  public long downscalingBytesSaved() {
+    return downscalingBytesSaved.sum();
+  }
+
+  public long framesSuperseded() {
+    return framesSuperseded.sum();
+  }
+
+  public long framesRateLimited() {
+    return framesRateLimited.sum();
+  }
+
+  public long chunksRateLimited() {
+    return chunksRateLimited.sum();
+  }
+
+  public long audioChunksDropped() {
+    return audioChunksDropped.sum();
+  }
+
+  public long audioChunksBatched() {
+    return audioChunksBatched.sum();
+  }
+
+  public long audioBatches() {
+    return audioBatches.sum();
+  }
+
+  public long responseFragments() {
+    return responseFragments.sum();
+  }
+
+  public long responsesAssembled() {
+    return responsesAssembled.sum();
+  }
+
+  public long reconnectAttempts() {
+    return reconnectAttempts.sum();
+  }
+
+  public long reconnects() {
+    return reconnects.sum();
+  }
+
+  public long reconnectsGivenUp() {
+    return reconnectsGivenUp.sum();
+  }
+
+  public long reconnectDropped() {
+    return reconnectDropped.sum();
+  }
+}
@@ -1,5 +1,42 @@
 package shoppingcart.domain;
 
-public record AIContext(String context) {
-    
+import java.util.Optional;
+
+/**
+ * @param context Text given to the model as context at the start of each session
+ * @param frameDeduplication If present, video frames that are near duplicates of the previously forwarded frame are
+ *                           not sent to the model
+ */
+public record AIContext(String context, Optional<FrameDeduplication> frameDeduplication) {
+
+    /**
+     * @param maxHammingDistance Frames whose 64 bit perceptual hash differs in at most this many bits from the last
+     *                           forwarded frame are dropped, 0 only drops frames that hash identically
+     * @param keyframeIntervalSeconds A frame is always forwarded if no frame has been forwarded for this long
+     */
+    public record FrameDeduplication(int maxHammingDistance, int keyframeIntervalSeconds) {
+        public FrameDeduplication {
+            if (maxHammingDistance < 0 || maxHammingDistance > 64)
+                throw new IllegalArgumentException("maxHammingDistance must be between 0 and 64");
+            if (keyframeIntervalSeconds <= 0)
+                throw new IllegalArgumentException("keyframeIntervalSeconds must be greater than zero");
+        }
+    }
+
+    public AIContext {
+        // state stored before frame deduplication was introduced does not have the field
+        if (frameDeduplication == null) frameDeduplication = Optional.empty();
+    }
+
+    public AIContext(String context) {
+        this(context, Optional.empty());
+    }
+
+    public AIContext withContext(String context) {
+        return new AIContext(context, frameDeduplication);
+    }
+
+    public AIContext withFrameDeduplication(Optional<FrameDeduplication> frameDeduplication) {
+        return new AIContext(context, frameDeduplication);
+    }
 }
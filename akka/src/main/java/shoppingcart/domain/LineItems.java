@@ -0,0 +1,202 @@
+package shoppingcart.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import shoppingcart.domain.ShoppingCart.LineItem;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+
+/**
+ * The line items of a cart, sorted by product id. Serialized as a plain list of line items.
+ * <p>
+ * A persistent balanced (AVL) tree keyed by product id: lookups, adding, replacing and removing a line item are
+ * O(log n) and return a new instance sharing all but the changed path with the previous one, so earlier instances are
+ * never changed. Nodes track their subtree size, which makes positional access O(log n) as well.
+ */
+public final class LineItems extends AbstractList<LineItem> {
+
+  public static final LineItems EMPTY = new LineItems(null);
+
+  private record Node(LineItem item, Node left, Node right, int height, int size) {
+    static Node of(LineItem item, Node left, Node right) {
+      return new Node(item, left, right, Math.max(LineItems.height(left), LineItems.height(right)) + 1,
+          LineItems.size(left) + LineItems.size(right) + 1);
+    }
+
+    String key() {
+      return item.productId();
+    }
+  }
+
+  private final Node root;
+
+  private LineItems(Node root) {
+    this.root = root;
+  }
+
+  /**
+   * @param items in any order, for the same product id the last one is kept
+   */
+  @JsonCreator
+  public static LineItems of(List<LineItem> items) {
+    if (items instanceof LineItems lineItems) return lineItems;
+    var result = EMPTY;
+    for (var item : items) {
+      result = result.put(item);
+    }
+    return result;
+  }
+
+  /**
+   * @param items sorted by product id without duplicates, as from iterating line items, builds the tree in O(n)
+   */
+  static LineItems ofSorted(List<LineItem> items) {
+    for (int i = 1; i < items.size(); i++) {
+      if (items.get(i - 1).productId().compareTo(items.get(i).productId()) >= 0) return of(items);
+    }
+    return new LineItems(balanced(items, 0, items.size()));
+  }
+
+  public Optional<LineItem> find(String productId) {
+    var node = root;
+    while (node != null) {
+      int cmp = productId.compareTo(node.key());
+      if (cmp == 0) return Optional.of(node.item());
+      node = cmp < 0 ? node.left() : node.right();
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * @return line items with the given item added, replacing the item for the same product id if there is one
+   */
+  public LineItems put(LineItem item) {
+    return new LineItems(put(root, item));
+  }
+
+  /**
+   * @return line items without the item for the product id, or these line items if there is none
+   */
+  public LineItems remove(String productId) {
+    var newRoot = remove(root, productId);
+    return newRoot == root ? this : new LineItems(newRoot);
+  }
+
+  @Override
+  public LineItem get(int index) {
+    if (index < 0 || index >= size()) throw new IndexOutOfBoundsException(index);
+    var node = root;
+    while (true) {
+      int leftSize = size(node.left());
+      if (index < leftSize) {
+        node = node.left();
+      } else if (index == leftSize) {
+        return node.item();
+      } else {
+        index -= leftSize + 1;
+        node = node.right();
+      }
+    }
+  }
+
+  @Override
+  public int size() {
+    return size(root);
+  }
+
+  @Override
+  public Iterator<LineItem> iterator() {
+    return new Iterator<>() {
+      private final ArrayDeque<Node> path = new ArrayDeque<>();
+
+      {
+        pushLeft(root);
+      }
+
+      private void pushLeft(Node node) {
+        for (; node != null; node = node.left()) {
+          path.push(node);
+        }
+      }
+
+      @Override
+      public boolean hasNext() {
+        return !path.isEmpty();
+      }
+
+      @Override
+      public LineItem next() {
+        if (path.isEmpty()) throw new NoSuchElementException();
+        var node = path.pop();
+        pushLeft(node.right());
+        return node.item();
+      }
+    };
+  }
+
+  private static int height(Node node) {
+    return node == null ? 0 : node.height();
+  }
+
+  private static int size(Node node) {
+    return node == null ? 0 : node.size();
+  }
+
+  private static Node balanced(List<LineItem> items, int from, int to) {
+    if (from == to) return null;
+    int middle = (from + to) >>> 1;
+    return Node.of(items.get(middle), balanced(items, from, middle), balanced(items, middle + 1, to));
+  }
+
+  private static Node put(Node node, LineItem item) {
+    if (node == null) return Node.of(item, null, null);
+    int cmp = item.productId().compareTo(node.key());
+    if (cmp < 0) return balance(node.item(), put(node.left(), item), node.right());
+    if (cmp > 0) return balance(node.item(), node.left(), put(node.right(), item));
+    return Node.of(item, node.left(), node.right());
+  }
+
+  private static Node remove(Node node, String productId) {
+    if (node == null) return null;
+    int cmp = productId.compareTo(node.key());
+    if (cmp < 0) {
+      var left = remove(node.left(), productId);
+      return left == node.left() ? node : balance(node.item(), left, node.right());
+    }
+    if (cmp > 0) {
+      var right = remove(node.right(), productId);
+      return right == node.right() ? node : balance(node.item(), node.left(), right);
+    }
+    if (node.left() == null) return node.right();
+    if (node.right() == null) return node.left();
+    var successor = node.right();
+    while (successor.left() != null) {
+      successor = successor.left();
+    }
+    return balance(successor.item(), node.left(), remove(node.right(), successor.key()));
+  }
+
+  private static Node balance(LineItem item, Node left, Node right) {
+    if (height(left) > height(right) + 1) {
+      if (height(left.left()) >= height(left.right())) {
+        return Node.of(left.item(), left.left(), Node.of(item, left.right(), right));
+      } else {
+        var pivot = left.right();
+        return Node.of(pivot.item(), Node.of(left.item(), left.left(), pivot.left()), Node.of(item, pivot.right(), right));
+      }
+    }
+    if (height(right) > height(left) + 1) {
+      if (height(right.right()) >= height(right.left())) {
+        return Node.of(right.item(), Node.of(item, left, right.left()), right.right());
+      } else {
+        var pivot = right.left();
+        return Node.of(pivot.item(), Node.of(item, left, pivot.left()), Node.of(right.item(), pivot.right(), right.right()));
+      }
+    }
+    return Node.of(item, left, right);
+  }
+}
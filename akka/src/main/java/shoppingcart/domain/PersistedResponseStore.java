@@ -0,0 +1,32 @@
+package shoppingcart.domain;
+
+import akka.javasdk.JsonMigration;
+import akka.javasdk.annotations.Migration;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.util.List;
+
+/**
+ * A {@link ResponseStore} as written to snapshots, in the protobuf format of {@link ResponseStoreProtobuf}.
+ */
+@Migration(PersistedResponseStore.SnapshotMigration.class)
+@JsonSerialize(using = ResponseStoreProtobuf.ResponseStoreSerializer.class)
+@JsonDeserialize(using = ResponseStoreProtobuf.ResponseStoreDeserializer.class)
+public record PersistedResponseStore(ResponseStore store) {
+
+    /**
+     * Snapshots were written as the domain type before it had a persisted type of its own.
+     */
+    public static final class SnapshotMigration extends JsonMigration {
+        @Override
+        public int currentVersion() {
+            return 0;
+        }
+
+        @Override
+        public List<String> supportedClassNames() {
+            return List.of(ResponseStore.class.getName());
+        }
+    }
+}
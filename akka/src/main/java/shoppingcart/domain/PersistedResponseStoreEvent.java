@@ -0,0 +1,24 @@
+package shoppingcart.domain;
+
+import akka.javasdk.annotations.TypeName;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * A {@link ResponseStoreEvent} as written to the journal, in the protobuf format of {@link ResponseStoreProtobuf}.
+ */
+public sealed interface PersistedResponseStoreEvent {
+
+    ResponseStoreEvent event();
+
+    static PersistedResponseStoreEvent of(ResponseStoreEvent event) {
+        return switch (event) {
+            case ResponseStoreEvent.AddReponse evt -> new AddReponse(evt);
+        };
+    }
+
+    @TypeName("add-reponse")
+    @JsonSerialize(using = ResponseStoreProtobuf.AddResponseSerializer.class)
+    @JsonDeserialize(using = ResponseStoreProtobuf.AddResponseDeserializer.class)
+    record AddReponse(ResponseStoreEvent.AddReponse event) implements PersistedResponseStoreEvent {}
+}
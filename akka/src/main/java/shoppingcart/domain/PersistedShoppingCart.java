@@ -0,0 +1,32 @@
+package shoppingcart.domain;
+
+import akka.javasdk.JsonMigration;
+import akka.javasdk.annotations.Migration;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.util.List;
+
+/**
+ * A {@link ShoppingCart} as written to snapshots, in the protobuf format of {@link ShoppingCartProtobuf}.
+ */
+@Migration(PersistedShoppingCart.SnapshotMigration.class)
+@JsonSerialize(using = ShoppingCartProtobuf.ShoppingCartSerializer.class)
+@JsonDeserialize(using = ShoppingCartProtobuf.ShoppingCartDeserializer.class)
+public record PersistedShoppingCart(ShoppingCart cart) {
+
+  /**
+   * Snapshots were written as the domain type before it had a persisted type of its own.
+   */
+  public static final class SnapshotMigration extends JsonMigration {
+    @Override
+    public int currentVersion() {
+      return 0;
+    }
+
+    @Override
+    public List<String> supportedClassNames() {
+      return List.of(ShoppingCart.class.getName());
+    }
+  }
+}
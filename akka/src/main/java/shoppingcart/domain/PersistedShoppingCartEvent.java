@@ -0,0 +1,39 @@
+package shoppingcart.domain;
+
+import akka.javasdk.annotations.TypeName;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * A {@link ShoppingCartEvent} as written to the journal, in the protobuf format of {@link ShoppingCartProtobuf}.
+ */
+public sealed interface PersistedShoppingCartEvent {
+
+  ShoppingCartEvent event();
+
+  static PersistedShoppingCartEvent of(ShoppingCartEvent event) {
+    return switch (event) {
+      case ShoppingCartEvent.ItemAdded evt -> new ItemAdded(evt);
+      case ShoppingCartEvent.ItemRemoved evt -> new ItemRemoved(evt);
+      case ShoppingCartEvent.CheckedOut evt -> new CheckedOut(evt);
+    };
+  }
+
+  @TypeName("item-added")
+  @JsonSerialize(using = ShoppingCartProtobuf.ItemAddedSerializer.class)
+  @JsonDeserialize(using = ShoppingCartProtobuf.ItemAddedDeserializer.class)
+  record ItemAdded(ShoppingCartEvent.ItemAdded event) implements PersistedShoppingCartEvent {
+  }
+
+  @TypeName("item-removed")
+  @JsonSerialize(using = ShoppingCartProtobuf.ItemRemovedSerializer.class)
+  @JsonDeserialize(using = ShoppingCartProtobuf.ItemRemovedDeserializer.class)
+  record ItemRemoved(ShoppingCartEvent.ItemRemoved event) implements PersistedShoppingCartEvent {
+  }
+
+  @TypeName("checked-out")
+  @JsonSerialize(using = ShoppingCartProtobuf.CheckedOutSerializer.class)
+  @JsonDeserialize(using = ShoppingCartProtobuf.CheckedOutDeserializer.class)
+  record CheckedOut(ShoppingCartEvent.CheckedOut event) implements PersistedShoppingCartEvent {
+  }
+}
@@ -0,0 +1,69 @@
+package shoppingcart.domain;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+
+import java.io.IOException;
+import java.util.function.Function;
+
+/**
+ * Base classes for storing a type as protobuf inside the JSON the SDK writes to the journal and snapshots.
+ * <p>
+ * The value is written as one base64 string of its protobuf encoding. When reading, a string is parsed as protobuf
+ * and a JSON object is read as the JSON format used before, so events and snapshots written before the switch to
+ * protobuf can still be read.
+ */
+final class ProtobufJson {
+
+  private ProtobufJson() {}
+
+  abstract static class Serializer<T> extends StdSerializer<T> {
+    private final Function<T, ? extends MessageLite> toProto;
+
+    Serializer(Class<T> type, Function<T, ? extends MessageLite> toProto) {
+      super(type);
+      this.toProto = toProto;
+    }
+
+    @Override
+    public void serialize(T value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+      gen.writeBinary(toProto.apply(value).toByteArray());
+    }
+  }
+
+  interface ProtoParser<T> {
+    T parse(byte[] bytes) throws InvalidProtocolBufferException;
+  }
+
+  interface LegacyJsonReader<T> {
+    T read(JsonNode json, DeserializationContext ctxt) throws IOException;
+  }
+
+  abstract static class Deserializer<T> extends StdDeserializer<T> {
+    private final ProtoParser<T> fromProto;
+    private final LegacyJsonReader<T> fromLegacyJson;
+
+    Deserializer(Class<T> type, ProtoParser<T> fromProto, LegacyJsonReader<T> fromLegacyJson) {
+      super(type);
+      this.fromProto = fromProto;
+      this.fromLegacyJson = fromLegacyJson;
+    }
+
+    @Override
+    public T deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+      if (p.currentToken() == JsonToken.VALUE_STRING) {
+        return fromProto.parse(p.getBinaryValue());
+      } else {
+        return fromLegacyJson.read(ctxt.readTree(p), ctxt);
+      }
+    }
+  }
+}
@@ -0,0 +1,151 @@
+package shoppingcart.domain;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The most recent responses, up to a fixed capacity, iterated newest first.
+ * <p>
+ * Instances are immutable, {@link #add} returns a new instance and the instance it was called on keeps its contents.
+ * The versions share a backing array with room for twice the capacity: an add writes the slot after the newest
+ * response and never touches the slots an earlier version can see. When the array is used up, the retained
+ * responses are copied to a new array, so adds are amortized O(1). Adding to a version that is not the latest copies
+ * right away.
+ */
+public final class RecentResponses implements Iterable<String> {
+
+  private static final class Slots {
+    final String[] values;
+    // slots written so far, an add only writes in place if it is adding to the latest version
+    final AtomicInteger used = new AtomicInteger();
+
+    Slots(int length) {
+      this.values = new String[length];
+    }
+  }
+
+  private final Slots slots;
+  // the responses of this version are in slots [end - size, end)
+  private final int end;
+  private final int size;
+  private final int capacity;
+
+  private RecentResponses(Slots slots, int end, int size, int capacity) {
+    this.slots = slots;
+    this.end = end;
+    this.size = size;
+    this.capacity = capacity;
+  }
+
+  public static RecentResponses empty(int capacity) {
+    if (capacity <= 0) throw new IllegalArgumentException("capacity must be greater than zero");
+    return new RecentResponses(new Slots(2 * capacity), 0, 0, capacity);
+  }
+
+  /**
+   * @param responses newest first, responses beyond the capacity are dropped
+   */
+  public static RecentResponses of(List<String> responses, int capacity) {
+    var recent = empty(capacity);
+    for (int i = Math.min(responses.size(), capacity) - 1; i >= 0; i--) {
+      recent = recent.add(responses.get(i));
+    }
+    return recent;
+  }
+
+  /**
+   * @return the responses with the given response as the newest, dropping the oldest if at capacity
+   */
+  public RecentResponses add(String response) {
+    if (end < slots.values.length && slots.used.compareAndSet(end, end + 1)) {
+      slots.values[end] = response;
+      return new RecentResponses(slots, end + 1, Math.min(size + 1, capacity), capacity);
+    } else {
+      // no room left or this is not the latest version, continue in a new array
+      var keep = Math.min(size, capacity - 1);
+      var copy = new Slots(2 * capacity);
+      System.arraycopy(slots.values, end - keep, copy.values, 0, keep);
+      copy.values[keep] = response;
+      copy.used.set(keep + 1);
+      return new RecentResponses(copy, keep + 1, keep + 1, capacity);
+    }
+  }
+
+  public RecentResponses withCapacity(int capacity) {
+    return capacity == this.capacity ? this : of(toList(), capacity);
+  }
+
+  /**
+   * @param index 0 for the newest response
+   */
+  public String get(int index) {
+    if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+    return slots.values[end - 1 - index];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public int capacity() {
+    return capacity;
+  }
+
+  /**
+   * @return the responses, newest first
+   */
+  @JsonValue
+  public List<String> toList() {
+    var list = new ArrayList<String>(size);
+    forEach(list::add);
+    return list;
+  }
+
+  @Override
+  public Iterator<String> iterator() {
+    return new Iterator<>() {
+      private int index = 0;
+
+      @Override
+      public boolean hasNext() {
+        return index < size;
+      }
+
+      @Override
+      public String next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return get(index++);
+      }
+    };
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) return true;
+    if (!(other instanceof RecentResponses that)) return false;
+    if (capacity != that.capacity || size != that.size) return false;
+    for (int i = 0; i < size; i++) {
+      if (!get(i).equals(that.get(i))) return false;
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * capacity + toList().hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return "RecentResponses" + toList();
+  }
+}
@@ -1,12 +1,45 @@
 package shoppingcart.domain;
 
-import java.util.ArrayList;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * @param responses the most recent responses, serialized as a list newest first
+ */
+public record ResponseStore(String id, RecentResponses responses) {
+
+    /**
+     * Capacity of stores from snapshots written before the capacity was configurable
+     */
+    public static final int DEFAULT_CAPACITY = 50;
+
+    public static ResponseStore empty(String id, int capacity) {
+        return new ResponseStore(id, RecentResponses.empty(capacity));
+    }
+
+    @JsonCreator
+    static ResponseStore fromJson(
+        @JsonProperty("id") String id,
+        @JsonProperty("capacity") Integer capacity,
+        @JsonProperty("responses") List<String> responses) {
+        return new ResponseStore(id, RecentResponses.of(
+            responses == null ? List.of() : responses,
+            capacity == null ? DEFAULT_CAPACITY : capacity));
+    }
+
+    @JsonProperty("capacity")
+    public int capacity() {
+        return responses.capacity();
+    }
+
+    public ResponseStore withCapacity(int capacity) {
+        var resized = responses.withCapacity(capacity);
+        return resized == responses ? this : new ResponseStore(id, resized);
+    }
 
-public record ResponseStore(String id, ArrayList<String> responses) {
     public ResponseStore onAddResponse(ResponseStoreEvent.AddReponse addReponse) {
-        ArrayList<String> newResponses = this.responses();
-        newResponses.add(0, addReponse.response());
-        if (newResponses.size() > 50) newResponses.remove(newResponses.size() - 1);
-        return new ResponseStore(this.id, newResponses);
+        return new ResponseStore(this.id, this.responses.add(addReponse.response()));
     }
 }
@@ -0,0 +1,54 @@
+package shoppingcart.domain;
+
+/**
+ * Protobuf format of the persisted response store events and state in the journal and snapshots, see
+ * {@link ProtobufJson}.
+ */
+final class ResponseStoreProtobuf {
+
+  private ResponseStoreProtobuf() {}
+
+  private static PersistedResponseStoreEvent.AddReponse addResponse(String response) {
+    return new PersistedResponseStoreEvent.AddReponse(new ResponseStoreEvent.AddReponse(response));
+  }
+
+  static final class AddResponseSerializer extends ProtobufJson.Serializer<PersistedResponseStoreEvent.AddReponse> {
+    AddResponseSerializer() {
+      super(PersistedResponseStoreEvent.AddReponse.class, persisted ->
+          shoppingcart.domain.proto.AddResponse.newBuilder().setResponse(persisted.event().response()).build());
+    }
+  }
+
+  static final class AddResponseDeserializer extends ProtobufJson.Deserializer<PersistedResponseStoreEvent.AddReponse> {
+    AddResponseDeserializer() {
+      super(PersistedResponseStoreEvent.AddReponse.class,
+          bytes -> addResponse(shoppingcart.domain.proto.AddResponse.parseFrom(bytes).getResponse()),
+          (json, ctxt) -> addResponse(json.path("response").asText()));
+    }
+  }
+
+  static final class ResponseStoreSerializer extends ProtobufJson.Serializer<PersistedResponseStore> {
+    ResponseStoreSerializer() {
+      super(PersistedResponseStore.class, persisted -> {
+        var store = persisted.store();
+        var builder = shoppingcart.domain.proto.ResponseStore.newBuilder().setCapacity(store.capacity());
+        if (store.id() != null) builder.setId(store.id());
+        store.responses().forEach(builder::addResponses);
+        return builder.build();
+      });
+    }
+  }
+
+  static final class ResponseStoreDeserializer extends ProtobufJson.Deserializer<PersistedResponseStore> {
+    ResponseStoreDeserializer() {
+      super(PersistedResponseStore.class,
+          bytes -> {
+            var store = shoppingcart.domain.proto.ResponseStore.parseFrom(bytes);
+            var capacity = store.getCapacity() > 0 ? store.getCapacity() : ResponseStore.DEFAULT_CAPACITY;
+            return new PersistedResponseStore(new ResponseStore(store.getId(), RecentResponses.of(store.getResponsesList(), capacity)));
+          },
+          // the domain type reads the JSON it was written as, also from before the capacity was configurable
+          (json, ctxt) -> new PersistedResponseStore(ctxt.readTreeAsValue(json, ResponseStore.class)));
+    }
+  }
+}
@@ -0,0 +1,113 @@
+package shoppingcart.domain;
+
+import shoppingcart.domain.ShoppingCart.LineItem;
+
+import java.util.ArrayList;
+
+/**
+ * Protobuf format of the persisted shopping cart events and state in the journal and snapshots, see
+ * {@link ProtobufJson}.
+ */
+final class ShoppingCartProtobuf {
+
+  private ShoppingCartProtobuf() {}
+
+  static shoppingcart.domain.proto.LineItem toProto(LineItem item) {
+    var builder = shoppingcart.domain.proto.LineItem.newBuilder().setQuantity(item.quantity());
+    if (item.productId() != null) builder.setProductId(item.productId());
+    if (item.name() != null) builder.setName(item.name());
+    return builder.build();
+  }
+
+  static LineItem fromProto(shoppingcart.domain.proto.LineItem item) {
+    return new LineItem(item.getProductId(), item.getName(), item.getQuantity());
+  }
+
+  private static PersistedShoppingCartEvent.ItemAdded itemAdded(LineItem item) {
+    return new PersistedShoppingCartEvent.ItemAdded(new ShoppingCartEvent.ItemAdded(item));
+  }
+
+  private static PersistedShoppingCartEvent.ItemRemoved itemRemoved(String productId) {
+    return new PersistedShoppingCartEvent.ItemRemoved(new ShoppingCartEvent.ItemRemoved(productId));
+  }
+
+  static final class ItemAddedSerializer extends ProtobufJson.Serializer<PersistedShoppingCartEvent.ItemAdded> {
+    ItemAddedSerializer() {
+      super(PersistedShoppingCartEvent.ItemAdded.class, persisted ->
+          shoppingcart.domain.proto.ItemAdded.newBuilder().setItem(toProto(persisted.event().item())).build());
+    }
+  }
+
+  static final class ItemAddedDeserializer extends ProtobufJson.Deserializer<PersistedShoppingCartEvent.ItemAdded> {
+    ItemAddedDeserializer() {
+      super(PersistedShoppingCartEvent.ItemAdded.class,
+          bytes -> itemAdded(fromProto(shoppingcart.domain.proto.ItemAdded.parseFrom(bytes).getItem())),
+          (json, ctxt) -> itemAdded(ctxt.readTreeAsValue(json.get("item"), LineItem.class)));
+    }
+  }
+
+  static final class ItemRemovedSerializer extends ProtobufJson.Serializer<PersistedShoppingCartEvent.ItemRemoved> {
+    ItemRemovedSerializer() {
+      super(PersistedShoppingCartEvent.ItemRemoved.class, persisted ->
+          shoppingcart.domain.proto.ItemRemoved.newBuilder().setProductId(persisted.event().productId()).build());
+    }
+  }
+
+  static final class ItemRemovedDeserializer extends ProtobufJson.Deserializer<PersistedShoppingCartEvent.ItemRemoved> {
+    ItemRemovedDeserializer() {
+      super(PersistedShoppingCartEvent.ItemRemoved.class,
+          bytes -> itemRemoved(shoppingcart.domain.proto.ItemRemoved.parseFrom(bytes).getProductId()),
+          (json, ctxt) -> itemRemoved(json.path("productId").asText()));
+    }
+  }
+
+  static final class CheckedOutSerializer extends ProtobufJson.Serializer<PersistedShoppingCartEvent.CheckedOut> {
+    CheckedOutSerializer() {
+      super(PersistedShoppingCartEvent.CheckedOut.class, persisted -> shoppingcart.domain.proto.CheckedOut.getDefaultInstance());
+    }
+  }
+
+  static final class CheckedOutDeserializer extends ProtobufJson.Deserializer<PersistedShoppingCartEvent.CheckedOut> {
+    CheckedOutDeserializer() {
+      super(PersistedShoppingCartEvent.CheckedOut.class,
+          bytes -> new PersistedShoppingCartEvent.CheckedOut(new ShoppingCartEvent.CheckedOut()),
+          (json, ctxt) -> new PersistedShoppingCartEvent.CheckedOut(new ShoppingCartEvent.CheckedOut()));
+    }
+  }
+
+  static final class ShoppingCartSerializer extends ProtobufJson.Serializer<PersistedShoppingCart> {
+    ShoppingCartSerializer() {
+      super(PersistedShoppingCart.class, persisted -> {
+        var cart = persisted.cart();
+        var builder = shoppingcart.domain.proto.ShoppingCart.newBuilder().setCheckedOut(cart.checkedOut());
+        if (cart.cartId() != null) builder.setCartId(cart.cartId());
+        for (var item : cart.items()) {
+          builder.addItems(toProto(item));
+        }
+        return builder.build();
+      });
+    }
+  }
+
+  static final class ShoppingCartDeserializer extends ProtobufJson.Deserializer<PersistedShoppingCart> {
+    ShoppingCartDeserializer() {
+      super(PersistedShoppingCart.class,
+          bytes -> {
+            var cart = shoppingcart.domain.proto.ShoppingCart.parseFrom(bytes);
+            var items = new ArrayList<LineItem>(cart.getItemsCount());
+            for (var item : cart.getItemsList()) {
+              items.add(fromProto(item));
+            }
+            return new PersistedShoppingCart(new ShoppingCart(cart.getCartId(), LineItems.ofSorted(items), cart.getCheckedOut()));
+          },
+          (json, ctxt) -> {
+            var items = new ArrayList<LineItem>();
+            for (var item : json.path("items")) {
+              items.add(ctxt.readTreeAsValue(item, LineItem.class));
+            }
+            return new PersistedShoppingCart(
+                new ShoppingCart(json.path("cartId").asText(), LineItems.ofSorted(items), json.path("checkedOut").asBoolean()));
+          });
+    }
+  }
+}
@@ -12,6 +12,7 @@ import akka.stream.Materializer;
 import akka.stream.javadsl.Flow;
 import akka.stream.javadsl.Source;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.Base64Variants;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -19,12 +20,14 @@ import com.fasterxml.jackson.databind.*;
 import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import shoppingcart.geminilive.LiveProtocol.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Base64;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
@@ -62,8 +65,32 @@ public class GeminiLiveApiClient {
     }
   }
 
+  private static final class ByteBufferSerializer extends StdSerializer<ByteBuffer> {
+    public ByteBufferSerializer() {
+      super(ByteBuffer.class);
+    }
+    @Override
+    public void serialize(ByteBuffer value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+      // streams the base64 straight from the (possibly shared, read-only) buffer without copying it to an array first
+      var bytes = value.duplicate();
+      gen.writeBinary(Base64Variants.MIME_NO_LINEFEEDS, new ByteBufferBackedInputStream(bytes), bytes.remaining());
+    }
+  }
+
+  private static final class ByteBufferDeserializer extends StdDeserializer<ByteBuffer> {
+    public ByteBufferDeserializer() {
+      super(ByteBuffer.class);
+    }
+    @Override
+    public ByteBuffer deserialize(JsonParser p, DeserializationContext ctxt) throws IOException, JsonProcessingException {
+      JsonNode node = p.getCodec().readTree(p);
+      String base64 = node.asText();
+      return ByteBuffer.wrap(Base64.getDecoder().decode(base64));
+    }
+  }
+
   // Best to use our own to configure for the Google API json requirements
-  private static final ObjectMapper objectMapper = new ObjectMapper();
+  static final ObjectMapper objectMapper = new ObjectMapper();
 
   static {
     // config based on https://github.com/googleapis/python-genai/blob/main/google/genai/_common.py#L182
@@ -71,6 +98,8 @@ public class GeminiLiveApiClient {
     // byte payloads base64 encoded https://github.com/googleapis/python-genai/blob/main/google/genai/_common.py#L190
     customModule.addSerializer(byte[].class, new ByteArraySerializer());
     customModule.addDeserializer(byte[].class, new ByteArrayDeserializer());
+    customModule.addSerializer(ByteBuffer.class, new ByteBufferSerializer());
+    customModule.addDeserializer(ByteBuffer.class, new ByteBufferDeserializer());
     objectMapper.registerModule(customModule);
     objectMapper.registerModule(new Jdk8Module());
     objectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
@@ -88,62 +117,116 @@ public class GeminiLiveApiClient {
   private static final String wsBaseUrl = "wss://generativelanguage.googleapis.com/";
 
 
+  // messages from Gemini are text and audio, not the video frames sent to it
+  public static final long DEFAULT_MAX_MESSAGE_BYTES = 16 * 1024 * 1024;
+
   private final String apiKey;
+  private final String baseUrl;
+  private final long maxMessageBytes;
 
   // FIXME not sure what the right level of SDK support would be to allow low-level/more advanced HTTP client calls
   //       passing the entire extension for now
   // FIXME using global now, probably needs to select region
   public GeminiLiveApiClient(String apiKey) {
+    this(apiKey, wsBaseUrl, DEFAULT_MAX_MESSAGE_BYTES);
+  }
+
+  /**
+   * @param maxMessageBytes server messages larger than this fail the session
+   */
+  public GeminiLiveApiClient(String apiKey, long maxMessageBytes) {
+    this(apiKey, wsBaseUrl, maxMessageBytes);
+  }
+
+  /**
+   * @param baseUrl websocket base url to use instead of the Google API, for testing against a local server
+   */
+  public GeminiLiveApiClient(String apiKey, String baseUrl) {
+    this(apiKey, baseUrl, DEFAULT_MAX_MESSAGE_BYTES);
+  }
+
+  public GeminiLiveApiClient(String apiKey, String baseUrl, long maxMessageBytes) {
     this.apiKey = apiKey;
+    this.baseUrl = baseUrl;
+    this.maxMessageBytes = maxMessageBytes;
+  }
+
+  /**
+   * @return whether an API key is configured, sessions can not be opened without one
+   */
+  public boolean hasApiKey() {
+    return !apiKey.isEmpty();
   }
 
   // FIXME what is the input
   // FIXME what is the output
   public Source<LiveServerMessage, NotUsed> connect(GenerateContentSetup setup, Source<LiveClientMessage, ?> input) {
     return Source.fromMaterializer((materializer, attributes) -> {
-      // Note: we don't have public API access to the actor system or HTTP for low level requests directly in the SDK
-      var http = Http.get(materializer.system());
-      var url = wsBaseUrl + "ws/google.ai.generativelanguage." + apiVersion + ".GenerativeService.BidiGenerateContent?key=" + apiKey;
-      var wsFlow = http.webSocketClientFlow(WebSocketRequest.create(url))
-          .mapMaterializedValue(upgradeFuture -> {
-             upgradeFuture.whenComplete((upgrade, error) -> {
-               if (error != null) {
-                 logger.error("Failed to connect to Gemini Live", error);
-               } else if (upgrade.response().status().equals(StatusCodes.SWITCHING_PROTOCOLS)) {
-                 logger.debug("Successfully connected to Gemini Live");
-               } else {
-                 throw new RuntimeException("Connected to Gemini Live but websocket upgrade failed (status: " + upgrade.response().status() + ")");
-               }
-             });
-            return notUsed();
-          });
-
       // Commands to API must wait for ack on setup
       var setupResponseSeen = new CompletableFuture<Done>();
-
-      Source<LiveClientMessage, NotUsed> delayedClientMessages = Source.fromSourceCompletionStage(setupResponseSeen.thenApply(done -> input))
-          .mapMaterializedValue(ignored -> notUsed());
-
-      var inputToWebSocket = Source.single(LiveClientMessage.setup(setup)).concat(delayedClientMessages)
-          .map(GeminiLiveApiClient::multiModalInputToWsMessage);
-
-      var webSocketToOutput = Flow.<Message>create()
-          .mapAsync(1, wsMessage -> multiModalOutputFromWsMessage(wsMessage, materializer))
-          .map((output) -> {
-            if (output.setupComplete().isPresent()) {
-              // happens only once, we must hold of sending any requests until we have seen it
-              // FIXME we should perhaps drop that initial setup done message so that the client does not see it?
-              setupResponseSeen.complete(done());
-            }
-            return output;
-          });
-
-      return inputToWebSocket.via(wsFlow).via(webSocketToOutput);
-
+      return session(setup, setupResponseSeen.thenApply(done -> input), setupResponseSeen, materializer);
     }).mapMaterializedValue(ignored -> notUsed());
   }
 
-  private static Message multiModalInputToWsMessage(LiveClientMessage message) {
+  /**
+   * A websocket session that sends the setup and then the input, once the input completion stage completes.
+   *
+   * @param setupResponseSeen completed when the server has acknowledged the setup
+   */
+  Source<LiveServerMessage, NotUsed> session(
+      GenerateContentSetup setup,
+      CompletionStage<? extends Source<LiveClientMessage, ?>> input,
+      CompletableFuture<Done> setupResponseSeen,
+      Materializer materializer) {
+    // Note: we don't have public API access to the actor system or HTTP for low level requests directly in the SDK
+    var http = Http.get(materializer.system());
+    var url = baseUrl + "ws/google.ai.generativelanguage." + apiVersion + ".GenerativeService.BidiGenerateContent?key=" + apiKey;
+    var wsFlow = http.webSocketClientFlow(WebSocketRequest.create(url))
+        .mapMaterializedValue(upgradeFuture -> {
+           upgradeFuture.whenComplete((upgrade, error) -> {
+             if (error != null) {
+               logger.error("Failed to connect to Gemini Live", error);
+             } else if (upgrade.response().status().equals(StatusCodes.SWITCHING_PROTOCOLS)) {
+               logger.debug("Successfully connected to Gemini Live");
+             } else {
+               throw new RuntimeException("Connected to Gemini Live but websocket upgrade failed (status: " + upgrade.response().status() + ")");
+             }
+           });
+          return notUsed();
+        });
+
+    Source<LiveClientMessage, NotUsed> delayedClientMessages = Source.fromSourceCompletionStage(
+            input.thenApply(source -> source.mapMaterializedValue(ignored -> notUsed())))
+        .mapMaterializedValue(ignored -> notUsed());
+
+    var inputToWebSocket = Source.single(LiveClientMessage.setup(setup)).concat(delayedClientMessages)
+        .map(GeminiLiveApiClient::multiModalInputToWsMessage);
+
+    var webSocketToOutput = Flow.<Message>create()
+        // decoded in order, a streamed message is parsed while its parts arrive
+        .via(new LiveServerMessageDecoding(maxMessageBytes))
+        .map((output) -> {
+          if (output.setupComplete().isPresent()) {
+            // happens only once, we must hold of sending any requests until we have seen it
+            // FIXME we should perhaps drop that initial setup done message so that the client does not see it?
+            setupResponseSeen.complete(done());
+          }
+          return output;
+        });
+
+    return inputToWebSocket.via(wsFlow).via(webSocketToOutput);
+  }
+
+  // package private for benchmarks
+  static Message multiModalInputToWsMessage(LiveClientMessage message) {
+    if (message.realtimeInput().isPresent()) {
+      var realtimeInput = message.realtimeInput().get();
+      if (RealtimeInputJsonSegments.payloadBytes(realtimeInput) > RealtimeInputJsonSegments.SEGMENT_PAYLOAD_BYTES) {
+        // large media (video frames) is streamed as a fragmented text message, base64 encoded segment by segment,
+        // rather than building one string with the entire base64 payload and the json around it for each frame
+        return TextMessage.create(Source.fromIterator(() -> new RealtimeInputJsonSegments(realtimeInput)));
+      }
+    }
     try {
       var jsonString = objectMapper.writeValueAsString(message);
       //logger.debug("Outgoing Gemini JSON: {}", jsonString);
@@ -172,36 +255,28 @@ public class GeminiLiveApiClient {
     }
   }
 
-  private final static long MAX_STRICT_DURATION = 5000;
-
-  private static CompletionStage<LiveServerMessage> multiModalOutputFromWsMessage(Message message, Materializer materializer) {
-    if (message instanceof TextMessage textMessage) {
-      if (message.isStrict()) {
+  /**
+   * Decodes a strict server message, streamed messages are decoded part by part by {@link LiveServerMessageDecoding}.
+   *
+   * @param maxMessageBytes larger messages fail with an {@link IOException}
+   */
+  static LiveServerMessage decodeStrict(Message message, long maxMessageBytes) throws IOException {
+    try {
+      if (message instanceof TextMessage textMessage) {
         var responseJson = textMessage.getStrictText();
-        try {
-          return CompletableFuture.completedFuture(objectMapper.readValue(responseJson, LiveServerMessage.class));
-        } catch (JsonProcessingException e) {
-          throw new RuntimeException("Failed to parse response json: " + responseJson, e);
-        }
-      } else {
-        return textMessage.toStrict(MAX_STRICT_DURATION, materializer).thenCompose(strict -> multiModalOutputFromWsMessage(strict, materializer));
-      }
-     } else if (message instanceof BinaryMessage binaryMessage) {
-      if (message.isStrict()) {
-        var responseJson = binaryMessage.getStrictData().utf8String();
-        try {
-          return CompletableFuture.completedFuture(objectMapper.readValue(responseJson, LiveServerMessage.class));
-        } catch (JsonProcessingException e) {
-          throw new RuntimeException("Failed to parse response json: " + responseJson, e);
-        }
+        // chars, a lower bound of the size in bytes
+        if (responseJson.length() > maxMessageBytes) throw new LiveServerMessageDecoder.MessageTooLargeException(maxMessageBytes);
+        return LiveServerMessageCodec.read(responseJson);
       } else {
-        return binaryMessage.toStrict(MAX_STRICT_DURATION, materializer).thenCompose(strict -> multiModalOutputFromWsMessage(strict, materializer));
+        var data = message.asBinaryMessage().getStrictData();
+        if (data.size() > maxMessageBytes) throw new LiveServerMessageDecoder.MessageTooLargeException(maxMessageBytes);
+        return LiveServerMessageCodec.read(data.toArrayUnsafe());
       }
-    } else {
-      // can never happen, but compiler doesn't know
-      throw new UnsupportedOperationException("Unsupported message type: " + message.getClass().getName());
+    } catch (LiveServerMessageDecoder.MessageTooLargeException e) {
+      throw e;
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to parse response json", e);
     }
-
   }
 
 
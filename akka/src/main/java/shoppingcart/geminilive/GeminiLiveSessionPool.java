@@ -0,0 +1,243 @@
+package shoppingcart.geminilive;
+
+import akka.Done;
+import akka.NotUsed;
+import akka.actor.Cancellable;
+import akka.stream.KillSwitches;
+import akka.stream.Materializer;
+import akka.stream.OverflowStrategy;
+import akka.stream.UniqueKillSwitch;
+import akka.stream.javadsl.AsPublisher;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.typesafe.config.Config;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import shoppingcart.geminilive.LiveProtocol.GenerateContentSetup;
+import shoppingcart.geminilive.LiveProtocol.LiveClientMessage;
+import shoppingcart.geminilive.LiveProtocol.LiveServerMessage;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static akka.NotUsed.notUsed;
+
+/**
+ * Node local pool of Gemini Live sessions that are already connected and have completed their setup, so that a new
+ * stream can start sending media right away instead of waiting for the TLS websocket connect and setup round trip.
+ * <p>
+ * Sessions are pooled per {@link GenerateContentSetup}, a setup is added to the pool the first time it is used or
+ * when explicitly warmed. Ready sessions are evicted after a max age, a session is only borrowed once so this is the
+ * time it has been waiting unused, and sessions closed by the server are dropped. The pool is topped up to its min size
+ * on every health check and after each borrow, unless the client has no API key. When no ready session is available,
+ * {@link #connect} falls back to opening a new session.
+ */
+public final class GeminiLiveSessionPool {
+
+  private static final Logger logger = LoggerFactory.getLogger(GeminiLiveSessionPool.class);
+
+  /**
+   * @param minSize Number of ready sessions to keep per setup
+   * @param maxSize Max number of ready and opening sessions per setup
+   * @param maxAge Ready sessions opened longer ago than this are closed (and replaced)
+   * @param setupTimeout Sessions that have not completed setup within this time are closed
+   * @param healthCheckInterval How often sessions are checked and the pool topped up
+   */
+  public record Settings(int minSize, int maxSize, Duration maxAge, Duration setupTimeout, Duration healthCheckInterval) {
+    public Settings {
+      if (minSize < 0 || maxSize < minSize) throw new IllegalArgumentException("Pool sizes must be 0 <= min-size <= max-size");
+    }
+
+    public static Settings fromConfig(Config config) {
+      return new Settings(
+          config.getInt("min-size"),
+          config.getInt("max-size"),
+          config.getDuration("max-age"),
+          config.getDuration("setup-timeout"),
+          config.getDuration("health-check-interval"));
+    }
+  }
+
+  /**
+   * A connected session, its input is not attached until it is borrowed.
+   */
+  private record Session(
+      CompletableFuture<Source<LiveClientMessage, ?>> input,
+      Publisher<LiveServerMessage> output,
+      CompletableFuture<Done> setupComplete,
+      CompletionStage<Done> terminated,
+      UniqueKillSwitch killSwitch,
+      long openedNanos) {
+
+    boolean isAlive() {
+      return !terminated.toCompletableFuture().isDone();
+    }
+
+    void close() {
+      killSwitch.shutdown();
+      // completes the input side if the session was never borrowed
+      input.complete(Source.empty());
+    }
+  }
+
+  private static final class SetupPool {
+    final ArrayDeque<Session> ready = new ArrayDeque<>();
+    int opening = 0;
+  }
+
+  private final GeminiLiveApiClient client;
+  private final Settings settings;
+  private final Materializer materializer;
+  private final ConcurrentHashMap<GenerateContentSetup, SetupPool> pools = new ConcurrentHashMap<>();
+  private final Cancellable healthCheck;
+  private volatile boolean closed = false;
+
+  public GeminiLiveSessionPool(GeminiLiveApiClient client, Settings settings, Materializer materializer) {
+    this.client = client;
+    this.settings = settings;
+    this.materializer = materializer;
+    var system = materializer.system();
+    this.healthCheck = system.scheduler().scheduleAtFixedRate(
+        settings.healthCheckInterval(), settings.healthCheckInterval(), this::healthCheck, system.dispatcher());
+  }
+
+  /**
+   * Start keeping ready sessions for the given setup.
+   */
+  public void warm(GenerateContentSetup setup) {
+    topUp(setup, pools.computeIfAbsent(setup, __ -> new SetupPool()));
+  }
+
+  /**
+   * Like {@link GeminiLiveApiClient#connect} but using a ready session from the pool if there is one.
+   */
+  public Source<LiveServerMessage, NotUsed> connect(GenerateContentSetup setup, Source<LiveClientMessage, ?> input) {
+    return Source.fromMaterializer((mat, attributes) -> {
+      var pool = pools.computeIfAbsent(setup, __ -> new SetupPool());
+      var session = borrow(pool);
+      topUp(setup, pool);
+      if (session.isPresent()) {
+        logger.debug("Using pooled Gemini Live session");
+        session.get().input().complete(input);
+        return Source.fromPublisher(session.get().output());
+      } else {
+        logger.debug("No pooled Gemini Live session available, connecting");
+        return client.connect(setup, input);
+      }
+    }).mapMaterializedValue(ignored -> notUsed());
+  }
+
+  /**
+   * @return the number of sessions ready to be borrowed for the setup
+   */
+  public int readyCount(GenerateContentSetup setup) {
+    var pool = pools.get(setup);
+    if (pool == null) return 0;
+    synchronized (pool) {
+      return pool.ready.size();
+    }
+  }
+
+  public void close() {
+    closed = true;
+    healthCheck.cancel();
+    pools.values().forEach(pool -> {
+      synchronized (pool) {
+        pool.ready.forEach(Session::close);
+        pool.ready.clear();
+      }
+    });
+  }
+
+  private Optional<Session> borrow(SetupPool pool) {
+    synchronized (pool) {
+      Session session;
+      while ((session = pool.ready.poll()) != null) {
+        if (isHealthy(session)) return Optional.of(session);
+        session.close();
+      }
+      return Optional.empty();
+    }
+  }
+
+  private boolean isHealthy(Session session) {
+    return session.isAlive() && System.nanoTime() - session.openedNanos() < settings.maxAge().toNanos();
+  }
+
+  private void healthCheck() {
+    pools.forEach((setup, pool) -> {
+      var unhealthy = new ArrayList<Session>();
+      synchronized (pool) {
+        pool.ready.removeIf(session -> {
+          if (isHealthy(session)) return false;
+          unhealthy.add(session);
+          return true;
+        });
+      }
+      if (!unhealthy.isEmpty()) logger.debug("Evicting {} old or closed Gemini Live sessions", unhealthy.size());
+      unhealthy.forEach(Session::close);
+      topUp(setup, pool);
+    });
+  }
+
+  private void topUp(GenerateContentSetup setup, SetupPool pool) {
+    // without a key every pooled session would fail to connect, streams connecting on their own report the error
+    if (closed || !client.hasApiKey()) return;
+    int toOpen;
+    synchronized (pool) {
+      var missing = settings.minSize() - pool.ready.size() - pool.opening;
+      var room = settings.maxSize() - pool.ready.size() - pool.opening;
+      toOpen = Math.max(0, Math.min(missing, room));
+      pool.opening += toOpen;
+    }
+    for (int i = 0; i < toOpen; i++) {
+      open(setup, pool);
+    }
+  }
+
+  private void open(GenerateContentSetup setup, SetupPool pool) {
+    var input = new CompletableFuture<Source<LiveClientMessage, ?>>();
+    var setupComplete = new CompletableFuture<Done>();
+    var materialized = client.session(setup, input, setupComplete, materializer)
+        // pulls the setup response through before the session is borrowed, and holds it for the borrower
+        .buffer(16, OverflowStrategy.backpressure())
+        .viaMat(KillSwitches.single(), Keep.right())
+        .watchTermination(Keep.both())
+        .toMat(Sink.asPublisher(AsPublisher.WITHOUT_FANOUT), Keep.both())
+        .run(materializer);
+    var session = new Session(
+        input,
+        materialized.second(),
+        setupComplete,
+        materialized.first().second(),
+        materialized.first().first(),
+        System.nanoTime());
+
+    session.terminated().whenComplete((done, error) ->
+        setupComplete.completeExceptionally(new IllegalStateException("Session closed before setup completed")));
+    setupComplete
+        .orTimeout(settings.setupTimeout().toMillis(), TimeUnit.MILLISECONDS)
+        .whenComplete((done, error) -> {
+          boolean added = false;
+          synchronized (pool) {
+            pool.opening--;
+            if (error == null && !closed && session.isAlive()) {
+              pool.ready.add(session);
+              added = true;
+            }
+          }
+          if (!added) {
+            if (error != null) logger.warn("Failed to open pooled Gemini Live session: {}", error.toString());
+            session.close();
+          }
+        });
+  }
+}
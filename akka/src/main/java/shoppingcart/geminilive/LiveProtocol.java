@@ -1,12 +1,28 @@
 package shoppingcart.geminilive;
 
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
 public interface LiveProtocol {
 
-  record Blob(byte[] data, String mimeType) {}
+  /**
+   * Inlined bytes data.
+   *
+   * @param data A read-only view of the bytes, possibly sharing memory with the buffer it was received in, readers
+   *             must not move its position (use absolute reads or a duplicate)
+   * @param mimeType The IANA standard MIME type of the source data
+   */
+  record Blob(ByteBuffer data, String mimeType) {
+    public Blob {
+      if (data != null && !data.isReadOnly()) data = data.asReadOnlyBuffer();
+    }
+
+    public Blob(byte[] data, String mimeType) {
+      this(data == null ? null : ByteBuffer.wrap(data), mimeType);
+    }
+  }
 
   enum Outcome {
     OUTCOME_UNSPECIFIED,
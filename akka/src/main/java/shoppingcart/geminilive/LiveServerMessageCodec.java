@@ -0,0 +1,166 @@
+package shoppingcart.geminilive;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import shoppingcart.geminilive.LiveProtocol.Content;
+import shoppingcart.geminilive.LiveProtocol.LiveServerContent;
+import shoppingcart.geminilive.LiveProtocol.LiveServerMessage;
+import shoppingcart.geminilive.LiveProtocol.LiveServerSetupComplete;
+import shoppingcart.geminilive.LiveProtocol.Part;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Hand written decoding of the server messages a video stream gets the most of: setup complete and model text
+ * fragments, turn complete and interrupted. The fields are read straight off the parser tokens, without the
+ * reflective databind of the nested records and their optionals.
+ * <p>
+ * Only what the service reads is decoded, usage metadata is skipped. Any other message, like tool calls, non text
+ * parts or fields this codec does not know, is decoded with the databind model of {@link LiveProtocol} instead, so
+ * that it is handled exactly as before.
+ */
+final class LiveServerMessageCodec {
+
+  private static final Optional<LiveServerSetupComplete> SETUP_COMPLETE = Optional.of(new LiveServerSetupComplete());
+  private static final Optional<Boolean> TRUE = Optional.of(true);
+  private static final Optional<Boolean> FALSE = Optional.of(false);
+  private static final Optional<String> MODEL = Optional.of("model");
+  private static final Optional<String> USER = Optional.of("user");
+
+  private LiveServerMessageCodec() {}
+
+  static LiveServerMessage read(String json) throws IOException {
+    try (var parser = GeminiLiveApiClient.objectMapper.getFactory().createParser(json)) {
+      var message = decode(parser);
+      if (message != null) return message;
+    }
+    return GeminiLiveApiClient.objectMapper.readValue(json, LiveServerMessage.class);
+  }
+
+  static LiveServerMessage read(byte[] json) throws IOException {
+    try (var parser = GeminiLiveApiClient.objectMapper.getFactory().createParser(json)) {
+      var message = decode(parser);
+      if (message != null) return message;
+    }
+    return GeminiLiveApiClient.objectMapper.readValue(json, LiveServerMessage.class);
+  }
+
+  /**
+   * @return the message, or null if it is not one of the messages decoded by this codec
+   */
+  static LiveServerMessage decode(JsonParser parser) throws IOException {
+    if (parser.nextToken() != JsonToken.START_OBJECT) return null;
+    Optional<LiveServerSetupComplete> setupComplete = Optional.empty();
+    Optional<LiveServerContent> serverContent = Optional.empty();
+    String field;
+    while ((field = parser.nextFieldName()) != null) {
+      switch (field) {
+        case "setupComplete" -> {
+          if (parser.nextToken() != JsonToken.START_OBJECT || parser.nextToken() != JsonToken.END_OBJECT) return null;
+          setupComplete = SETUP_COMPLETE;
+        }
+        case "serverContent" -> {
+          var content = serverContent(parser);
+          if (content == null) return null;
+          serverContent = Optional.of(content);
+        }
+        case "usageMetadata" -> {
+          if (parser.nextToken() != JsonToken.START_OBJECT) return null;
+          parser.skipChildren();
+        }
+        default -> {
+          return null;
+        }
+      }
+    }
+    if (parser.currentToken() != JsonToken.END_OBJECT || parser.nextToken() != null) return null;
+    return new LiveServerMessage(setupComplete, serverContent, Optional.empty(), Optional.empty(), Optional.empty());
+  }
+
+  private static LiveServerContent serverContent(JsonParser parser) throws IOException {
+    if (parser.nextToken() != JsonToken.START_OBJECT) return null;
+    Optional<Content> modelTurn = Optional.empty();
+    Optional<Boolean> turnComplete = Optional.empty();
+    Optional<Boolean> interrupted = Optional.empty();
+    String field;
+    while ((field = parser.nextFieldName()) != null) {
+      switch (field) {
+        case "modelTurn" -> {
+          var content = content(parser);
+          if (content == null) return null;
+          modelTurn = Optional.of(content);
+        }
+        case "turnComplete" -> {
+          turnComplete = bool(parser.nextToken());
+          if (turnComplete == null) return null;
+        }
+        case "interrupted" -> {
+          interrupted = bool(parser.nextToken());
+          if (interrupted == null) return null;
+        }
+        default -> {
+          return null;
+        }
+      }
+    }
+    return parser.currentToken() == JsonToken.END_OBJECT ? new LiveServerContent(modelTurn, turnComplete, interrupted) : null;
+  }
+
+  private static Content content(JsonParser parser) throws IOException {
+    if (parser.nextToken() != JsonToken.START_OBJECT) return null;
+    List<Part> parts = List.of();
+    Optional<String> role = Optional.empty();
+    String field;
+    while ((field = parser.nextFieldName()) != null) {
+      switch (field) {
+        case "parts" -> {
+          parts = textParts(parser);
+          if (parts == null) return null;
+        }
+        case "role" -> {
+          var value = parser.nextTextValue();
+          if ("model".equals(value)) role = MODEL;
+          else if ("user".equals(value)) role = USER;
+          // an invalid role is rejected by the databind model
+          else return null;
+        }
+        default -> {
+          return null;
+        }
+      }
+    }
+    return parser.currentToken() == JsonToken.END_OBJECT ? new Content(parts, role) : null;
+  }
+
+  private static List<Part> textParts(JsonParser parser) throws IOException {
+    if (parser.nextToken() != JsonToken.START_ARRAY) return null;
+    // almost always a single part
+    Part first = null;
+    List<Part> more = null;
+    JsonToken token;
+    while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+      if (!"text".equals(parser.nextFieldName())) return null;
+      var text = parser.nextTextValue();
+      if (text == null || parser.nextToken() != JsonToken.END_OBJECT) return null;
+      var part = Part.text(text);
+      if (first == null) {
+        first = part;
+      } else {
+        if (more == null) {
+          more = new ArrayList<>(4);
+          more.add(first);
+        }
+        more.add(part);
+      }
+    }
+    if (token != JsonToken.END_ARRAY) return null;
+    return more != null ? more : first != null ? List.of(first) : List.of();
+  }
+
+  private static Optional<Boolean> bool(JsonToken token) {
+    return token == JsonToken.VALUE_TRUE ? TRUE : token == JsonToken.VALUE_FALSE ? FALSE : null;
+  }
+}
@@ -0,0 +1,81 @@
+package shoppingcart.geminilive;
+
+import akka.util.ByteString;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import shoppingcart.geminilive.LiveProtocol.LiveServerMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes one server message streamed in parts, parsing each part as it arrives with a non-blocking parser instead
+ * of waiting for the whole message first. The parsed tokens are kept and bound to a {@link LiveServerMessage} once
+ * the message is complete (by {@link LiveServerMessageCodec}, or databind for other messages).
+ * <p>
+ * This only starts the parsing earlier, it does not lower the memory needed: the received bytes are not kept, but
+ * every token is, so the whole message is still held until it ends, as tokens (with text and inline data as strings)
+ * instead of bytes. The max message size bounds that.
+ * <p>
+ * Not thread safe, one instance per message.
+ */
+final class LiveServerMessageDecoder {
+
+  private final ObjectMapper objectMapper;
+  private final long maxMessageBytes;
+  private final JsonParser parser;
+  private final ByteBufferFeeder feeder;
+  private final TokenBuffer tokens;
+  private long received = 0;
+
+  LiveServerMessageDecoder(ObjectMapper objectMapper, long maxMessageBytes) throws IOException {
+    this.objectMapper = objectMapper;
+    this.maxMessageBytes = maxMessageBytes;
+    this.parser = objectMapper.getFactory().createNonBlockingByteBufferParser();
+    this.feeder = (ByteBufferFeeder) parser.getNonBlockingInputFeeder();
+    this.tokens = new TokenBuffer(parser);
+  }
+
+  /**
+   * @throws MessageTooLargeException if the message gets larger than the max message size
+   */
+  LiveServerMessageDecoder feed(ByteString part) throws IOException {
+    received += part.size();
+    if (received > maxMessageBytes) throw new MessageTooLargeException(maxMessageBytes);
+    for (ByteBuffer buffer : part.getByteBuffers()) {
+      feeder.feedInput(buffer);
+      parseAvailable();
+    }
+    return this;
+  }
+
+  LiveServerMessage end() throws IOException {
+    feeder.endOfInput();
+    parseAvailable();
+    parser.close();
+    if (tokens.firstToken() == null) throw new IOException("Empty server message");
+    try (var tokenParser = tokens.asParser(objectMapper)) {
+      var message = LiveServerMessageCodec.decode(tokenParser);
+      if (message != null) return message;
+    }
+    try (var tokenParser = tokens.asParser(objectMapper)) {
+      return objectMapper.readValue(tokenParser, LiveServerMessage.class);
+    }
+  }
+
+  private void parseAvailable() throws IOException {
+    JsonToken token;
+    while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+      tokens.copyCurrentEvent(parser);
+    }
+  }
+
+  static final class MessageTooLargeException extends IOException {
+    MessageTooLargeException(long maxMessageBytes) {
+      super("Server message larger than the max message size of " + maxMessageBytes + " bytes");
+    }
+  }
+}
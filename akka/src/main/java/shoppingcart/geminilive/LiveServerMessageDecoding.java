@@ -0,0 +1,122 @@
+package shoppingcart.geminilive;
+
+import akka.http.javadsl.model.ws.Message;
+import akka.stream.Attributes;
+import akka.stream.FlowShape;
+import akka.stream.Inlet;
+import akka.stream.Outlet;
+import akka.stream.javadsl.Source;
+import akka.stream.stage.AbstractInHandler;
+import akka.stream.stage.AbstractOutHandler;
+import akka.stream.stage.GraphStage;
+import akka.stream.stage.GraphStageLogic;
+import akka.util.ByteString;
+import shoppingcart.geminilive.LiveProtocol.LiveServerMessage;
+
+import java.io.IOException;
+
+/**
+ * Decodes the websocket messages from the server in order, one at a time. A strict message is parsed right away, the
+ * parts of a streamed message are fed to a {@link LiveServerMessageDecoder} as they arrive, within the stage, and the
+ * message is emitted when its last part has been fed.
+ */
+final class LiveServerMessageDecoding extends GraphStage<FlowShape<Message, LiveServerMessage>> {
+
+  private final long maxMessageBytes;
+
+  public final Inlet<Message> in = Inlet.create("LiveServerMessageDecoding.in");
+  public final Outlet<LiveServerMessage> out = Outlet.create("LiveServerMessageDecoding.out");
+  private final FlowShape<Message, LiveServerMessage> shape = FlowShape.of(in, out);
+
+  /**
+   * @param maxMessageBytes larger messages fail the stream with an {@link IOException}
+   */
+  LiveServerMessageDecoding(long maxMessageBytes) {
+    this.maxMessageBytes = maxMessageBytes;
+  }
+
+  @Override
+  public FlowShape<Message, LiveServerMessage> shape() {
+    return shape;
+  }
+
+  @Override
+  public GraphStageLogic createLogic(Attributes inheritedAttributes) {
+    return new GraphStageLogic(shape) {
+      // both null while no streamed message is being decoded
+      private SubSinkInlet<ByteString> parts = null;
+      private LiveServerMessageDecoder decoder = null;
+
+      {
+        setHandler(in, new AbstractInHandler() {
+          @Override
+          public void onPush() throws IOException {
+            var message = grab(in);
+            if (message.isStrict()) {
+              push(out, GeminiLiveApiClient.decodeStrict(message, maxMessageBytes));
+            } else {
+              decodeStreamed(message);
+            }
+          }
+
+          @Override
+          public void onUpstreamFinish() {
+            // else completed once the streamed message is decoded
+            if (parts == null) completeStage();
+          }
+        });
+
+        setHandler(out, new AbstractOutHandler() {
+          @Override
+          public void onPull() {
+            // a streamed message being decoded pulls its parts itself
+            if (parts == null) pull(in);
+          }
+        });
+      }
+
+      @Override
+      public void postStop() {
+        if (parts != null && !parts.isClosed()) parts.cancel();
+      }
+
+      private void decodeStreamed(Message message) throws IOException {
+        Source<ByteString, ?> source = message.isText()
+            ? message.asTextMessage().getStreamedText().map(ByteString::fromString)
+            : message.asBinaryMessage().getStreamedData();
+        decoder = new LiveServerMessageDecoder(GeminiLiveApiClient.objectMapper, maxMessageBytes);
+        var inlet = new SubSinkInlet<ByteString>("LiveServerMessageDecoding.parts");
+        inlet.setHandler(new AbstractInHandler() {
+          @Override
+          public void onPush() throws IOException {
+            decoder.feed(inlet.grab());
+            inlet.pull();
+          }
+
+          @Override
+          public void onUpstreamFinish() {
+            LiveServerMessage decoded;
+            try {
+              decoded = decoder.end();
+            } catch (IOException e) {
+              throw new RuntimeException("Failed to parse response json", e);
+            }
+            parts = null;
+            decoder = null;
+            // out has been pulled, nothing was pushed since the message was taken in
+            push(out, decoded);
+            if (isClosed(in)) completeStage();
+          }
+
+          @Override
+          public void onUpstreamFailure(Throwable ex) {
+            failStage(ex);
+          }
+        });
+        parts = inlet;
+        source.runWith(inlet.sink(), subFusingMaterializer());
+        inlet.pull();
+      }
+    };
+  }
+}
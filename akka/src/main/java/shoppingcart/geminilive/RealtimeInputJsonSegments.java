@@ -0,0 +1,120 @@
+package shoppingcart.geminilive;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import shoppingcart.geminilive.LiveProtocol.Blob;
+import shoppingcart.geminilive.LiveProtocol.LiveClientRealtimeInput;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazily renders a realtime input client message as json text segments, base64 encoding the media payloads
+ * one segment at a time, so that a large payload is never materialized as a single json or base64 string.
+ * <p>
+ * Concatenating the segments gives the same json as the object mapper in {@link GeminiLiveApiClient} would produce.
+ * Not thread safe, a new instance is needed for each rendering of a message.
+ */
+final class RealtimeInputJsonSegments implements Iterator<String> {
+
+  // must be a multiple of 3 so that base64 for consecutive segments can be concatenated without padding in between
+  static final int SEGMENT_PAYLOAD_BYTES = 12 * 1024;
+
+  private static final String MESSAGE_START = "{\"realtimeInput\":{\"mediaChunks\":[";
+  private static final String MESSAGE_END = "]}}";
+
+  private final List<Blob> blobs;
+  // reused for every base64 segment, one segment is 16 KB of base64 text
+  private final byte[] segmentBytes = new byte[SEGMENT_PAYLOAD_BYTES];
+  private final ByteArrayOutputStream segmentBuffer = new ByteArrayOutputStream(SEGMENT_PAYLOAD_BYTES / 3 * 4);
+
+  private int blobIndex = 0;
+  private int payloadOffset = -1; // -1 means the start of the current blob has not been emitted yet
+  private OutputStream base64;
+  private boolean started = false;
+  private boolean done = false;
+
+  RealtimeInputJsonSegments(LiveClientRealtimeInput input) {
+    this.blobs = input.mediaChunks();
+  }
+
+  static long payloadBytes(LiveClientRealtimeInput input) {
+    long total = 0;
+    for (var blob : input.mediaChunks()) {
+      if (blob.data() != null) total += blob.data().remaining();
+    }
+    return total;
+  }
+
+  @Override
+  public boolean hasNext() {
+    return !done;
+  }
+
+  @Override
+  public String next() {
+    if (done) throw new NoSuchElementException();
+    if (!started) {
+      started = true;
+      return MESSAGE_START;
+    }
+    if (blobIndex == blobs.size()) {
+      done = true;
+      return MESSAGE_END;
+    }
+
+    var blob = blobs.get(blobIndex);
+    var data = blob.data();
+    boolean hasData = data != null;
+    if (payloadOffset == -1) {
+      payloadOffset = 0;
+      var separator = blobIndex > 0 ? "," : "";
+      if (hasData) {
+        base64 = Base64.getEncoder().wrap(segmentBuffer);
+        return separator + "{\"data\":\"";
+      } else {
+        return separator + "{";
+      }
+    }
+    if (hasData && payloadOffset < data.remaining()) {
+      return nextPayloadSegment(data);
+    }
+
+    // end of the current blob
+    blobIndex++;
+    payloadOffset = -1;
+    var mimeType = blob.mimeType();
+    var closeData = hasData ? "\"" : "";
+    if (mimeType == null || mimeType.isEmpty()) {
+      return closeData + "}";
+    } else {
+      var quotedMimeType = new String(JsonStringEncoder.getInstance().quoteAsString(mimeType));
+      return closeData + (hasData ? "," : "") + "\"mimeType\":\"" + quotedMimeType + "\"}";
+    }
+  }
+
+  private String nextPayloadSegment(ByteBuffer data) {
+    try {
+      int length = Math.min(SEGMENT_PAYLOAD_BYTES, data.remaining() - payloadOffset);
+      // read-only buffers do not expose their array, copy one segment at a time into a small reused array instead
+      data.get(data.position() + payloadOffset, segmentBytes, 0, length);
+      base64.write(segmentBytes, 0, length);
+      payloadOffset += length;
+      // writes of whole 3 byte groups are flushed right away, only the last one can leave bytes behind for padding
+      if (payloadOffset == data.remaining()) base64.close();
+      var segment = segmentBuffer.toString(StandardCharsets.ISO_8859_1);
+      segmentBuffer.reset();
+      return segment;
+    } catch (IOException e) {
+      // never happens for an in memory stream
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,328 @@
+package shoppingcart.geminilive;
+
+import akka.NotUsed;
+import akka.stream.Attributes;
+import akka.stream.FlowShape;
+import akka.stream.Inlet;
+import akka.stream.Outlet;
+import akka.stream.javadsl.Source;
+import akka.stream.stage.AbstractInHandler;
+import akka.stream.stage.AbstractOutHandler;
+import akka.stream.stage.GraphStage;
+import akka.stream.stage.GraphStageLogic;
+import akka.stream.stage.TimerGraphStageLogic;
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import shoppingcart.geminilive.LiveProtocol.LiveClientContent;
+import shoppingcart.geminilive.LiveProtocol.LiveClientMessage;
+import shoppingcart.geminilive.LiveProtocol.LiveServerMessage;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+/**
+ * A Gemini Live session that survives the websocket being dropped: the client messages are sent over a new
+ * connection, opened with exponential backoff, instead of the stream failing.
+ * <p>
+ * Each connection sends the setup itself. The client content sent so far, the initial context and the most recent of
+ * the cart changes since, is kept and sent again first on every new connection, marked as not completing a turn so
+ * that the model does not answer it a second time. While there is no connection the client messages keep being taken in, the most recent
+ * are kept in a bounded buffer and sent after the replayed content once connected, older realtime input is dropped
+ * first. The stream fails when a connection can not be opened within the max attempts.
+ * <p>
+ * Only the setup complete of the first connection is passed on, so that downstream does not see the reconnects.
+ */
+public final class ReconnectingLiveSession extends GraphStage<FlowShape<LiveClientMessage, LiveServerMessage>> {
+
+  private static final Logger logger = LoggerFactory.getLogger(ReconnectingLiveSession.class);
+
+  /**
+   * @param enabled Whether dropped sessions are reconnected at all
+   * @param minBackoff Delay before the first reconnect attempt
+   * @param maxBackoff Max delay between reconnect attempts, the delay doubles with each failed attempt
+   * @param randomFactor Random extra delay, as a factor of the delay, so that sessions do not reconnect in lockstep
+   * @param maxAttempts Reconnect attempts without getting a message from the server before the stream fails
+   * @param replayBufferSize Client messages kept while there is no connection
+   * @param replayedUpdates Client content after the first, the initial context, sent again on a new connection, the
+   *                        oldest is dropped first
+   */
+  public record Settings(boolean enabled, Duration minBackoff, Duration maxBackoff, double randomFactor,
+                         int maxAttempts, int replayBufferSize, int replayedUpdates) {
+    public Settings {
+      if (minBackoff.isNegative() || maxBackoff.compareTo(minBackoff) < 0) {
+        throw new IllegalArgumentException("Backoffs must be 0 <= min-backoff <= max-backoff");
+      }
+      if (randomFactor < 0) throw new IllegalArgumentException("random-factor must not be negative");
+      if (maxAttempts <= 0) throw new IllegalArgumentException("max-attempts must be greater than zero");
+      if (replayBufferSize <= 0) throw new IllegalArgumentException("replay-buffer-size must be greater than zero");
+      if (replayedUpdates < 0) throw new IllegalArgumentException("replayed-updates must not be negative");
+    }
+
+    public static Settings fromConfig(Config config) {
+      return new Settings(
+          config.getBoolean("enabled"),
+          config.getDuration("min-backoff"),
+          config.getDuration("max-backoff"),
+          config.getDouble("random-factor"),
+          config.getInt("max-attempts"),
+          config.getInt("replay-buffer-size"),
+          config.getInt("replayed-updates"));
+    }
+
+    /**
+     * @param attempt the reconnect attempt, starting at 1
+     */
+    Duration backoff(int attempt) {
+      var nanos = minBackoff.toNanos() * Math.pow(2, Math.min(attempt - 1, 30));
+      nanos = Math.min(nanos, maxBackoff.toNanos());
+      nanos *= 1 + ThreadLocalRandom.current().nextDouble() * randomFactor;
+      return Duration.ofNanos((long) nanos);
+    }
+  }
+
+  /**
+   * Notified from within the stream of connections being lost and reopened.
+   */
+  public interface Listener {
+    /**
+     * @param attempt the reconnect attempt about to be made after a backoff, starting at 1
+     * @param cause the failure of the connection, or null if it was closed by the server
+     */
+    void disconnected(int attempt, Throwable cause);
+
+    /**
+     * The server sent a message over the new connection.
+     *
+     * @param gapNanos time from the connection being lost to the first message over the new connection
+     * @param dropped client messages dropped from the buffer while there was no connection
+     */
+    void reconnected(long gapNanos, int dropped);
+
+    /**
+     * No connection could be opened within the max attempts, the stream fails.
+     */
+    void gaveUp();
+  }
+
+  private final Settings settings;
+  private final Function<Source<LiveClientMessage, NotUsed>, Source<LiveServerMessage, NotUsed>> connect;
+  private final Listener listener;
+
+  public final Inlet<LiveClientMessage> in = Inlet.create("ReconnectingLiveSession.in");
+  public final Outlet<LiveServerMessage> out = Outlet.create("ReconnectingLiveSession.out");
+  private final FlowShape<LiveClientMessage, LiveServerMessage> shape = FlowShape.of(in, out);
+
+  /**
+   * @param connect opens a new session sending the given client messages, after the setup
+   */
+  public ReconnectingLiveSession(Settings settings,
+                                 Function<Source<LiveClientMessage, NotUsed>, Source<LiveServerMessage, NotUsed>> connect,
+                                 Listener listener) {
+    this.settings = settings;
+    this.connect = connect;
+    this.listener = listener;
+  }
+
+  @Override
+  public FlowShape<LiveClientMessage, LiveServerMessage> shape() {
+    return shape;
+  }
+
+  @Override
+  public GraphStageLogic createLogic(Attributes inheritedAttributes) {
+    return new TimerGraphStageLogic(shape) {
+      private final ArrayDeque<LiveClientMessage> pending = new ArrayDeque<>();
+      // client content sent so far, replayed on a new connection
+      private LiveClientMessage sentContext = null;
+      private final ArrayDeque<LiveClientMessage> sentUpdates = new ArrayDeque<>();
+      private final ArrayDeque<LiveClientMessage> replay = new ArrayDeque<>();
+
+      // both null while waiting to reconnect
+      private SubSourceOutlet<LiveClientMessage> toGemini = null;
+      private SubSinkInlet<LiveServerMessage> fromGemini = null;
+
+      // failed attempts since the server last sent a message
+      private int attempt = 0;
+      // setup complete of later connections is not passed on
+      private boolean setupCompleted = false;
+      private long disconnectedNanos = -1;
+      private int dropped = 0;
+
+      {
+        setHandler(in, new AbstractInHandler() {
+          @Override
+          public void onPush() {
+            enqueue(grab(in));
+            sendPending();
+            pullIfReady();
+          }
+
+          @Override
+          public void onUpstreamFinish() {
+            if (toGemini == null) {
+              completeStage();
+            } else {
+              sendPending();
+            }
+          }
+        });
+
+        setHandler(out, new AbstractOutHandler() {
+          @Override
+          public void onPull() {
+            if (fromGemini != null && !fromGemini.hasBeenPulled() && !fromGemini.isClosed()) fromGemini.pull();
+          }
+        });
+      }
+
+      @Override
+      public void preStart() {
+        open();
+        pull(in);
+      }
+
+      @Override
+      public void onTimer(Object timerKey) {
+        replay.clear();
+        if (sentContext != null) replay.add(sentContext);
+        replay.addAll(sentUpdates);
+        open();
+        sendPending();
+      }
+
+      @Override
+      public void postStop() {
+        if (toGemini != null && !toGemini.isClosed()) toGemini.complete();
+        if (fromGemini != null && !fromGemini.isClosed()) fromGemini.cancel();
+      }
+
+      private void open() {
+        var outlet = new SubSourceOutlet<LiveClientMessage>("ReconnectingLiveSession.toGemini");
+        var inlet = new SubSinkInlet<LiveServerMessage>("ReconnectingLiveSession.fromGemini");
+        outlet.setHandler(new AbstractOutHandler() {
+          @Override
+          public void onPull() {
+            sendPending();
+            pullIfReady();
+          }
+
+          @Override
+          public void onDownstreamFinish(Throwable cause) {
+            // the connection is going away, handled when its output ends
+          }
+        });
+        inlet.setHandler(new AbstractInHandler() {
+          @Override
+          public void onPush() {
+            if (disconnectedNanos >= 0) {
+              var gapNanos = System.nanoTime() - disconnectedNanos;
+              logger.info("Gemini Live session reconnected after {} ms, {} client messages dropped",
+                  gapNanos / 1_000_000, dropped);
+              listener.reconnected(gapNanos, dropped);
+              disconnectedNanos = -1;
+              dropped = 0;
+            }
+            attempt = 0;
+            var message = inlet.grab();
+            if (message.setupComplete().isPresent()) {
+              if (setupCompleted) {
+                inlet.pull();
+                return;
+              }
+              setupCompleted = true;
+            }
+            push(out, message);
+          }
+
+          @Override
+          public void onUpstreamFinish() {
+            connectionLost(null);
+          }
+
+          @Override
+          public void onUpstreamFailure(Throwable ex) {
+            connectionLost(ex);
+          }
+        });
+        toGemini = outlet;
+        fromGemini = inlet;
+        connect.apply(Source.fromGraph(outlet.source())).runWith(inlet.sink(), subFusingMaterializer());
+        if (isAvailable(out)) inlet.pull();
+      }
+
+      private void connectionLost(Throwable cause) {
+        if (!toGemini.isClosed()) toGemini.complete();
+        toGemini = null;
+        fromGemini = null;
+        if (isClosed(in) && pending.isEmpty()) {
+          // the client is done, the server closing the connection is the normal end of the session
+          if (cause == null) completeStage();
+          else failStage(cause);
+          return;
+        }
+        attempt++;
+        if (attempt > settings.maxAttempts()) {
+          logger.warn("Gemini Live session could not be reconnected within {} attempts", settings.maxAttempts());
+          listener.gaveUp();
+          failStage(cause != null ? cause : new IllegalStateException(
+              "Gemini Live session closed, could not reconnect within " + settings.maxAttempts() + " attempts"));
+          return;
+        }
+        if (disconnectedNanos < 0) disconnectedNanos = System.nanoTime();
+        var backoff = settings.backoff(attempt);
+        logger.warn("Gemini Live session lost ({}), reconnect attempt {} in {} ms",
+            cause == null ? "closed by server" : cause.toString(), attempt, backoff.toMillis());
+        listener.disconnected(attempt, cause);
+        scheduleOnce("reconnect", backoff);
+        pullIfReady();
+      }
+
+      private void enqueue(LiveClientMessage message) {
+        if (pending.size() >= settings.replayBufferSize()) {
+          var iterator = pending.iterator();
+          var removed = false;
+          while (iterator.hasNext() && !removed) {
+            if (iterator.next().realtimeInput().isPresent()) {
+              iterator.remove();
+              removed = true;
+            }
+          }
+          if (!removed) pending.poll();
+          dropped++;
+        }
+        pending.add(message);
+      }
+
+      private void sendPending() {
+        if (toGemini == null) return;
+        if (toGemini.isAvailable()) {
+          if (!replay.isEmpty()) {
+            toGemini.push(replay.poll());
+          } else if (!pending.isEmpty()) {
+            var message = pending.poll();
+            message.clientContent().ifPresent(content -> keepSent(LiveClientMessage.clientContent(new LiveClientContent(content.turns(), false))));
+            toGemini.push(message);
+          }
+        }
+        if (isClosed(in) && replay.isEmpty() && pending.isEmpty() && !toGemini.isClosed()) toGemini.complete();
+      }
+
+      private void keepSent(LiveClientMessage content) {
+        if (sentContext == null) {
+          sentContext = content;
+        } else if (settings.replayedUpdates() > 0) {
+          if (sentUpdates.size() == settings.replayedUpdates()) sentUpdates.poll();
+          sentUpdates.add(content);
+        }
+      }
+
+      private void pullIfReady() {
+        // while connected the client is backpressured by the connection, without one the buffer keeps the newest
+        if ((toGemini == null || (replay.isEmpty() && pending.isEmpty())) && !hasBeenPulled(in) && !isClosed(in)) pull(in);
+      }
+    };
+  }
+}
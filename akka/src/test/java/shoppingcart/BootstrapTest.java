@@ -0,0 +1,50 @@
+package shoppingcart;
+
+import akka.actor.ActorSystem;
+import akka.javasdk.client.ComponentClient;
+import akka.stream.Materializer;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import shoppingcart.api.AIContextEndpoint;
+import shoppingcart.api.MetricsEndpoint;
+import shoppingcart.api.ResponseEndpoint;
+import shoppingcart.api.ShoppingCartEndpoint;
+import shoppingcart.api.VideoServiceEndpointImpl;
+import shoppingcart.application.AIContextCacheInvalidator;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+public class BootstrapTest {
+
+  private static final ActorSystem system = ActorSystem.create("BootstrapTest");
+
+  // provided by the SDK itself, not by the dependency provider
+  private static final Set<Class<?>> sdkProvided = Set.of(Config.class, ComponentClient.class, Materializer.class);
+
+  @AfterAll
+  public static void shutdown() {
+    system.terminate();
+  }
+
+  @Test
+  public void provideEveryConstructorDependencyOfTheComponents() {
+    // the component client is only used once components are called
+    var bootstrap = new Bootstrap(ConfigFactory.load(), null, Materializer.matFromSystem(system));
+    var provider = bootstrap.createDependencyProvider();
+    var components = List.of(VideoServiceEndpointImpl.class, MetricsEndpoint.class, ResponseEndpoint.class,
+        AIContextEndpoint.class, ShoppingCartEndpoint.class, AIContextCacheInvalidator.class);
+    for (var component : components) {
+      for (var constructor : component.getConstructors()) {
+        for (var parameter : constructor.getParameterTypes()) {
+          if (sdkProvided.contains(parameter)) continue;
+          assertNotNull(provider.getDependency(parameter), component.getSimpleName() + " needs " + parameter.getSimpleName());
+        }
+      }
+    }
+  }
+}
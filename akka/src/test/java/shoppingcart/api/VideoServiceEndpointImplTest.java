@@ -0,0 +1,76 @@
+package shoppingcart.api;
+
+import akka.actor.ActorSystem;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import shoppingcart.application.Acks;
+import shoppingcart.application.ResponseTurnAssembly;
+import shoppingcart.geminilive.LiveProtocol.Content;
+import shoppingcart.geminilive.LiveProtocol.LiveServerContent;
+import shoppingcart.geminilive.LiveProtocol.LiveServerMessage;
+import shoppingcart.geminilive.LiveProtocol.Part;
+import shoppingcart.video.Ack;
+import shoppingcart.video.Status;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class VideoServiceEndpointImplTest {
+
+  private static final ActorSystem system = ActorSystem.create("VideoServiceEndpointImplTest");
+
+  @AfterAll
+  public static void shutdown() {
+    system.terminate();
+  }
+
+  private static ResponseTurnAssembly.Output received(String text) {
+    var modelTurn = new Content(List.of(Part.text(text)), Optional.of("model"));
+    var serverContent = new LiveServerContent(Optional.of(modelTurn), Optional.of(false), Optional.of(false));
+    return new ResponseTurnAssembly.Received(
+        new LiveServerMessage(Optional.empty(), Optional.of(serverContent), Optional.empty(), Optional.empty(), Optional.empty()));
+  }
+
+  private static String describe(Ack ack) {
+    return switch (ack.getKindCase()) {
+      case CONTENT_DELTA -> ack.getContentDelta().getText();
+      case STATUS -> ack.getStatus().getCode().name();
+      default -> ack.getKindCase().name();
+    };
+  }
+
+  private final List<ResponseTurnAssembly.Output> outputs = List.of(
+      received("a"), new ResponseTurnAssembly.TurnAssembled("a"), received("b"), received("c"));
+
+  @Test
+  public void notHoldBackAcksWhileResponsesAreStored() throws Exception {
+    // a write that does not complete
+    var acks = Source.from(outputs)
+        .via(VideoServiceEndpointImpl.acks(4, response -> new CompletableFuture<>()))
+        .take(3)
+        .runWith(Sink.seq(), system)
+        .toCompletableFuture().get(3, TimeUnit.SECONDS);
+    assertEquals(List.of("a", "b", "c"), acks.stream().map(VideoServiceEndpointImplTest::describe).toList());
+  }
+
+  @Test
+  public void ackStoredResponsesBeforeCompleting() throws Exception {
+    var write = new CompletableFuture<Ack>();
+    var acks = Source.from(outputs)
+        .via(VideoServiceEndpointImpl.acks(4, response -> write))
+        .map(ack -> {
+          // stored once the acks of the later messages are through
+          if (describe(ack).equals("c")) write.complete(Acks.status(Status.Code.RESPONSE_STORED, "Response stored"));
+          return ack;
+        })
+        .runWith(Sink.seq(), system);
+    assertEquals(List.of("a", "b", "c", "RESPONSE_STORED"),
+        acks.toCompletableFuture().get(3, TimeUnit.SECONDS).stream().map(VideoServiceEndpointImplTest::describe).toList());
+  }
+}
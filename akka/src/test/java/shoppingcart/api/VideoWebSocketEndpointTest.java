@@ -0,0 +1,99 @@
+package shoppingcart.api;
+
+import akka.actor.ActorSystem;
+import akka.http.javadsl.model.ws.BinaryMessage;
+import akka.http.javadsl.model.ws.Message;
+import akka.http.javadsl.model.ws.TextMessage;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import shoppingcart.application.Acks;
+import shoppingcart.video.Status;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class VideoWebSocketEndpointTest {
+
+  private static final ActorSystem system = ActorSystem.create("VideoWebSocketEndpointTest");
+
+  @AfterAll
+  public static void shutdown() {
+    system.terminate();
+  }
+
+  private static ByteString frame(String mimeType, String payload) {
+    return ByteString.fromArray(new byte[] {(byte) mimeType.length()})
+        .concat(ByteString.fromString(mimeType, StandardCharsets.US_ASCII))
+        .concat(ByteString.fromString(payload));
+  }
+
+  // acks describing each input, instead of the real video stream
+  private final VideoWebSocketEndpoint endpoint = new VideoWebSocketEndpoint(
+      in -> in.zipWithIndex().map(pair -> {
+        var input = pair.first();
+        var text = input.hasChunk()
+            ? input.getChunk().getMimeType() + ":" + input.getChunk().getPayload().toStringUtf8()
+            : input.getContextIds().getAiContextId() + "/" + input.getContextIds().getCartId();
+        return Acks.contentDelta(text).toBuilder().setSeq(pair.second() + 1).build();
+      }),
+      new VideoWebSocketEndpoint.Settings(true, "localhost", 0, 1024, Duration.ofSeconds(3)));
+
+  private List<String> run(Message... messages) throws Exception {
+    return Source.from(List.of(messages))
+        // the client closing the websocket ends the stream, keep it open until all acks are in
+        .concat(Source.maybe())
+        .via(endpoint.flow())
+        .map(message -> message.asTextMessage().getStrictText())
+        .take(messages.length)
+        .runWith(Sink.seq(), system)
+        .toCompletableFuture()
+        .get(3, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void feedContextIdsAndMimeTaggedFramesToTheVideoStream() throws Exception {
+    var acks = run(
+        TextMessage.create("{\"aiContextId\":\"gemini-live\",\"cartId\":\"cart-1\"}"),
+        BinaryMessage.create(frame("image/jpeg", "frame-1")),
+        // a message streamed in parts
+        BinaryMessage.create(Source.from(List.of(frame("audio/pcm", "so"), ByteString.fromString("und")))));
+    assertEquals(List.of(
+        "{\"seq\":1,\"serverTimeMillis\":0,\"kind\":\"contentDelta\",\"message\":\"Content: gemini-live/cart-1\",\"text\":\"gemini-live/cart-1\"}",
+        "{\"seq\":2,\"serverTimeMillis\":0,\"kind\":\"contentDelta\",\"message\":\"Content: image/jpeg:frame-1\",\"text\":\"image/jpeg:frame-1\"}",
+        "{\"seq\":3,\"serverTimeMillis\":0,\"kind\":\"contentDelta\",\"message\":\"Content: audio/pcm:sound\",\"text\":\"audio/pcm:sound\"}"), acks);
+  }
+
+  @Test
+  public void sendTheFieldsOfTheAckKind() {
+    var toolCall = Acks.toolCall(List.of("add_item"), List.of("call-1")).toBuilder().setSeq(7).setServerTimeMillis(1000).build();
+    assertEquals(
+        "{\"seq\":7,\"serverTimeMillis\":1000,\"kind\":\"toolCall\",\"message\":\"Tool call received\"," +
+            "\"functionNames\":[\"add_item\"],\"cancellation\":false,\"ids\":[\"call-1\"]}",
+        VideoWebSocketEndpoint.toJson(toolCall));
+    assertEquals(
+        "{\"seq\":0,\"serverTimeMillis\":0,\"kind\":\"turnComplete\",\"message\":\"Turn interrupted\",\"interrupted\":true}",
+        VideoWebSocketEndpoint.toJson(Acks.turnComplete(true)));
+    assertEquals(
+        "{\"seq\":0,\"serverTimeMillis\":0,\"kind\":\"status\",\"message\":\"Setup complete\",\"status\":\"SETUP_COMPLETE\"}",
+        VideoWebSocketEndpoint.toJson(Acks.status(Status.Code.SETUP_COMPLETE, "Setup complete")));
+    assertEquals(
+        "{\"seq\":0,\"serverTimeMillis\":0,\"kind\":\"error\",\"message\":\"Error: boom\",\"error\":\"boom\"}",
+        VideoWebSocketEndpoint.toJson(Acks.error("boom")));
+  }
+
+  @Test
+  public void rejectMalformedFrames() {
+    assertThrows(IllegalArgumentException.class, () -> VideoWebSocketEndpoint.chunk(ByteString.emptyByteString()));
+    assertThrows(IllegalArgumentException.class, () -> VideoWebSocketEndpoint.chunk(ByteString.fromArray(new byte[] {10, 'i'})));
+    assertThrows(IllegalArgumentException.class, () -> VideoWebSocketEndpoint.contextIds("not json"));
+    assertThrows(Exception.class, () -> run(BinaryMessage.create(frame("image/jpeg", "x".repeat(2000)))));
+  }
+}
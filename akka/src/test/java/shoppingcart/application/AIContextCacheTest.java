@@ -0,0 +1,74 @@
+package shoppingcart.application;
+
+import org.junit.jupiter.api.Test;
+import shoppingcart.domain.AIContext;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class AIContextCacheTest {
+
+  private final AtomicLong clock = new AtomicLong();
+  private final AtomicInteger loads = new AtomicInteger();
+
+  private AIContextCache cache(int maxEntries) {
+    return new AIContextCache(
+        new AIContextCache.Settings(maxEntries, Duration.ofSeconds(60)),
+        id -> CompletableFuture.completedFuture(new AIContext(id + "-" + loads.incrementAndGet())),
+        clock::get);
+  }
+
+  private static String context(AIContextCache cache, String id) throws Exception {
+    return cache.get(id).toCompletableFuture().get().context();
+  }
+
+  @Test
+  public void cacheUntilTtlExpires() throws Exception {
+    var cache = cache(10);
+    assertEquals("a-1", context(cache, "a"));
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(59));
+    assertEquals("a-1", context(cache, "a"));
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    assertEquals("a-2", context(cache, "a"));
+    assertEquals(new AIContextCache.Stats(1, 2, 0, 0), cache.stats());
+  }
+
+  @Test
+  public void evictLeastRecentlyUsed() throws Exception {
+    var cache = cache(2);
+    context(cache, "a");
+    context(cache, "b");
+    context(cache, "a");
+    // b is the least recently used
+    context(cache, "c");
+    assertEquals("a-1", context(cache, "a"));
+    assertEquals("b-4", context(cache, "b"));
+    assertEquals(2, cache.stats().evictions());
+  }
+
+  @Test
+  public void reloadAfterInvalidation() throws Exception {
+    var cache = cache(10);
+    assertEquals("a-1", context(cache, "a"));
+    cache.invalidate("a");
+    assertEquals("a-2", context(cache, "a"));
+    assertEquals(1, cache.stats().invalidations());
+  }
+
+  @Test
+  public void doNotCacheFailures() throws Exception {
+    var cache = new AIContextCache(
+        new AIContextCache.Settings(10, Duration.ofSeconds(60)),
+        id -> loads.incrementAndGet() == 1 ?
+            CompletableFuture.failedFuture(new RuntimeException("boom")) :
+            CompletableFuture.completedFuture(new AIContext("ok")),
+        clock::get);
+    cache.get("a").exceptionally(error -> null).toCompletableFuture().get();
+    assertEquals("ok", context(cache, "a"));
+  }
+}
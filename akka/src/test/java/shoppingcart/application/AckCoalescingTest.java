@@ -0,0 +1,80 @@
+package shoppingcart.application;
+
+import akka.actor.ActorSystem;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import shoppingcart.video.Ack;
+import shoppingcart.video.Status;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class AckCoalescingTest {
+
+  private static final ActorSystem system = ActorSystem.create("AckCoalescingTest");
+
+  @AfterAll
+  public static void shutdown() {
+    system.terminate();
+  }
+
+  private static List<String> run(AckCoalescing.Settings settings, Source<Ack, ?> acks, int take) throws Exception {
+    return acks
+        .via(new AckCoalescing(settings, "test"))
+        .via(Acks.numbered())
+        .map(ack -> ack.getSeq() + ":" + ack.getMessage())
+        .take(take)
+        .runWith(Sink.seq(), system)
+        .toCompletableFuture()
+        .get(3, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void suppressStatusAcksAndMergeConsecutiveDeltas() throws Exception {
+    var settings = new AckCoalescing.Settings(true, Duration.ofSeconds(10), 1000);
+    var result = run(settings, Source.from(List.of(
+        Acks.status(Status.Code.SETUP_COMPLETE, "Setup complete"),
+        Acks.contentDelta("Hello"),
+        Acks.contentDelta(", "),
+        Acks.status(Status.Code.PROCESSING, "Processing..."),
+        Acks.contentDelta("world"),
+        Acks.turnComplete(false),
+        Acks.status(Status.Code.RESPONSE_STORED, "Response stored"),
+        Acks.contentDelta("Next"),
+        Acks.error("boom"))), 10);
+    assertEquals(List.of("1:Content: Hello, world", "2:Turn complete", "3:Content: Next", "4:Error: boom"), result);
+  }
+
+  @Test
+  public void emitWhenMaxCharsReached() throws Exception {
+    var settings = new AckCoalescing.Settings(true, Duration.ofSeconds(10), 4);
+    var result = run(settings, Source.from(List.of(
+        Acks.contentDelta("ab"), Acks.contentDelta("cd"), Acks.contentDelta("ef"))), 10);
+    assertEquals(List.of("1:Content: abcd", "2:Content: ef"), result);
+  }
+
+  @Test
+  public void emitWhenWindowPassed() throws Exception {
+    var settings = new AckCoalescing.Settings(true, Duration.ofMillis(50), 1000);
+    // upstream never completes, the delta must be emitted by the timer
+    var result = run(settings, Source.from(List.of(Acks.contentDelta("a"), Acks.contentDelta("b"))).concat(Source.never()), 1);
+    assertEquals(List.of("1:Content: ab"), result);
+  }
+
+  @Test
+  public void numberAcksWithServerTime() throws Exception {
+    var before = System.currentTimeMillis();
+    var acks = Source.from(List.of(Acks.contentDelta("a"), Acks.turnComplete(false)))
+        .via(Acks.numbered())
+        .runWith(Sink.seq(), system)
+        .toCompletableFuture()
+        .get(3, TimeUnit.SECONDS);
+    assertEquals(List.of(1L, 2L), acks.stream().map(Ack::getSeq).toList());
+    assertEquals(true, acks.stream().allMatch(ack -> ack.getServerTimeMillis() >= before));
+  }
+}
@@ -0,0 +1,81 @@
+package shoppingcart.application;
+
+import akka.actor.ActorSystem;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.google.protobuf.ByteString;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import shoppingcart.video.Chunk;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class AudioChunkBatchingTest {
+
+  private static final ActorSystem system = ActorSystem.create("AudioChunkBatchingTest");
+
+  @AfterAll
+  public static void shutdown() {
+    system.terminate();
+  }
+
+  private static Chunk chunk(String mimeType, String payload) {
+    return Chunk.newBuilder().setMimeType(mimeType).setPayload(ByteString.copyFromUtf8(payload)).build();
+  }
+
+  private static Chunk pcm(String payload) {
+    return chunk("audio/pcm", payload);
+  }
+
+  private static List<String> run(AudioChunkBatching.Settings settings, Source<Chunk, ?> chunks, int take) throws Exception {
+    return chunks
+        .map(ReceivedChunk::receivedNow)
+        .via(new AudioChunkBatching(settings, "test", new VideoPipelineMetrics()))
+        .map(chunk -> chunk.mimeType() + ":" + chunk.payload().toStringUtf8())
+        .take(take)
+        .runWith(Sink.seq(), system)
+        .toCompletableFuture()
+        .get(3, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void mergeConsecutivePcmChunks() throws Exception {
+    var settings = new AudioChunkBatching.Settings(Duration.ofSeconds(10), 1000);
+    var result = run(settings, Source.from(List.of(
+        pcm("a1"), pcm("a2"), chunk("image/jpeg", "f1"), pcm("a3"), chunk("audio/pcm;rate=24000", "b1"), pcm("a4"))), 10);
+    assertEquals(List.of(
+        "audio/pcm:a1a2", "image/jpeg:f1", "audio/pcm:a3", "audio/pcm;rate=24000:b1", "audio/pcm:a4"), result);
+  }
+
+  @Test
+  public void emitWhenMaxBytesReached() throws Exception {
+    var settings = new AudioChunkBatching.Settings(Duration.ofSeconds(10), 4);
+    var result = run(settings, Source.from(List.of(pcm("a1"), pcm("a2"), pcm("a3"), pcm("a4"), pcm("a5"))), 10);
+    assertEquals(List.of("audio/pcm:a1a2", "audio/pcm:a3a4", "audio/pcm:a5"), result);
+  }
+
+  @Test
+  public void emitWhenWindowPassed() throws Exception {
+    var settings = new AudioChunkBatching.Settings(Duration.ofMillis(50), 1000);
+    // upstream never completes, the batch must be emitted by the timer
+    var result = run(settings, Source.from(List.of(pcm("a1"), pcm("a2"))).concat(Source.never()), 1);
+    assertEquals(List.of("audio/pcm:a1a2"), result);
+  }
+
+  @Test
+  public void keepReceiveTimeOfFirstChunkInBatch() throws Exception {
+    var settings = new AudioChunkBatching.Settings(Duration.ofSeconds(10), 1000);
+    var result = Source.from(List.of(new ReceivedChunk(pcm("a1"), 1), new ReceivedChunk(pcm("a2"), 2)))
+        .via(new AudioChunkBatching(settings, "test", new VideoPipelineMetrics()))
+        .runWith(Sink.seq(), system)
+        .toCompletableFuture()
+        .get(3, TimeUnit.SECONDS);
+    assertEquals(1, result.size());
+    assertEquals(1, result.get(0).receivedNanos());
+    assertEquals("a1a2", result.get(0).payload().toStringUtf8());
+  }
+}
@@ -0,0 +1,103 @@
+package shoppingcart.application;
+
+import akka.NotUsed;
+import akka.actor.ActorSystem;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import shoppingcart.application.CartChangesView.CartChange;
+import shoppingcart.application.CartChangesView.CartChangesRow;
+import shoppingcart.domain.ShoppingCart.LineItem;
+import shoppingcart.domain.ShoppingCartEvent;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class CartSessionsTest {
+
+  private static final ActorSystem system = ActorSystem.create("CartSessionsTest");
+
+  @AfterAll
+  public static void shutdown() {
+    system.terminate();
+  }
+
+  private final ShoppingCartEvent tvAdded = new ShoppingCartEvent.ItemAdded(new LineItem("tv", "Super TV 55'", 2));
+  private final ShoppingCartEvent tableAdded = new ShoppingCartEvent.ItemAdded(new LineItem("tv-table", "TV table", 1));
+  private final ShoppingCartEvent tableRemoved = new ShoppingCartEvent.ItemRemoved("tv-table");
+
+  private static CartChangesRow row(String cartId, CartChange... changes) {
+    return new CartChangesRow(cartId, List.of(changes));
+  }
+
+  private static CartSessions cartSessions(List<CartChangesRow> rows) {
+    return new CartSessions(new CartSessions.Settings(16, Duration.ofMillis(100)),
+        cartId -> Source.from(rows).filter(row -> row.cartId().equals(cartId)).concat(Source.<CartChangesRow>never())
+            .mapMaterializedValue(ignored -> NotUsed.getInstance()));
+  }
+
+  @Test
+  public void skipChangesAlreadyInTheCartAsRead() throws Exception {
+    var first = CartChange.of(1, tvAdded);
+    var second = CartChange.of(2, tableAdded);
+    var third = CartChange.of(3, tableRemoved);
+    // the view row as it was when subscribing, and after each further change
+    var cartSessions = cartSessions(List.of(
+        row("cart-1", first, second),
+        row("cart-2", first),
+        row("cart-1", first, second, third)));
+
+    var updates = cartSessions.updatesAfter("cart-1", CompletableFuture.completedFuture(1L))
+        .take(2).runWith(Sink.seq(), system);
+
+    assertEquals(List.of(tableAdded, tableRemoved), updates.toCompletableFuture().get(3, TimeUnit.SECONDS));
+    awaitActiveSessions(cartSessions, 0);
+  }
+
+  @Test
+  public void subscribeOnceTheCartIsRead() throws Exception {
+    var cartSessions = cartSessions(List.of(row("cart-1", CartChange.of(4, tvAdded), CartChange.of(5, tableAdded))));
+    var cartRead = new CompletableFuture<Long>();
+    var updates = cartSessions.updatesAfter("cart-1", cartRead).take(1).runWith(Sink.seq(), system);
+    awaitActiveSessions(cartSessions, 1);
+
+    cartRead.complete(4L);
+
+    assertEquals(List.of(tableAdded), updates.toCompletableFuture().get(3, TimeUnit.SECONDS));
+    awaitActiveSessions(cartSessions, 0);
+  }
+
+  @Test
+  public void sendOnlyTheChangesNotSentBefore() throws Exception {
+    var first = CartChange.of(1, tvAdded);
+    var second = CartChange.of(2, tableAdded);
+    // the view does not keep the first change any more
+    var third = CartChange.of(3, tableRemoved);
+    var cartSessions = cartSessions(List.of(row("cart-1", first), row("cart-1", first, second), row("cart-1", second, third)));
+
+    var updates = cartSessions.updatesAfter("cart-1", CompletableFuture.completedFuture(0L))
+        .take(3).runWith(Sink.seq(), system);
+
+    assertEquals(List.of(tvAdded, tableAdded, tableRemoved), updates.toCompletableFuture().get(3, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void roundTripChangesThroughTheView() {
+    var checkedOut = new ShoppingCartEvent.CheckedOut();
+    for (var event : List.of(tvAdded, tableRemoved, checkedOut)) {
+      assertEquals(event, CartChange.of(1, event).event());
+    }
+  }
+
+  private static void awaitActiveSessions(CartSessions cartSessions, int expected) throws InterruptedException {
+    for (int i = 0; i < 100 && cartSessions.activeSessions() != expected; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(expected, cartSessions.activeSessions());
+  }
+}
@@ -0,0 +1,106 @@
+package shoppingcart.application;
+
+import akka.actor.ActorSystem;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.google.protobuf.ByteString;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import shoppingcart.domain.AIContext.FrameDeduplication;
+import shoppingcart.video.Chunk;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FrameDeduplicatorTest {
+
+  private static final ActorSystem system = ActorSystem.create("FrameDeduplicatorTest");
+
+  @AfterAll
+  public static void shutdown() {
+    system.terminate();
+  }
+
+  private final AtomicLong clock = new AtomicLong();
+
+  private static Chunk jpeg(Color background, int boxX) throws Exception {
+    var image = new BufferedImage(640, 480, BufferedImage.TYPE_INT_RGB);
+    var graphics = image.createGraphics();
+    graphics.setPaint(new GradientPaint(0, 0, background, 640, 480, Color.WHITE));
+    graphics.fillRect(0, 0, 640, 480);
+    graphics.setColor(Color.BLACK);
+    graphics.fillRect(boxX, 100, 200, 200);
+    graphics.dispose();
+    var out = new ByteArrayOutputStream();
+    ImageIO.write(image, "jpg", out);
+    return Chunk.newBuilder().setMimeType("image/jpeg").setPayload(ByteString.copyFrom(out.toByteArray())).build();
+  }
+
+  @Test
+  public void dropUnchangedFrames() throws Exception {
+    var deduplicator = new FrameDeduplicator(new FrameDeduplication(4, 10), clock::get);
+
+    assertTrue(deduplicator.shouldForward(jpeg(Color.BLUE, 50)));
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    assertFalse(deduplicator.shouldForward(jpeg(Color.BLUE, 50)));
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    // the box moved to the other side
+    assertTrue(deduplicator.shouldForward(jpeg(Color.BLUE, 400)));
+
+    assertEquals(2, deduplicator.forwarded());
+    assertEquals(1, deduplicator.dropped());
+  }
+
+  @Test
+  public void forceKeyframes() throws Exception {
+    var deduplicator = new FrameDeduplicator(new FrameDeduplication(4, 3), clock::get);
+    var frame = jpeg(Color.RED, 50);
+
+    assertTrue(deduplicator.shouldForward(frame));
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(2));
+    assertFalse(deduplicator.shouldForward(frame));
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    assertTrue(deduplicator.shouldForward(frame));
+    assertEquals(1, deduplicator.keyframes());
+  }
+
+  @Test
+  public void alwaysForwardNonImages() {
+    var deduplicator = new FrameDeduplicator(new FrameDeduplication(64, 10), clock::get);
+    var audio = Chunk.newBuilder().setMimeType("audio/pcm").setPayload(ByteString.copyFrom(new byte[2048])).build();
+    var broken = Chunk.newBuilder().setMimeType("image/jpeg").setPayload(ByteString.copyFrom(new byte[10])).build();
+
+    assertTrue(deduplicator.shouldForward(audio));
+    assertTrue(deduplicator.shouldForward(audio));
+    assertTrue(deduplicator.shouldForward(broken));
+    assertTrue(deduplicator.shouldForward(broken));
+  }
+
+  @Test
+  public void hashFramesOffTheStreamInOrder() throws Exception {
+    var metrics = new VideoPipelineMetrics();
+    var audio = Chunk.newBuilder().setMimeType("audio/pcm").setPayload(ByteString.copyFrom(new byte[4])).build();
+    var chunks = List.of(jpeg(Color.BLUE, 50), jpeg(Color.BLUE, 50), audio, jpeg(Color.BLUE, 400), jpeg(Color.BLUE, 400));
+
+    var forwarded = Source.from(chunks)
+        .map(ReceivedChunk::receivedNow)
+        .via(FrameDeduplicator.flow(new FrameDeduplication(4, 10),
+            new FrameDeduplicator.Settings(4, "akka.actor.default-blocking-io-dispatcher"), "test", metrics))
+        .map(ReceivedChunk::chunk)
+        .runWith(Sink.seq(), system)
+        .toCompletableFuture()
+        .get(3, TimeUnit.SECONDS);
+
+    assertEquals(List.of(chunks.get(0), audio, chunks.get(3)), forwarded);
+    assertEquals(2, metrics.framesDeduplicated());
+  }
+}
@@ -0,0 +1,90 @@
+package shoppingcart.application;
+
+import akka.actor.ActorSystem;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.google.protobuf.ByteString;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import shoppingcart.video.Chunk;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FrameDownscalingTest {
+
+  private static final ActorSystem system = ActorSystem.create("FrameDownscalingTest");
+
+  @AfterAll
+  public static void shutdown() {
+    system.terminate();
+  }
+
+  private final FrameDownscaling.Settings settings =
+      new FrameDownscaling.Settings(true, 320, 0.8f, 2, "akka.actor.default-blocking-io-dispatcher");
+
+  private static Chunk jpeg(int width, int height) throws Exception {
+    var image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    var graphics = image.createGraphics();
+    graphics.setPaint(new GradientPaint(0, 0, Color.BLUE, width, height, Color.WHITE));
+    graphics.fillRect(0, 0, width, height);
+    graphics.setColor(Color.BLACK);
+    graphics.fillRect(width / 4, height / 4, width / 3, height / 3);
+    graphics.dispose();
+    var out = new ByteArrayOutputStream();
+    ImageIO.write(image, "jpg", out);
+    return Chunk.newBuilder().setMimeType("image/jpeg").setPayload(ByteString.copyFrom(out.toByteArray())).build();
+  }
+
+  private static BufferedImage decode(Chunk chunk) throws Exception {
+    return ImageIO.read(chunk.getPayload().newInput());
+  }
+
+  @Test
+  public void downscaleToMaxDimension() throws Exception {
+    var frame = jpeg(1280, 720);
+    var downscaled = FrameDownscaling.downscale(frame, settings);
+    var image = decode(downscaled);
+    assertEquals(320, image.getWidth());
+    assertEquals(180, image.getHeight());
+    assertTrue(downscaled.getPayload().size() < frame.getPayload().size());
+  }
+
+  @Test
+  public void passOnFramesWithinMaxDimensionAndOtherChunks() throws Exception {
+    var small = jpeg(320, 240);
+    assertSame(small, FrameDownscaling.downscale(small, settings));
+    var broken = Chunk.newBuilder().setMimeType("image/jpeg").setPayload(ByteString.copyFromUtf8("not a jpeg")).build();
+    assertSame(broken, FrameDownscaling.downscale(broken, settings));
+  }
+
+  @Test
+  public void keepOrderAndCountBytesSaved() throws Exception {
+    var metrics = new VideoPipelineMetrics();
+    var audio = Chunk.newBuilder().setMimeType("audio/pcm").setPayload(ByteString.copyFromUtf8("sound")).build();
+    var large = jpeg(1920, 1080);
+    var small = jpeg(200, 100);
+    var out = Source.from(List.of(large, audio, small, large))
+        .map(ReceivedChunk::receivedNow)
+        .via(FrameDownscaling.flow(settings, "test", metrics))
+        .map(ReceivedChunk::chunk)
+        .runWith(Sink.seq(), system)
+        .toCompletableFuture()
+        .get(10, TimeUnit.SECONDS);
+
+    assertEquals(List.of("image/jpeg", "audio/pcm", "image/jpeg", "image/jpeg"), out.stream().map(Chunk::getMimeType).toList());
+    assertEquals(320, decode(out.get(0)).getWidth());
+    assertEquals(audio, out.get(1));
+    assertEquals(small, out.get(2));
+    assertEquals(2, metrics.framesDownscaled());
+    assertEquals(2L * (large.getPayload().size() - out.get(0).getPayload().size()), metrics.downscalingBytesSaved());
+  }
+}
@@ -0,0 +1,146 @@
+package shoppingcart.application;
+
+import akka.actor.ActorSystem;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.google.protobuf.ByteString;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import shoppingcart.video.Chunk;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class IngestRateLimiterTest {
+
+  private static final ActorSystem system = ActorSystem.create("IngestRateLimiterTest");
+
+  @AfterAll
+  public static void shutdown() {
+    system.terminate();
+  }
+
+  private static Chunk chunk(String mimeType, int bytes) {
+    return Chunk.newBuilder().setMimeType(mimeType).setPayload(ByteString.copyFrom(new byte[bytes])).build();
+  }
+
+  private static List<String> run(IngestRateLimiter limiter, String aiContextId, VideoPipelineMetrics metrics,
+                                  List<Chunk> chunks) throws Exception {
+    return Source.from(chunks)
+        .map(ReceivedChunk::receivedNow)
+        .via(limiter.flow(aiContextId, metrics))
+        .map(chunk -> chunk.mimeType() + ":" + chunk.payload().size())
+        .runWith(Sink.seq(), system)
+        .toCompletableFuture()
+        .get(3, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Another stream of the AI context, keeping its limits while the test streams come and go.
+   */
+  private static CompletableFuture<Optional<ReceivedChunk>> openStream(IngestRateLimiter limiter, String aiContextId) {
+    return Source.<ReceivedChunk>maybe().via(limiter.flow(aiContextId, new VideoPipelineMetrics())).to(Sink.ignore()).run(system);
+  }
+
+  @Test
+  public void dropFramesOverTheFrameRate() throws Exception {
+    var clock = new AtomicLong();
+    var limiter = new IngestRateLimiter(new IngestRateLimiter.Settings(true, 2, 2, 1000, 1000), clock::get);
+    var metrics = new VideoPipelineMetrics();
+    var open = openStream(limiter, "ctx");
+    awaitTenants(limiter, 1);
+    var frames = List.of(chunk("image/jpeg", 1), chunk("image/jpeg", 1), chunk("audio/pcm", 1), chunk("image/jpeg", 1));
+    // audio is not a frame, the third frame is over the burst
+    assertEquals(List.of("image/jpeg:1", "image/jpeg:1", "audio/pcm:1"), run(limiter, "ctx", metrics, frames));
+    assertEquals(1, metrics.framesRateLimited());
+
+    // refilled at 2 frames per second
+    clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+    assertEquals(List.of("image/jpeg:1"), run(limiter, "ctx", metrics, List.of(chunk("image/jpeg", 1), chunk("image/jpeg", 1))));
+    assertEquals(2, metrics.framesRateLimited());
+    open.complete(Optional.empty());
+  }
+
+  @Test
+  public void dropChunksOverTheByteRate() throws Exception {
+    var clock = new AtomicLong();
+    var limiter = new IngestRateLimiter(new IngestRateLimiter.Settings(true, 100, 100, 100, 100), clock::get);
+    var metrics = new VideoPipelineMetrics();
+    var open = openStream(limiter, "ctx");
+    awaitTenants(limiter, 1);
+    var chunks = List.of(chunk("image/jpeg", 60), chunk("image/jpeg", 60), chunk("image/jpeg", 40));
+    assertEquals(List.of("image/jpeg:60", "image/jpeg:40"), run(limiter, "ctx", metrics, chunks));
+    assertEquals(1, metrics.chunksRateLimited());
+
+    // a frame larger than the burst only passes with a full bucket, and leaves a debt
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    assertEquals(List.of("image/jpeg:150"), run(limiter, "ctx", metrics, List.of(chunk("image/jpeg", 150), chunk("image/jpeg", 1))));
+    clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+    assertEquals(List.of(), run(limiter, "ctx", metrics, List.of(chunk("image/jpeg", 1))));
+    open.complete(Optional.empty());
+  }
+
+  @Test
+  public void passAudioUnderFramePressure() throws Exception {
+    var clock = new AtomicLong();
+    var limiter = new IngestRateLimiter(new IngestRateLimiter.Settings(true, 10, 1, 100, 100), clock::get);
+    var metrics = new VideoPipelineMetrics();
+    var open = openStream(limiter, "ctx");
+    awaitTenants(limiter, 1);
+    var chunks = List.of(chunk("image/jpeg", 10), chunk("audio/pcm", 60), chunk("image/jpeg", 10),
+        chunk("audio/pcm", 60), chunk("audio/pcm", 60));
+    // the frames are over the frame rate, the audio over the byte rate
+    assertEquals(List.of("image/jpeg:10", "audio/pcm:60", "audio/pcm:60", "audio/pcm:60"), run(limiter, "ctx", metrics, chunks));
+    assertEquals(1, metrics.framesRateLimited());
+    assertEquals(0, metrics.chunksRateLimited());
+
+    // the audio counts against the bytes of the frames
+    clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+    assertEquals(List.of("audio/pcm:10"), run(limiter, "ctx", metrics, List.of(chunk("image/jpeg", 10), chunk("audio/pcm", 10))));
+    assertEquals(1, metrics.chunksRateLimited());
+    open.complete(Optional.empty());
+  }
+
+  @Test
+  public void boundTheDebtOfAudio() throws Exception {
+    var clock = new AtomicLong();
+    var limiter = new IngestRateLimiter(new IngestRateLimiter.Settings(true, 100, 100, 100, 100), clock::get);
+    var metrics = new VideoPipelineMetrics();
+    var open = openStream(limiter, "ctx");
+    awaitTenants(limiter, 1);
+    // far more audio than the byte rate, the frame is dropped
+    assertEquals(List.of("audio/pcm:1000"), run(limiter, "ctx", metrics, List.of(chunk("audio/pcm", 1000), chunk("image/jpeg", 1))));
+    assertEquals(1, metrics.chunksRateLimited());
+
+    // the debt is at most one burst, filled after a second
+    clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1500));
+    assertEquals(List.of("image/jpeg:50"), run(limiter, "ctx", metrics, List.of(chunk("image/jpeg", 50))));
+    open.complete(Optional.empty());
+  }
+
+  @Test
+  public void limitEachAiContextSeparately() throws Exception {
+    var limiter = new IngestRateLimiter(new IngestRateLimiter.Settings(true, 1, 1, 1000, 1000), () -> 0);
+    var metrics = new VideoPipelineMetrics();
+    var open = openStream(limiter, "a");
+    awaitTenants(limiter, 1);
+    assertEquals(List.of("image/jpeg:1"), run(limiter, "a", metrics, List.of(chunk("image/jpeg", 1), chunk("image/jpeg", 1))));
+    assertEquals(List.of("image/jpeg:1"), run(limiter, "b", metrics, List.of(chunk("image/jpeg", 1))));
+    assertEquals(1, metrics.framesRateLimited());
+    // the limits are dropped once an AI context has no streams
+    open.complete(Optional.empty());
+    awaitTenants(limiter, 0);
+  }
+
+  private static void awaitTenants(IngestRateLimiter limiter, int tenants) throws InterruptedException {
+    for (int i = 0; i < 100 && limiter.tenants() != tenants; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(tenants, limiter.tenants());
+  }
+}
@@ -0,0 +1,102 @@
+package shoppingcart.application;
+
+import akka.actor.ActorSystem;
+import akka.stream.Attributes;
+import akka.stream.BufferOverflowException;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.google.protobuf.ByteString;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import shoppingcart.application.RealtimeMediaConflation.OverflowStrategy;
+import shoppingcart.application.RealtimeMediaConflation.Settings;
+import shoppingcart.video.Chunk;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class RealtimeMediaConflationTest {
+
+  private static final ActorSystem system = ActorSystem.create("RealtimeMediaConflationTest");
+
+  @AfterAll
+  public static void shutdown() {
+    system.terminate();
+  }
+
+  private static Chunk frame(String name) {
+    return Chunk.newBuilder().setMimeType("image/jpeg").setPayload(ByteString.copyFromUtf8(name)).build();
+  }
+
+  private static Chunk audio(String name) {
+    return Chunk.newBuilder().setMimeType("audio/pcm").setPayload(ByteString.copyFromUtf8(name)).build();
+  }
+
+  /**
+   * Runs the chunks through the stage with a downstream that only takes one element before all chunks have been
+   * pushed, then drains everything left.
+   */
+  private static List<String> runWithSlowDownstream(Settings settings, Chunk... chunks) throws Exception {
+    var queue = Source.from(List.of(chunks))
+        .map(ReceivedChunk::receivedNow)
+        .via(new RealtimeMediaConflation(settings, "test", new VideoPipelineMetrics()))
+        .map(chunk -> chunk.payload().toStringUtf8())
+        .runWith(Sink.<String>queue().withAttributes(Attributes.inputBuffer(1, 1)), system);
+    var result = new ArrayList<String>();
+    Optional<String> next;
+    while ((next = queue.pull().toCompletableFuture().get(3, TimeUnit.SECONDS)).isPresent()) {
+      result.add(next.get());
+    }
+    return result;
+  }
+
+  @Test
+  public void keepOnlyNewestFrame() throws Exception {
+    var result = runWithSlowDownstream(new Settings(true, 10, OverflowStrategy.DROP_OLDEST),
+        frame("f1"), frame("f2"), audio("a1"), frame("f3"), audio("a2"), frame("f4"));
+    // f1 went downstream right away, f2 and f3 were superseded by f4, audio is kept in order ahead of video
+    assertEquals(List.of("f1", "a1", "a2", "f4"), result);
+  }
+
+  @Test
+  public void dropOldestAudioWhenFull() throws Exception {
+    var result = runWithSlowDownstream(new Settings(true, 2, OverflowStrategy.DROP_OLDEST),
+        audio("a1"), audio("a2"), audio("a3"), audio("a4"));
+    assertEquals(List.of("a1", "a3", "a4"), result);
+  }
+
+  @Test
+  public void dropNewestAudioWhenFull() throws Exception {
+    var result = runWithSlowDownstream(new Settings(true, 2, OverflowStrategy.DROP_NEWEST),
+        audio("a1"), audio("a2"), audio("a3"), audio("a4"));
+    assertEquals(List.of("a1", "a2", "a3"), result);
+  }
+
+  @Test
+  public void backpressureWhenFull() throws Exception {
+    var result = runWithSlowDownstream(new Settings(true, 1, OverflowStrategy.BACKPRESSURE),
+        audio("a1"), audio("a2"), audio("a3"), frame("f1"));
+    assertEquals(List.of("a1", "a2", "a3", "f1"), result);
+  }
+
+  @Test
+  public void bufferVideoInOrderWithoutConflation() throws Exception {
+    var result = runWithSlowDownstream(new Settings(false, 10, OverflowStrategy.DROP_OLDEST),
+        frame("f1"), frame("f2"), audio("a1"), frame("f3"));
+    assertEquals(List.of("f1", "f2", "a1", "f3"), result);
+  }
+
+  @Test
+  public void failWhenFull() {
+    var error = assertThrows(ExecutionException.class, () ->
+        runWithSlowDownstream(new Settings(true, 1, OverflowStrategy.FAIL), audio("a1"), audio("a2"), audio("a3")));
+    assertInstanceOf(BufferOverflowException.class, error.getCause());
+  }
+}
@@ -0,0 +1,101 @@
+package shoppingcart.application;
+
+import akka.NotUsed;
+import akka.actor.ActorSystem;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import shoppingcart.application.ResponsesView.ResponseStoreRow;
+import shoppingcart.application.ResponsesView.StoredResponse;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ResponseFeedTest {
+
+  private static final ActorSystem system = ActorSystem.create("ResponseFeedTest");
+
+  @AfterAll
+  public static void shutdown() {
+    system.terminate();
+  }
+
+  private static final Instant start = Instant.parse("2025-01-01T00:00:00Z");
+
+  private static StoredResponse response(long sequenceNumber) {
+    return new StoredResponse("r" + sequenceNumber, start.plusSeconds(sequenceNumber * 10), sequenceNumber);
+  }
+
+  /**
+   * @param sequenceNumbers of the responses in the row, oldest first
+   */
+  private static ResponseStoreRow row(String responseStoreId, long... sequenceNumbers) {
+    var responses = new ArrayList<StoredResponse>();
+    for (var sequenceNumber : sequenceNumbers) responses.add(0, response(sequenceNumber));
+    return new ResponseStoreRow(responseStoreId, responses, responses.get(0).storedAt());
+  }
+
+  /**
+   * A feed over the view streaming the given rows, subscribed at the given number of seconds after the start.
+   */
+  private static ResponseFeed feed(int subscribedAtSecond, ResponseStoreRow... rows) {
+    return new ResponseFeed(
+        () -> Source.from(List.of(rows)).concat(Source.<ResponseStoreRow>never())
+            .mapMaterializedValue(ignored -> NotUsed.getInstance()),
+        () -> start.plusSeconds(subscribedAtSecond));
+  }
+
+  private static List<String> take(ResponseFeed feed, Optional<String> afterEventId, int count) throws Exception {
+    return feed.subscribe(afterEventId).take(count).runWith(Sink.seq(), system)
+        .toCompletableFuture().get(3, TimeUnit.SECONDS).stream()
+        .map(event -> switch (event) {
+          case ResponseFeed.Entry entry -> entry.position().responseStoreId() + "/" + entry.response();
+          case ResponseFeed.Reset reset -> "reset";
+        })
+        .toList();
+  }
+
+  @Test
+  public void pushResponsesStoredAfterSubscribing() throws Exception {
+    // r1 and r2 were stored before subscribing at 25s, the rest after
+    var feed = feed(25, row("a", 1, 2), row("b", 1), row("a", 1, 2, 3), row("b", 1, 4), row("a", 1, 2, 3, 5));
+    assertEquals(List.of("a/r3", "b/r4", "a/r5"), take(feed, Optional.empty(), 3));
+    assertEquals(3, feed.stats().sent());
+  }
+
+  @Test
+  public void resumeAfterTheEventOnAnyNode() throws Exception {
+    var feed = feed(100, row("a", 1, 2, 3), row("gemini-live:cart-1", 1, 4, 5));
+    var lastSeen = new ResponseFeed.Position(start.plusSeconds(20), "a", 2).eventId();
+    assertEquals(List.of("a/r3", "gemini-live:cart-1/r4", "gemini-live:cart-1/r5"), take(feed, Optional.of(lastSeen), 3));
+  }
+
+  @Test
+  public void roundTripEventIds() {
+    var position = new ResponseFeed.Position(Instant.parse("2025-01-01T00:00:00.000000042Z"), "gemini-live:cart-1", 7);
+    assertEquals(Optional.of(position), ResponseFeed.Position.fromEventId(position.eventId()));
+    assertEquals(Optional.empty(), ResponseFeed.Position.fromEventId("1736000000000042"));
+  }
+
+  @Test
+  public void resetWhenTheEventIdIsNotOneOfTheFeed() throws Exception {
+    var feed = feed(15, row("a", 1), row("a", 1, 2));
+    assertEquals(List.of("reset", "a/r2"), take(feed, Optional.of("1736000000000042"), 2));
+    assertEquals(1, feed.stats().resets());
+  }
+
+  @Test
+  public void resetWhenTheViewNoLongerHasTheResponsesAfterTheEvent() throws Exception {
+    var kept = IntStream.rangeClosed(3, 2 + ResponsesView.RESPONSES_PER_STORE).asLongStream().toArray();
+    var feed = feed(1000, row("a", kept));
+    var lastSeen = new ResponseFeed.Position(start.plusSeconds(10), "a", 1).eventId();
+    assertEquals(List.of("reset", "a/r3"), take(feed, Optional.of(lastSeen), 2));
+  }
+}
@@ -0,0 +1,115 @@
+package shoppingcart.application;
+
+import akka.actor.ActorSystem;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import shoppingcart.geminilive.LiveProtocol.Content;
+import shoppingcart.geminilive.LiveProtocol.LiveServerContent;
+import shoppingcart.geminilive.LiveProtocol.LiveServerMessage;
+import shoppingcart.geminilive.LiveProtocol.LiveServerSetupComplete;
+import shoppingcart.geminilive.LiveProtocol.Part;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ResponseTurnAssemblyTest {
+
+  private static final ActorSystem system = ActorSystem.create("ResponseTurnAssemblyTest");
+
+  @AfterAll
+  public static void shutdown() {
+    system.terminate();
+  }
+
+  private static LiveServerMessage setupComplete() {
+    return new LiveServerMessage(
+        Optional.of(new LiveServerSetupComplete()), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty());
+  }
+
+  private static LiveServerMessage content(String text, boolean turnComplete, boolean interrupted) {
+    var modelTurn = text.isEmpty() ? Optional.<Content>empty() : Optional.of(new Content(List.of(Part.text(text)), Optional.of("model")));
+    var serverContent = new LiveServerContent(modelTurn, Optional.of(turnComplete), Optional.of(interrupted));
+    return new LiveServerMessage(Optional.empty(), Optional.of(serverContent), Optional.empty(), Optional.empty(), Optional.empty());
+  }
+
+  private static LiveServerMessage fragment(String text) {
+    return content(text, false, false);
+  }
+
+  private static List<String> run(ResponseTurnAssembly.Settings settings, Source<LiveServerMessage, ?> messages, int take) throws Exception {
+    return messages
+        .via(new ResponseTurnAssembly(settings, "test", new VideoPipelineMetrics()))
+        .map(output -> switch (output) {
+          case ResponseTurnAssembly.Received received ->
+              "received:" + ResponseTurnAssembly.text(received.message()).orElse("-");
+          case ResponseTurnAssembly.TurnAssembled turn -> "response:" + turn.response();
+        })
+        .take(take)
+        .runWith(Sink.seq(), system)
+        .toCompletableFuture()
+        .get(3, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void assembleFragmentsUntilTurnComplete() throws Exception {
+    var settings = new ResponseTurnAssembly.Settings(1000, Duration.ofSeconds(10), 1);
+    var result = run(settings, Source.from(List.of(
+        setupComplete(), fragment("The cart "), fragment("has two "), content("items.", true, false),
+        fragment("Interrupted"), content("", false, true))), 20);
+    assertEquals(List.of(
+        "received:-", "received:The cart ", "received:has two ", "received:items.", "response:The cart has two items.",
+        "received:Interrupted", "received:-", "response:Interrupted"), result);
+  }
+
+  @Test
+  public void emitWhenMaxCharsReached() throws Exception {
+    var settings = new ResponseTurnAssembly.Settings(4, Duration.ofSeconds(10), 1);
+    var result = run(settings, Source.from(List.of(fragment("ab"), fragment("cd"), fragment("ef"), content("", true, false))), 20);
+    assertEquals(List.of(
+        "received:ab", "received:cd", "response:abcd", "received:ef", "received:-", "response:ef"), result);
+  }
+
+  @Test
+  public void emitWhenMaxDurationPassed() throws Exception {
+    var settings = new ResponseTurnAssembly.Settings(1000, Duration.ofMillis(50), 1);
+    // the turn is never completed, the response must be emitted by the timer
+    var result = run(settings, Source.from(List.of(fragment("ab"), fragment("cd"))).concat(Source.never()), 3);
+    assertEquals(List.of("received:ab", "received:cd", "response:abcd"), result);
+  }
+
+  @Test
+  public void emitIncompleteTurnWhenUpstreamCompletes() throws Exception {
+    var settings = new ResponseTurnAssembly.Settings(1000, Duration.ofSeconds(10), 1);
+    var result = run(settings, Source.from(List.of(fragment("ab"))), 20);
+    assertEquals(List.of("received:ab", "response:ab"), result);
+  }
+
+  @Test
+  public void emitTurnInProgressWhenServerFails() throws Exception {
+    var settings = new ResponseTurnAssembly.Settings(1000, Duration.ofSeconds(10), 1);
+    var received = new ArrayList<String>();
+    var lost = fragment("lost");
+    var done = Source.from(List.of(fragment("The cart "), fragment("has"), lost))
+        .map(message -> {
+          if (message == lost) throw new IllegalStateException("connection lost");
+          return message;
+        })
+        .via(new ResponseTurnAssembly(settings, "test", new VideoPipelineMetrics()))
+        .runWith(Sink.foreach(output -> {
+          if (output instanceof ResponseTurnAssembly.TurnAssembled turn) received.add(turn.response());
+        }), system);
+
+    var error = assertThrows(ExecutionException.class, () -> done.toCompletableFuture().get(3, TimeUnit.SECONDS));
+    assertEquals("connection lost", error.getCause().getMessage());
+    assertEquals(List.of("The cart has"), received);
+  }
+}
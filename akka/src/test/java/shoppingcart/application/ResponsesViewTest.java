@@ -0,0 +1,40 @@
+package shoppingcart.application;
+
+import org.junit.jupiter.api.Test;
+import shoppingcart.application.ResponsesView.ResponseStoreRow;
+import shoppingcart.application.ResponsesView.StoredResponse;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ResponsesViewTest {
+
+  private static final Instant start = Instant.parse("2025-01-01T00:00:00Z");
+
+  private static StoredResponse response(String response, int second) {
+    return new StoredResponse(response, start.plusSeconds(second), second);
+  }
+
+  @Test
+  public void mergeInterleavedStoresNewestFirst() {
+    // store a was updated last, but store b has responses in between its older ones
+    var a = new ResponseStoreRow("a", List.of(response("a4", 8), response("a3", 5), response("a2", 3), response("a1", 1)), start.plusSeconds(8));
+    var b = new ResponseStoreRow("b", List.of(response("b3", 7), response("b2", 4), response("b1", 2)), start.plusSeconds(7));
+
+    assertEquals(List.of("a4", "b3", "a3", "b2", "a2", "b1", "a1"), ResponsesView.newestFirst(List.of(a, b), 10));
+    assertEquals(List.of("a4", "b3", "a3"), ResponsesView.newestFirst(List.of(a, b), 3));
+  }
+
+  @Test
+  public void mergeNoStores() {
+    assertEquals(List.of(), ResponsesView.newestFirst(List.of(), 5));
+  }
+
+  @Test
+  public void rejectNegativeLimit() {
+    assertThrows(IllegalArgumentException.class, () -> ResponsesView.newestFirst(List.of(), -1));
+  }
+}
@@ -0,0 +1,93 @@
+package shoppingcart.application;
+
+import akka.actor.ActorSystem;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SessionAdmissionTest {
+
+  private static final ActorSystem system = ActorSystem.create("SessionAdmissionTest");
+
+  @AfterAll
+  public static void shutdown() {
+    system.terminate();
+  }
+
+  @Test
+  public void queueWhenFullAndRejectWhenQueueFull() throws Exception {
+    var admission = new SessionAdmission(new SessionAdmission.Settings(1, 1, Duration.ofSeconds(10)));
+    var first = admission.acquire();
+    var second = admission.acquire();
+    var third = admission.acquire();
+    assertTrue(first.isDone());
+    assertFalse(second.isDone());
+    var rejected = assertThrows(ExecutionException.class, () -> third.get(1, TimeUnit.SECONDS));
+    assertInstanceOf(SessionAdmission.RejectedException.class, rejected.getCause());
+    assertEquals(new SessionAdmission.Stats(1, 1, 1, 1, 1, 0), admission.stats());
+
+    // the slot is handed to the waiting stream
+    admission.release(first);
+    second.get(1, TimeUnit.SECONDS);
+    admission.release(second);
+    assertEquals(new SessionAdmission.Stats(0, 0, 1, 2, 1, 0), admission.stats());
+  }
+
+  @Test
+  public void rejectAfterMaxWait() throws Exception {
+    var admission = new SessionAdmission(new SessionAdmission.Settings(1, 1, Duration.ofMillis(50)));
+    var first = admission.acquire();
+    var waiting = admission.acquire();
+    var rejected = assertThrows(ExecutionException.class, () -> waiting.get(1, TimeUnit.SECONDS));
+    assertInstanceOf(SessionAdmission.RejectedException.class, rejected.getCause());
+    awaitStats(admission, new SessionAdmission.Stats(1, 0, 1, 1, 0, 1));
+    admission.release(waiting);
+    admission.release(first);
+    assertEquals(0, admission.stats().active());
+  }
+
+  @Test
+  public void giveUpWaitingWhenStreamEnds() throws Exception {
+    var admission = new SessionAdmission(new SessionAdmission.Settings(1, 1, Duration.ofSeconds(10)));
+    var first = admission.acquire();
+    var waiting = admission.acquire();
+    admission.release(waiting);
+    admission.release(first);
+    assertEquals(new SessionAdmission.Stats(0, 0, 1, 1, 0, 0), admission.stats());
+  }
+
+  @Test
+  public void runAdmittedStreamsAndReleaseWhenDone() throws Exception {
+    var admission = new SessionAdmission(new SessionAdmission.Settings(1, 1, Duration.ofSeconds(10)));
+    var running = new CompletableFuture<String>();
+    var first = admission.admit(Source.completionStage(running)).runWith(Sink.seq(), system);
+    awaitStats(admission, new SessionAdmission.Stats(1, 0, 1, 1, 0, 0));
+    var second = admission.admit(Source.single("second")).runWith(Sink.seq(), system);
+    awaitStats(admission, new SessionAdmission.Stats(1, 1, 1, 1, 0, 0));
+
+    running.complete("first");
+    assertEquals(List.of("first"), first.toCompletableFuture().get(3, TimeUnit.SECONDS));
+    assertEquals(List.of("second"), second.toCompletableFuture().get(3, TimeUnit.SECONDS));
+    awaitStats(admission, new SessionAdmission.Stats(0, 0, 1, 2, 0, 0));
+  }
+
+  private static void awaitStats(SessionAdmission admission, SessionAdmission.Stats expected) throws InterruptedException {
+    for (int i = 0; i < 100 && !admission.stats().equals(expected); i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(expected, admission.stats());
+  }
+}
@@ -3,12 +3,15 @@ package shoppingcart.application;
 import akka.Done;
 import akka.javasdk.testkit.EventSourcedTestKit;
 import org.junit.jupiter.api.Test;
+import shoppingcart.domain.LineItems;
 import shoppingcart.domain.ShoppingCart;
 
 import java.util.List;
 
-import static shoppingcart.domain.ShoppingCartEvent.ItemAdded;
+import static shoppingcart.domain.PersistedShoppingCartEvent.ItemAdded;
+import static shoppingcart.domain.PersistedShoppingCartEvent.ItemRemoved;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class ShoppingCartTest {
 
@@ -24,7 +27,7 @@ public class ShoppingCartTest {
       assertEquals(Done.getInstance(), result.getReply()); // <3>
 
       var itemAdded = result.getNextEventOfType(ItemAdded.class);
-      assertEquals(10, itemAdded.item().quantity()); // <4>
+      assertEquals(10, itemAdded.event().item().quantity()); // <4>
     }
 
     // actually we want more akka tshirts
@@ -33,17 +36,51 @@ public class ShoppingCartTest {
       assertEquals(Done.getInstance(), result.getReply());
 
       var itemAdded = result.getNextEventOfType(ItemAdded.class);
-      assertEquals(5, itemAdded.item().quantity());
+      assertEquals(5, itemAdded.event().item().quantity());
     }
 
     {
       assertEquals(testKit.getAllEvents().size(), 2); // <6>
       var result = testKit.method(ShoppingCartEntity::getCart).invoke(); // <7>
       assertEquals(
-        new ShoppingCart("testkit-entity-id", List.of(akkaTshirt.withQuantity(15)), false),
+        new ShoppingCart("testkit-entity-id", LineItems.of(List.of(akkaTshirt.withQuantity(15))), false),
         result.getReply());
     }
 
   }
 
+  @Test
+  public void testUpdateItems() {
+
+    var testKit = EventSourcedTestKit.of(ShoppingCartEntity::new);
+    var akkaMug = new ShoppingCart.LineItem("akka-mug", "Akka Mug", 2);
+    var akkaCap = new ShoppingCart.LineItem("akka-cap", "Akka Cap", 1);
+
+    {
+      var result = testKit.method(ShoppingCartEntity::updateItems)
+          .invoke(new ShoppingCartEntity.ItemChanges(List.of(akkaTshirt, akkaMug), List.of()));
+      assertEquals(Done.getInstance(), result.getReply());
+      assertEquals(2, result.getAllEvents().size());
+    }
+
+    // invalid changes are rejected as a whole
+    {
+      var result = testKit.method(ShoppingCartEntity::updateItems)
+          .invoke(new ShoppingCartEntity.ItemChanges(List.of(akkaCap, akkaMug.withQuantity(0)), List.of("akka-tshirt")));
+      assertTrue(result.isError());
+      assertEquals(2, testKit.getAllEvents().size());
+    }
+
+    {
+      var result = testKit.method(ShoppingCartEntity::updateItems)
+          .invoke(new ShoppingCartEntity.ItemChanges(List.of(akkaCap), List.of("akka-tshirt")));
+      assertEquals(Done.getInstance(), result.getReply());
+      result.getNextEventOfType(ItemRemoved.class);
+      result.getNextEventOfType(ItemAdded.class);
+      assertEquals(
+        new ShoppingCart("testkit-entity-id", LineItems.of(List.of(akkaCap, akkaMug)), false),
+        testKit.getState().cart());
+    }
+  }
+
 }
@@ -0,0 +1,81 @@
+package shoppingcart.application;
+
+import org.junit.jupiter.api.Test;
+import shoppingcart.geminilive.LiveProtocol.Content;
+import shoppingcart.geminilive.LiveProtocol.LiveServerContent;
+import shoppingcart.geminilive.LiveProtocol.LiveServerMessage;
+import shoppingcart.geminilive.LiveProtocol.LiveServerSetupComplete;
+import shoppingcart.geminilive.LiveProtocol.Part;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class VideoPipelineMetricsTest {
+
+  private static LiveServerMessage setupComplete() {
+    return new LiveServerMessage(
+        Optional.of(new LiveServerSetupComplete()), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty());
+  }
+
+  private static LiveServerMessage content(String text, boolean turnComplete) {
+    var modelTurn = text.isEmpty() ? Optional.<Content>empty() : Optional.of(new Content(List.of(Part.text(text)), Optional.of("model")));
+    var serverContent = new LiveServerContent(modelTurn, Optional.of(turnComplete), Optional.of(false));
+    return new LiveServerMessage(Optional.empty(), Optional.of(serverContent), Optional.empty(), Optional.empty(), Optional.empty());
+  }
+
+  @Test
+  public void recordSessionTimings() {
+    var metrics = new VideoPipelineMetrics();
+    var session = metrics.newSession();
+    session.started();
+    assertEquals(1, metrics.activeSessions());
+
+    session.serverMessage(setupComplete());
+    session.turnRequested();
+    session.serverMessage(content("Hello", false));
+    session.serverMessage(content(" there", false));
+    session.serverMessage(content("", true));
+    // a turn the model starts by itself has a duration but no time to first token
+    session.serverMessage(content("Also", true));
+
+    assertEquals(1, metrics.sessionSetup().count());
+    assertEquals(1, metrics.timeToFirstToken().count());
+    assertEquals(2, metrics.turnDuration().count());
+
+    session.chunkReceived(10);
+    session.chunkSent(10, System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(20));
+    assertEquals(1, metrics.chunkIngestToSend().count());
+    assertTrue(metrics.chunkIngestToSend().sumSeconds() >= 0.02);
+
+    session.closed();
+    session.closed();
+    assertEquals(0, metrics.activeSessions());
+    assertEquals(1, metrics.sessionsStarted());
+  }
+
+  @Test
+  public void recordLatenciesInMicroseconds() {
+    var latency = new VideoPipelineMetrics.Latency();
+    for (int millis = 1; millis <= 100; millis++) {
+      latency.recordNanos(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+    // values beyond the highest trackable value are recorded as the highest
+    latency.recordNanos(TimeUnit.DAYS.toNanos(1));
+    var snapshot = latency.snapshot();
+    assertEquals(101, snapshot.count());
+    assertEquals(0.051, snapshot.valueAtQuantileSeconds(0.5), 0.001);
+    assertEquals(0.099, snapshot.valueAtQuantileSeconds(0.98), 0.001);
+    assertEquals(3600, snapshot.valueAtQuantileSeconds(1.0), 40);
+    assertTrue(snapshot.sumSeconds() > 3600 + 5.04 && snapshot.sumSeconds() < 3600 + 5.06);
+
+    // cumulative bucket counts
+    assertEquals(0, snapshot.countAtOrBelowSeconds(0.0005));
+    assertEquals(50, snapshot.countAtOrBelowSeconds(0.05));
+    assertEquals(100, snapshot.countAtOrBelowSeconds(60));
+    assertEquals(101, snapshot.countAtOrBelowSeconds(7200));
+  }
+}
@@ -0,0 +1,71 @@
+package shoppingcart.domain;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import shoppingcart.domain.ShoppingCart.LineItem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LineItemsTest {
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Test
+  public void keepItemsSortedByProductId() {
+    var items = LineItems.EMPTY
+        .put(new LineItem("c", "C", 1))
+        .put(new LineItem("a", "A", 1))
+        .put(new LineItem("b", "B", 1))
+        .put(new LineItem("a", "A", 3));
+    assertEquals(List.of(new LineItem("a", "A", 3), new LineItem("b", "B", 1), new LineItem("c", "C", 1)), items);
+    assertEquals(new LineItem("b", "B", 1), items.get(1));
+    assertEquals(Optional.of(new LineItem("c", "C", 1)), items.find("c"));
+    assertEquals(Optional.empty(), items.find("d"));
+  }
+
+  @Test
+  public void matchSortedMapForRandomChanges() {
+    var random = new Random(42);
+    var expected = new TreeMap<String, LineItem>();
+    var items = LineItems.EMPTY;
+    var versions = new ArrayList<LineItems>();
+    var expectedVersions = new ArrayList<List<LineItem>>();
+    for (int i = 0; i < 5000; i++) {
+      var productId = "product-" + random.nextInt(500);
+      if (random.nextInt(3) == 0) {
+        expected.remove(productId);
+        items = items.remove(productId);
+      } else {
+        var item = new LineItem(productId, productId, i);
+        expected.put(productId, item);
+        items = items.put(item);
+      }
+      if (i % 500 == 0) {
+        versions.add(items);
+        expectedVersions.add(List.copyOf(expected.values()));
+      }
+    }
+    assertEquals(List.copyOf(expected.values()), items);
+    for (int i = 0; i < expected.size(); i += 37) {
+      assertEquals(List.copyOf(expected.values()).get(i), items.get(i));
+    }
+    // earlier versions are not changed by later changes
+    assertEquals(expectedVersions, versions);
+  }
+
+  @Test
+  public void serializeCartWithItemsAsList() throws Exception {
+    var cart = new ShoppingCart("cart", LineItems.of(List.of(new LineItem("b", "B", 2), new LineItem("a", "A", 1))), false);
+    var json = objectMapper.writeValueAsString(cart);
+    assertEquals(
+        "{\"cartId\":\"cart\",\"items\":[{\"productId\":\"a\",\"name\":\"A\",\"quantity\":1},{\"productId\":\"b\",\"name\":\"B\",\"quantity\":2}],\"checkedOut\":false}",
+        json);
+    assertEquals(cart, objectMapper.readValue(json, ShoppingCart.class));
+  }
+}
@@ -0,0 +1,118 @@
+package shoppingcart.domain;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.protobuf.CodedOutputStream;
+import org.junit.jupiter.api.Test;
+import shoppingcart.domain.ShoppingCart.LineItem;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The journal and snapshot format of the persisted shopping cart and response store types, events and snapshots
+ * written by earlier versions must stay readable.
+ */
+public class PersistenceFormatTest {
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  private final LineItem tshirt = new LineItem("akka-tshirt", "Akka Tshirt", 10);
+  private final LineItem mug = new LineItem("akka-mug", "Akka Mug", 2);
+
+  private <T> T roundTrip(T value, Class<T> type) throws Exception {
+    var json = objectMapper.writeValueAsString(value);
+    assertTrue(json.startsWith("\""), "expected protobuf as a base64 string but was " + json);
+    return objectMapper.readValue(json, type);
+  }
+
+  @Test
+  public void roundTripEventsAndState() throws Exception {
+    var itemAdded = PersistedShoppingCartEvent.of(new ShoppingCartEvent.ItemAdded(tshirt));
+    assertEquals(itemAdded, roundTrip(itemAdded, PersistedShoppingCartEvent.ItemAdded.class));
+    var itemRemoved = PersistedShoppingCartEvent.of(new ShoppingCartEvent.ItemRemoved("akka-tshirt"));
+    assertEquals(itemRemoved, roundTrip(itemRemoved, PersistedShoppingCartEvent.ItemRemoved.class));
+    var checkedOut = PersistedShoppingCartEvent.of(new ShoppingCartEvent.CheckedOut());
+    assertEquals(checkedOut, roundTrip(checkedOut, PersistedShoppingCartEvent.CheckedOut.class));
+    var cart = new PersistedShoppingCart(new ShoppingCart("cart", LineItems.of(List.of(tshirt, mug)), true));
+    assertEquals(cart, roundTrip(cart, PersistedShoppingCart.class));
+
+    var addResponse = new ResponseStoreEvent.AddReponse("The cart contains a mug.");
+    var persistedAddResponse = PersistedResponseStoreEvent.of(addResponse);
+    assertEquals(persistedAddResponse, roundTrip(persistedAddResponse, PersistedResponseStoreEvent.AddReponse.class));
+    var store = new PersistedResponseStore(
+        ResponseStore.empty("store", 3).onAddResponse(addResponse).onAddResponse(new ResponseStoreEvent.AddReponse("r2")));
+    assertEquals(store, roundTrip(store, PersistedResponseStore.class));
+  }
+
+  @Test
+  public void writeStableFieldNumbers() throws Exception {
+    // LineItem { product_id = 1, name = 2, quantity = 3 } in ItemAdded { item = 1 }
+    assertEquals("\"CggKAWESAUEYAw==\"",
+        objectMapper.writeValueAsString(PersistedShoppingCartEvent.of(new ShoppingCartEvent.ItemAdded(new LineItem("a", "A", 3)))));
+    // ResponseStore { id = 1, responses = 2, capacity = 3 }
+    assertEquals("\"CgFzEgJyMRgC\"", objectMapper.writeValueAsString(
+        new PersistedResponseStore(ResponseStore.empty("s", 2).onAddResponse(new ResponseStoreEvent.AddReponse("r1")))));
+  }
+
+  @Test
+  public void writeSmallerSnapshotsThanJson() throws Exception {
+    var items = new ArrayList<LineItem>();
+    for (int i = 0; i < 1000; i++) {
+      items.add(new LineItem("product-" + i, "Product number " + i, 1 + i % 5));
+    }
+    var cart = new ShoppingCart("cart", LineItems.of(items), false);
+    // the domain cart is written as the snapshots were before the protobuf format, smaller even though the protobuf
+    // bytes are written as base64
+    var protobufSize = objectMapper.writeValueAsBytes(new PersistedShoppingCart(cart)).length;
+    var jsonSize = objectMapper.writeValueAsBytes(cart).length;
+    assertTrue(protobufSize < jsonSize * 0.75, "protobuf snapshot " + protobufSize + " bytes, json snapshot " + jsonSize + " bytes");
+  }
+
+  @Test
+  public void readJsonEventsAndSnapshots() throws Exception {
+    // as written with Jackson before the protobuf format
+    assertEquals(new ShoppingCartEvent.ItemAdded(tshirt), objectMapper.readValue(
+        "{\"item\":{\"productId\":\"akka-tshirt\",\"name\":\"Akka Tshirt\",\"quantity\":10}}",
+        PersistedShoppingCartEvent.ItemAdded.class).event());
+    assertEquals(new ShoppingCartEvent.ItemRemoved("akka-tshirt"), objectMapper.readValue(
+        "{\"productId\":\"akka-tshirt\"}", PersistedShoppingCartEvent.ItemRemoved.class).event());
+    assertEquals(new ShoppingCartEvent.CheckedOut(), objectMapper.readValue("{}", PersistedShoppingCartEvent.CheckedOut.class).event());
+    assertEquals(new ShoppingCart("cart", LineItems.of(List.of(tshirt, mug)), false), objectMapper.readValue(
+        "{\"cartId\":\"cart\",\"items\":[{\"productId\":\"akka-mug\",\"name\":\"Akka Mug\",\"quantity\":2}," +
+            "{\"productId\":\"akka-tshirt\",\"name\":\"Akka Tshirt\",\"quantity\":10}],\"checkedOut\":false}",
+        PersistedShoppingCart.class).cart());
+
+    assertEquals(new ResponseStoreEvent.AddReponse("r1"),
+        objectMapper.readValue("{\"response\":\"r1\"}", PersistedResponseStoreEvent.AddReponse.class).event());
+    // before the capacity was configurable
+    var store = objectMapper.readValue("{\"id\":\"store\",\"responses\":[\"r2\",\"r1\"]}", PersistedResponseStore.class).store();
+    assertEquals(ResponseStore.DEFAULT_CAPACITY, store.capacity());
+    assertEquals(List.of("r2", "r1"), store.responses().toList());
+    assertEquals(3, objectMapper.readValue("{\"id\":\"store\",\"responses\":[],\"capacity\":3}", PersistedResponseStore.class).store().capacity());
+  }
+
+  @Test
+  public void ignoreFieldsAddedByNewerVersions() throws Exception {
+    var bytes = new ByteArrayOutputStream();
+    var out = CodedOutputStream.newInstance(bytes);
+    out.writeString(1, "akka-tshirt");
+    out.writeString(99, "a field this version does not know");
+    out.flush();
+    var json = "\"" + Base64.getEncoder().encodeToString(bytes.toByteArray()) + "\"";
+    assertEquals(new ShoppingCartEvent.ItemRemoved("akka-tshirt"), objectMapper.readValue(json, PersistedShoppingCartEvent.ItemRemoved.class).event());
+  }
+
+  @Test
+  public void readStateWithoutFieldsAddedLater() throws Exception {
+    // a response store written before capacity was added to the protobuf format
+    var bytes = shoppingcart.domain.proto.ResponseStore.newBuilder().setId("store").addResponses("r1").build().toByteArray();
+    var store = objectMapper.readValue("\"" + Base64.getEncoder().encodeToString(bytes) + "\"", PersistedResponseStore.class).store();
+    assertEquals(ResponseStore.DEFAULT_CAPACITY, store.capacity());
+    assertEquals(List.of("r1"), store.responses().toList());
+  }
+}
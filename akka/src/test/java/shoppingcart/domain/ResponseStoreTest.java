@@ -0,0 +1,72 @@
+package shoppingcart.domain;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ResponseStoreTest {
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  private static RecentResponses add(RecentResponses responses, String... added) {
+    for (var response : added) {
+      responses = responses.add(response);
+    }
+    return responses;
+  }
+
+  @Test
+  public void keepNewestResponsesUpToCapacity() {
+    var responses = add(RecentResponses.empty(3), "r1", "r2", "r3", "r4", "r5", "r6", "r7", "r8");
+    assertEquals(List.of("r8", "r7", "r6"), responses.toList());
+    assertEquals("r8", responses.get(0));
+    assertEquals(3, responses.size());
+  }
+
+  @Test
+  public void earlierVersionsAreNotChangedByAdds() {
+    var v1 = add(RecentResponses.empty(2), "r1", "r2");
+    var v2 = v1.add("r3");
+    // continues in a new array and then fills it
+    var v5 = add(v2, "r4", "r5");
+    assertEquals(List.of("r2", "r1"), v1.toList());
+    assertEquals(List.of("r3", "r2"), v2.toList());
+    assertEquals(List.of("r5", "r4"), v5.toList());
+  }
+
+  @Test
+  public void addToEarlierVersion() {
+    var v1 = add(RecentResponses.empty(3), "r1");
+    var v2 = v1.add("r2");
+    var branch = v1.add("other");
+    assertEquals(List.of("r2", "r1"), v2.toList());
+    assertEquals(List.of("other", "r1"), branch.toList());
+  }
+
+  @Test
+  public void changeCapacity() {
+    var responses = add(RecentResponses.empty(3), "r1", "r2", "r3");
+    assertEquals(List.of("r3", "r2"), responses.withCapacity(2).toList());
+    assertEquals(List.of("r4", "r3", "r2", "r1"), responses.withCapacity(5).add("r4").toList());
+  }
+
+  @Test
+  public void serializeResponsesNewestFirst() throws Exception {
+    var store = ResponseStore.empty("store", 3)
+        .onAddResponse(new ResponseStoreEvent.AddReponse("r1"))
+        .onAddResponse(new ResponseStoreEvent.AddReponse("r2"));
+    var json = objectMapper.writeValueAsString(store);
+    assertEquals("{\"id\":\"store\",\"responses\":[\"r2\",\"r1\"],\"capacity\":3}", json);
+    assertEquals(store, objectMapper.readValue(json, ResponseStore.class));
+  }
+
+  @Test
+  public void readSnapshotWithoutCapacity() throws Exception {
+    var store = objectMapper.readValue("{\"id\":\"store\",\"responses\":[\"r2\",\"r1\"]}", ResponseStore.class);
+    assertEquals(ResponseStore.DEFAULT_CAPACITY, store.capacity());
+    assertEquals(List.of("r2", "r1"), store.responses().toList());
+  }
+}
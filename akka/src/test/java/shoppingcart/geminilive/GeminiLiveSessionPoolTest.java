@@ -0,0 +1,136 @@
+package shoppingcart.geminilive;
+
+import akka.Done;
+import akka.actor.ActorSystem;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import shoppingcart.geminilive.LiveProtocol.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GeminiLiveSessionPoolTest {
+
+  private static ActorSystem system;
+  private static MockGeminiLiveServer server;
+
+  private final GenerateContentSetup setup = GenerateContentSetup.modelWithDefaults("models/test", "TEXT");
+
+  @BeforeAll
+  public static void start() throws Exception {
+    system = ActorSystem.create("GeminiLiveSessionPoolTest");
+    server = new MockGeminiLiveServer(system);
+  }
+
+  @AfterAll
+  public static void stop() throws Exception {
+    server.stop();
+    system.terminate();
+  }
+
+  private GeminiLiveSessionPool pool(int minSize, Duration maxAge) {
+    return pool("test-key", minSize, maxAge);
+  }
+
+  private GeminiLiveSessionPool pool(String apiKey, int minSize, Duration maxAge) {
+    var client = new GeminiLiveApiClient(apiKey, server.baseUrl());
+    var settings = new GeminiLiveSessionPool.Settings(minSize, 4, maxAge, Duration.ofSeconds(3), Duration.ofMillis(100));
+    return new GeminiLiveSessionPool(client, settings, Materializer.matFromSystem(system));
+  }
+
+  private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+    var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(3);
+    while (!condition.getAsBoolean()) {
+      if (System.nanoTime() > deadline) throw new AssertionError("Condition not met within 3s");
+      Thread.sleep(20);
+    }
+  }
+
+  private List<String> converse(GeminiLiveSessionPool pool, String text) throws Exception {
+    var replySeen = new CompletableFuture<Done>();
+    var input = Source.single(LiveClientMessage.clientContent(new LiveClientContent(text, "user")))
+        // keep the session open until the reply has been seen
+        .concat(Source.completionStage(replySeen).flatMapConcat(done -> Source.<LiveClientMessage>empty()));
+    try {
+      return pool.connect(setup, input)
+          .map(message -> message.setupComplete().isPresent() ? "setup complete" :
+              message.serverContent().get().modelTurn().get().parts().get(0).text().get())
+          .take(2)
+          .runWith(Sink.seq(), system)
+          .toCompletableFuture()
+          .get(3, TimeUnit.SECONDS);
+    } finally {
+      replySeen.complete(Done.getInstance());
+    }
+  }
+
+  @Test
+  public void useWarmSession() throws Exception {
+    var pool = pool(2, Duration.ofMinutes(1));
+    try {
+      pool.warm(setup);
+      awaitCondition(() -> pool.readyCount(setup) == 2);
+      var connectionsBefore = server.connections.get();
+
+      assertEquals(List.of("setup complete", "content: hello"), converse(pool, "hello"));
+      // the borrowed session was already connected, and the pool is topped up again
+      awaitCondition(() -> pool.readyCount(setup) == 2);
+      assertEquals(connectionsBefore + 1, server.connections.get());
+    } finally {
+      pool.close();
+    }
+  }
+
+  @Test
+  public void connectWhenNoSessionReady() throws Exception {
+    var pool = pool(0, Duration.ofMinutes(1));
+    try {
+      assertEquals(List.of("setup complete", "content: cold"), converse(pool, "cold"));
+      assertEquals(0, pool.readyCount(setup));
+    } finally {
+      pool.close();
+    }
+  }
+
+  @Test
+  public void evictOldSessions() throws Exception {
+    var pool = pool(1, Duration.ofMillis(300));
+    try {
+      var connectionsBefore = server.connections.get();
+      pool.warm(setup);
+      awaitCondition(() -> pool.readyCount(setup) == 1);
+      // the old session is replaced
+      awaitCondition(() -> server.connections.get() >= connectionsBefore + 2);
+      assertTrue(pool.readyCount(setup) <= 1);
+    } finally {
+      pool.close();
+    }
+    awaitCondition(() -> server.openConnections.get() == 0);
+  }
+
+  @Test
+  public void notOpenSessionsWithoutApiKey() throws Exception {
+    var pool = pool("", 2, Duration.ofMinutes(1));
+    try {
+      var connectionsBefore = server.connections.get();
+      pool.warm(setup);
+      assertEquals(List.of("setup complete", "content: no key"), converse(pool, "no key"));
+      // a few health checks
+      Thread.sleep(300);
+      assertEquals(0, pool.readyCount(setup));
+      assertEquals(connectionsBefore + 1, server.connections.get());
+    } finally {
+      pool.close();
+    }
+  }
+}
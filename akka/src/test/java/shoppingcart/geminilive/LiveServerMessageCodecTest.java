@@ -0,0 +1,84 @@
+package shoppingcart.geminilive;
+
+import akka.util.ByteString;
+import org.junit.jupiter.api.Test;
+import shoppingcart.geminilive.LiveProtocol.LiveServerMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Checks the hand written codec against the databind model, for the server messages in
+ * src/test/resources/gemini-live.
+ */
+public class LiveServerMessageCodecTest {
+
+  // message file -> whether the hand written codec decodes it, or leaves it to databind
+  private static final Map<String, Boolean> GOLDEN = Map.ofEntries(
+      Map.entry("setup-complete.json", true),
+      Map.entry("text-fragment.json", true),
+      Map.entry("text-fragment-with-role.json", true),
+      Map.entry("text-fragment-multiple-parts.json", true),
+      Map.entry("text-fragment-escapes.json", true),
+      Map.entry("text-fragment-pretty.json", true),
+      Map.entry("text-fragment-turn-complete.json", true),
+      Map.entry("turn-complete-with-usage.json", true),
+      Map.entry("interrupted.json", true),
+      Map.entry("tool-call.json", false),
+      Map.entry("tool-call-cancellation.json", false),
+      Map.entry("inline-audio.json", false),
+      Map.entry("executable-code.json", false));
+
+  private static String golden(String file) throws Exception {
+    try (var in = LiveServerMessageCodecTest.class.getResourceAsStream("/gemini-live/" + file)) {
+      assertNotNull(in, file);
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  private static LiveServerMessage withoutUsageMetadata(LiveServerMessage message) {
+    return new LiveServerMessage(message.setupComplete(), message.serverContent(), message.toolCall(),
+        message.toolCallCancellation(), Optional.empty());
+  }
+
+  @Test
+  public void decodeLikeDatabind() throws Exception {
+    for (var golden : GOLDEN.entrySet()) {
+      var json = golden(golden.getKey());
+      var databind = GeminiLiveApiClient.objectMapper.readValue(json, LiveServerMessage.class);
+      // the codec skips the usage metadata, which the service does not read
+      var expected = golden.getValue() ? withoutUsageMetadata(databind) : databind;
+
+      try (var parser = GeminiLiveApiClient.objectMapper.getFactory().createParser(json)) {
+        assertEquals(golden.getValue(), LiveServerMessageCodec.decode(parser) != null, golden.getKey());
+      }
+      assertEquals(expected, LiveServerMessageCodec.read(json), golden.getKey());
+      assertEquals(expected, LiveServerMessageCodec.read(json.getBytes(StandardCharsets.UTF_8)), golden.getKey());
+
+      var bytes = ByteString.fromString(json, StandardCharsets.UTF_8);
+      var streamed = new LiveServerMessageDecoder(GeminiLiveApiClient.objectMapper, 1024)
+          .feed(bytes.take(bytes.size() / 3))
+          .feed(bytes.drop(bytes.size() / 3))
+          .end();
+      assertEquals(expected, streamed, golden.getKey());
+    }
+  }
+
+  @Test
+  public void leaveMalformedMessagesToDatabind() throws Exception {
+    for (var json : new String[] {
+        "{\"serverContent\":{\"turnComplete\":\"yes\"}}",
+        "{\"serverContent\":{\"modelTurn\":{\"parts\":[{\"text\":null}]}}}",
+        "{\"serverContent\":{\"modelTurn\":{\"role\":\"narrator\"}}}",
+        "{\"setupComplete\":{}} {\"setupComplete\":{}}",
+        "[]"}) {
+      try (var parser = GeminiLiveApiClient.objectMapper.getFactory().createParser(json)) {
+        assertEquals(null, LiveServerMessageCodec.decode(parser), json);
+      }
+    }
+  }
+}
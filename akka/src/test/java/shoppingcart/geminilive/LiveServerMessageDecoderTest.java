@@ -0,0 +1,86 @@
+package shoppingcart.geminilive;
+
+import akka.actor.ActorSystem;
+import akka.http.javadsl.model.ws.BinaryMessage;
+import akka.http.javadsl.model.ws.Message;
+import akka.http.javadsl.model.ws.TextMessage;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import shoppingcart.geminilive.LiveProtocol.LiveServerMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LiveServerMessageDecoderTest {
+
+  private static final ActorSystem system = ActorSystem.create("LiveServerMessageDecoderTest");
+  private static final Materializer materializer = Materializer.matFromSystem(system);
+
+  @AfterAll
+  public static void shutdown() {
+    system.terminate();
+  }
+
+  private static final String JSON =
+      "{\"serverContent\":{\"modelTurn\":{\"parts\":[{\"text\":\"Ein Fernseher für 499€\"}],\"role\":\"model\"}," +
+          "\"turnComplete\":true},\"usageMetadata\":{\"totalTokenCount\":42}}";
+
+  private static String text(LiveServerMessage message) {
+    return message.serverContent().get().modelTurn().get().parts().get(0).text().get();
+  }
+
+  @Test
+  public void decodeMessageFedInArbitraryParts() throws Exception {
+    var bytes = ByteString.fromString(JSON, StandardCharsets.UTF_8);
+    // every split point, including within multi byte characters and tokens
+    for (int split = 0; split <= bytes.size(); split++) {
+      var decoder = new LiveServerMessageDecoder(GeminiLiveApiClient.objectMapper, 1024);
+      var message = decoder.feed(bytes.take(split)).feed(bytes.drop(split)).end();
+      assertEquals("Ein Fernseher für 499€", text(message));
+      assertTrue(message.serverContent().get().turnComplete().get());
+    }
+  }
+
+  @Test
+  public void failMessagesLargerThanMax() throws Exception {
+    var decoder = new LiveServerMessageDecoder(GeminiLiveApiClient.objectMapper, 16);
+    assertThrows(LiveServerMessageDecoder.MessageTooLargeException.class,
+        () -> decoder.feed(ByteString.fromString("{\"setupComplete\"")).feed(ByteString.fromString(":{}}")));
+    assertThrows(java.io.IOException.class,
+        () -> new LiveServerMessageDecoder(GeminiLiveApiClient.objectMapper, 16).feed(ByteString.fromString("{\"setup")).end());
+  }
+
+  @Test
+  public void decodeStreamedWebsocketMessagesInOrder() throws Exception {
+    var parts = List.of(JSON.substring(0, 20), JSON.substring(20, 70), JSON.substring(70));
+    List<Message> messages = List.of(
+        TextMessage.create(Source.from(parts)),
+        TextMessage.create("{\"setupComplete\":{}}"),
+        BinaryMessage.create(Source.from(parts).map(ByteString::fromString)));
+    var decoded = Source.from(messages)
+        .via(new LiveServerMessageDecoding(1024))
+        .runWith(Sink.seq(), materializer)
+        .toCompletableFuture().get(3, TimeUnit.SECONDS);
+    assertEquals(3, decoded.size());
+    assertEquals("Ein Fernseher für 499€", text(decoded.get(0)));
+    assertTrue(decoded.get(1).setupComplete().isPresent());
+    assertEquals("Ein Fernseher für 499€", text(decoded.get(2)));
+
+    var tooLarge = Source.single((Message) TextMessage.create(Source.from(parts)))
+        .via(new LiveServerMessageDecoding(64))
+        .runWith(Sink.seq(), materializer);
+    var error = assertThrows(ExecutionException.class, () -> tooLarge.toCompletableFuture().get(3, TimeUnit.SECONDS));
+    assertInstanceOf(LiveServerMessageDecoder.MessageTooLargeException.class, error.getCause());
+  }
+}
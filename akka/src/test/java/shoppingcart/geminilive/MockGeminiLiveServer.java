@@ -0,0 +1,90 @@
+package shoppingcart.geminilive;
+
+import akka.NotUsed;
+import akka.actor.ActorSystem;
+import akka.http.javadsl.Http;
+import akka.http.javadsl.ServerBinding;
+import akka.http.javadsl.model.ws.Message;
+import akka.http.javadsl.model.ws.TextMessage;
+import akka.stream.KillSwitches;
+import akka.stream.SharedKillSwitch;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Source;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static akka.http.javadsl.server.Directives.handleWebSocketMessages;
+
+/**
+ * Local stand in for the Gemini Live websocket API. Replies to the setup with setup complete, and to each client
+ * content completing a turn or realtime input message with a model turn echoing what it received. Open connections
+ * can be dropped, to test clients reconnecting.
+ */
+public class MockGeminiLiveServer {
+
+  private final ServerBinding binding;
+  public final AtomicInteger connections = new AtomicInteger();
+  public final AtomicInteger openConnections = new AtomicInteger();
+  // the text of each client content received, followed by " (turn complete)" if it completes a turn
+  public final Queue<String> clientContents = new ConcurrentLinkedQueue<>();
+  private volatile SharedKillSwitch killSwitch = KillSwitches.shared("MockGeminiLiveServer");
+
+  public MockGeminiLiveServer(ActorSystem system) throws Exception {
+    var materializer = akka.stream.Materializer.matFromSystem(system);
+    binding = Http.get(system).newServerAt("localhost", 0)
+        .bind(handleWebSocketMessages(Flow.<Message, Message, NotUsed>fromMaterializer((mat, attributes) -> Flow.<Message>create()
+            .mapAsync(1, message -> message.asTextMessage().toStrict(3000, materializer))
+            .mapConcat(message -> reply(GeminiLiveApiClient.objectMapper.readTree(message.getStrictText())))
+            .via(killSwitch.flow())
+            .watchTermination((notUsed, done) -> {
+              connections.incrementAndGet();
+              openConnections.incrementAndGet();
+              done.whenComplete((__, error) -> openConnections.decrementAndGet());
+              return notUsed;
+            }))))
+        .toCompletableFuture()
+        .get(3, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Closes all open connections, like a server going away, later connections are served as before.
+   */
+  public void dropConnections() {
+    var open = killSwitch;
+    killSwitch = KillSwitches.shared("MockGeminiLiveServer");
+    open.shutdown();
+  }
+
+  public String baseUrl() {
+    return "ws://localhost:" + binding.localAddress().getPort() + "/";
+  }
+
+  private List<Message> reply(JsonNode message) {
+    if (message.has("setup")) {
+      return List.of(TextMessage.create("{\"setupComplete\":{}}"));
+    } else if (message.has("clientContent")) {
+      var text = message.at("/clientContent/turns/0/parts/0/text").asText();
+      var turnComplete = message.at("/clientContent/turnComplete").asBoolean(false);
+      clientContents.add(turnComplete ? text + " (turn complete)" : text);
+      return turnComplete ? List.of(modelTurn("content: " + text)) : List.of();
+    } else if (message.has("realtimeInput")) {
+      var mimeType = message.at("/realtimeInput/mediaChunks/0/mimeType").asText();
+      return List.of(modelTurn("media: " + mimeType));
+    } else {
+      return List.of();
+    }
+  }
+
+  private static Message modelTurn(String text) {
+    return TextMessage.create("{\"serverContent\":{\"modelTurn\":{\"parts\":[{\"text\":\"" + text + "\"}]},\"turnComplete\":true}}");
+  }
+
+  public void stop() throws Exception {
+    binding.unbind().toCompletableFuture().get(3, TimeUnit.SECONDS);
+  }
+}
@@ -0,0 +1,81 @@
+package shoppingcart.geminilive;
+
+import org.junit.jupiter.api.Test;
+import shoppingcart.geminilive.LiveProtocol.*;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RealtimeInputJsonSegmentsTest {
+
+  private static byte[] payload(int size) {
+    var bytes = new byte[size];
+    new Random(size).nextBytes(bytes);
+    return bytes;
+  }
+
+  private static String render(LiveClientRealtimeInput input) {
+    var json = new StringBuilder();
+    new RealtimeInputJsonSegments(input).forEachRemaining(json::append);
+    return json.toString();
+  }
+
+  private static String databind(LiveClientRealtimeInput input) throws Exception {
+    return GeminiLiveApiClient.objectMapper.writeValueAsString(LiveClientMessage.realtimeInput(input));
+  }
+
+  @Test
+  public void renderSameJsonAsDatabind() throws Exception {
+    // sizes around the segment boundary, with and without base64 padding
+    var segment = RealtimeInputJsonSegments.SEGMENT_PAYLOAD_BYTES;
+    for (int size : List.of(1, 2, 3, segment - 1, segment, segment + 1, segment * 3 + 2, 150 * 1024)) {
+      var input = new LiveClientRealtimeInput(List.of(new Blob(payload(size), "image/jpeg")));
+      assertEquals(databind(input), render(input), "payload size " + size);
+    }
+  }
+
+  @Test
+  public void renderMultipleBlobs() throws Exception {
+    var input = new LiveClientRealtimeInput(List.of(
+        new Blob(payload(40000), "image/jpeg"),
+        new Blob(payload(2048), "audio/pcm;rate=16000"),
+        new Blob(new byte[0], "audio/pcm"),
+        new Blob(payload(10), "with \"quotes\"")));
+    assertEquals(databind(input), render(input));
+  }
+
+  @Test
+  public void renderBufferViews() throws Exception {
+    // a view into a larger buffer, like a payload received in a gRPC message
+    var bytes = payload(100_000);
+    var view = ByteBuffer.wrap(bytes, 1000, 60_000).slice();
+    var input = new LiveClientRealtimeInput(List.of(new Blob(view, "image/jpeg")));
+    var expected = "{\"realtimeInput\":{\"mediaChunks\":[{\"data\":\"" +
+        Base64.getEncoder().encodeToString(Arrays.copyOfRange(bytes, 1000, 61_000)) + "\",\"mimeType\":\"image/jpeg\"}]}}";
+
+    assertEquals(expected, databind(input));
+    assertEquals(expected, render(input));
+    // rendering must not move the shared buffer
+    assertEquals(60_000, view.remaining());
+    assertEquals(view, GeminiLiveApiClient.objectMapper.readValue(expected, LiveClientMessage.class)
+        .realtimeInput().get().mediaChunks().get(0).data());
+  }
+
+  @Test
+  public void splitLargePayloads() {
+    var input = new LiveClientRealtimeInput(List.of(new Blob(payload(200 * 1024), "image/jpeg")));
+    var segments = new RealtimeInputJsonSegments(input);
+    int count = 0;
+    while (segments.hasNext()) {
+      assertTrue(segments.next().length() <= RealtimeInputJsonSegments.SEGMENT_PAYLOAD_BYTES / 3 * 4);
+      count++;
+    }
+    assertTrue(count > 10);
+  }
+}
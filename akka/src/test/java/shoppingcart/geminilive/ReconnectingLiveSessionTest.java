@@ -0,0 +1,176 @@
+package shoppingcart.geminilive;
+
+import akka.actor.ActorSystem;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import shoppingcart.geminilive.LiveProtocol.*;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReconnectingLiveSessionTest {
+
+  private static ActorSystem system;
+  private static MockGeminiLiveServer server;
+
+  private final GenerateContentSetup setup = GenerateContentSetup.modelWithDefaults("models/test", "TEXT");
+
+  @BeforeAll
+  public static void start() throws Exception {
+    system = ActorSystem.create("ReconnectingLiveSessionTest");
+    server = new MockGeminiLiveServer(system);
+  }
+
+  @AfterAll
+  public static void stop() throws Exception {
+    server.stop();
+    system.terminate();
+  }
+
+  private static final class RecordingListener implements ReconnectingLiveSession.Listener {
+    final AtomicInteger disconnects = new AtomicInteger();
+    final AtomicInteger givenUp = new AtomicInteger();
+    final List<Integer> dropped = new ArrayList<>();
+
+    @Override
+    public void disconnected(int attempt, Throwable cause) {
+      disconnects.incrementAndGet();
+    }
+
+    @Override
+    public synchronized void reconnected(long gapNanos, int dropped) {
+      this.dropped.add(dropped);
+    }
+
+    @Override
+    public void gaveUp() {
+      givenUp.incrementAndGet();
+    }
+  }
+
+  private static LiveClientMessage context(String text) {
+    return LiveClientMessage.clientContent(new LiveClientContent(text, "user"));
+  }
+
+  private static LiveClientMessage cartUpdate(String text) {
+    return LiveClientMessage.clientContent(new LiveClientContent(new LiveClientContent(text, "user").turns(), false));
+  }
+
+  private static LiveClientMessage media(String mimeType) {
+    return LiveClientMessage.realtimeInput(new LiveClientRealtimeInput(List.of(new Blob(ByteBuffer.allocate(1), mimeType))));
+  }
+
+  private static String describe(LiveServerMessage message) {
+    return message.setupComplete().isPresent() ? "setup complete" :
+        message.serverContent().get().modelTurn().get().parts().get(0).text().get();
+  }
+
+  private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+    var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(3);
+    while (!condition.getAsBoolean()) {
+      if (System.nanoTime() > deadline) throw new AssertionError("Condition not met within 3s");
+      Thread.sleep(20);
+    }
+  }
+
+  private static List<String> take(LinkedBlockingQueue<String> received, int count) throws InterruptedException {
+    var messages = new ArrayList<String>();
+    for (int i = 0; i < count; i++) {
+      var message = received.poll(3, TimeUnit.SECONDS);
+      if (message == null) throw new AssertionError("Only got " + messages);
+      messages.add(message);
+    }
+    return messages;
+  }
+
+  @Test
+  public void resendContextCartChangesAndBufferedMediaAfterConnectionDropped() throws Exception {
+    var client = new GeminiLiveApiClient("test-key", server.baseUrl());
+    var settings = new ReconnectingLiveSession.Settings(true, Duration.ofMillis(300), Duration.ofSeconds(1), 0, 3, 2, 1);
+    var listener = new RecordingListener();
+    var received = new LinkedBlockingQueue<String>();
+
+    var materialized = Source.<LiveClientMessage>queue(16)
+        .via(new ReconnectingLiveSession(settings, input -> client.connect(setup, input), listener))
+        .map(ReconnectingLiveSessionTest::describe)
+        .toMat(Sink.foreach(received::add), Keep.both())
+        .run(system);
+    var input = materialized.first();
+
+    input.offer(context("cart"));
+    input.offer(media("video/f1"));
+    assertEquals(List.of("setup complete", "content: cart", "media: video/f1"), take(received, 3));
+    input.offer(cartUpdate("added tv"));
+    input.offer(cartUpdate("added mug"));
+    input.offer(media("video/f2"));
+    assertEquals(List.of("media: video/f2"), take(received, 1));
+    var connectionsBefore = server.connections.get();
+    server.clientContents.clear();
+
+    server.dropConnections();
+    awaitCondition(() -> listener.disconnects.get() == 1);
+    // while reconnecting, only the 2 most recent are kept
+    input.offer(media("video/f3"));
+    input.offer(media("video/f4"));
+    input.offer(media("video/f5"));
+
+    // the context and the most recent cart change are sent again without asking for an answer, and the setup
+    // complete of the new connection is not passed on
+    assertEquals(List.of("media: video/f4", "media: video/f5"), take(received, 2));
+    assertEquals(List.of("cart", "added mug"), List.copyOf(server.clientContents));
+    assertEquals(connectionsBefore + 1, server.connections.get());
+    synchronized (listener) {
+      assertEquals(List.of(1), listener.dropped);
+    }
+
+    // the client completing ends the session without reconnecting
+    input.complete();
+    materialized.second().toCompletableFuture().get(3, TimeUnit.SECONDS);
+    assertEquals(1, listener.disconnects.get());
+  }
+
+  @Test
+  public void failAfterMaxAttempts() {
+    var settings = new ReconnectingLiveSession.Settings(true, Duration.ofMillis(10), Duration.ofMillis(20), 0, 3, 2, 1);
+    var listener = new RecordingListener();
+    var connects = new AtomicInteger();
+
+    var done = Source.single(context("cart")).concat(Source.never())
+        .via(new ReconnectingLiveSession(settings, input -> {
+          connects.incrementAndGet();
+          return Source.failed(new IllegalStateException("refused"));
+        }, listener))
+        .runWith(Sink.ignore(), system);
+
+    var error = assertThrows(ExecutionException.class, () -> done.toCompletableFuture().get(3, TimeUnit.SECONDS));
+    assertEquals("refused", error.getCause().getMessage());
+    assertEquals(4, connects.get());
+    assertEquals(3, listener.disconnects.get());
+    assertEquals(1, listener.givenUp.get());
+  }
+
+  @Test
+  public void doubleTheBackoffUpToTheMax() {
+    var settings = new ReconnectingLiveSession.Settings(true, Duration.ofMillis(100), Duration.ofSeconds(1), 0, 10, 2, 1);
+    assertEquals(Duration.ofMillis(100), settings.backoff(1));
+    assertEquals(Duration.ofMillis(400), settings.backoff(3));
+    assertEquals(Duration.ofSeconds(1), settings.backoff(5));
+    var random = new ReconnectingLiveSession.Settings(true, Duration.ofMillis(100), Duration.ofSeconds(1), 0.5, 10, 2, 1);
+    assertTrue(random.backoff(1).toMillis() >= 100 && random.backoff(1).toMillis() <= 150);
+  }
+}
@@ -1,10 +1,32 @@
 // Original file: video-service.proto
 
+import type { ContentDelta as _ContentDelta, ContentDelta__Output as _ContentDelta__Output } from './ContentDelta';
+import type { TurnComplete as _TurnComplete, TurnComplete__Output as _TurnComplete__Output } from './TurnComplete';
+import type { ToolCall as _ToolCall, ToolCall__Output as _ToolCall__Output } from './ToolCall';
+import type { Status as _Status, Status__Output as _Status__Output } from './Status';
+import type { StreamError as _StreamError, StreamError__Output as _StreamError__Output } from './StreamError';
+import type { Long } from '@grpc/proto-loader';
 
 export interface Ack {
   'message'?: (string);
+  'seq'?: (number | string | Long);
+  'server_time_millis'?: (number | string | Long);
+  'content_delta'?: (_ContentDelta | null);
+  'turn_complete'?: (_TurnComplete | null);
+  'tool_call'?: (_ToolCall | null);
+  'status'?: (_Status | null);
+  'error'?: (_StreamError | null);
+  'kind'?: "content_delta"|"turn_complete"|"tool_call"|"status"|"error";
 }
 
 export interface Ack__Output {
   'message': (string);
+  'seq': (string);
+  'server_time_millis': (string);
+  'content_delta'?: (_ContentDelta__Output | null);
+  'turn_complete'?: (_TurnComplete__Output | null);
+  'tool_call'?: (_ToolCall__Output | null);
+  'status'?: (_Status__Output | null);
+  'error'?: (_StreamError__Output | null);
+  'kind': "content_delta"|"turn_complete"|"tool_call"|"status"|"error";
 }
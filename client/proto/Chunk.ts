@@ -2,11 +2,11 @@
 
 
 export interface Chunk {
-  'mimeType'?: (string);
+  'mime_type'?: (string);
   'payload'?: (Buffer | Uint8Array | string);
 }
 
 export interface Chunk__Output {
-  'mimeType': (string);
+  'mime_type': (string);
   'payload': (Buffer);
 }
@@ -0,0 +1,10 @@
+// Original file: video-service.proto
+
+
+export interface ContentDelta {
+  'text'?: (string);
+}
+
+export interface ContentDelta__Output {
+  'text': (string);
+}
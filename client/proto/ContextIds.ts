@@ -0,0 +1,12 @@
+// Original file: video-service.proto
+
+
+export interface ContextIds {
+  'ai_context_id'?: (string);
+  'cart_id'?: (string);
+}
+
+export interface ContextIds__Output {
+  'ai_context_id': (string);
+  'cart_id': (string);
+}
@@ -0,0 +1,31 @@
+// Original file: video-service.proto
+
+
+// Original file: video-service.proto
+
+export const _Status_Code = {
+  CODE_UNSPECIFIED: 'CODE_UNSPECIFIED',
+  SETUP_COMPLETE: 'SETUP_COMPLETE',
+  PROCESSING: 'PROCESSING',
+  RESPONSE_STORED: 'RESPONSE_STORED',
+} as const;
+
+export type _Status_Code =
+  | 'CODE_UNSPECIFIED'
+  | 0
+  | 'SETUP_COMPLETE'
+  | 1
+  | 'PROCESSING'
+  | 2
+  | 'RESPONSE_STORED'
+  | 3
+
+export type _Status_Code__Output = typeof _Status_Code[keyof typeof _Status_Code]
+
+export interface Status {
+  'code'?: (_Status_Code);
+}
+
+export interface Status__Output {
+  'code': (_Status_Code__Output);
+}
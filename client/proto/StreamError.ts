@@ -0,0 +1,10 @@
+// Original file: video-service.proto
+
+
+export interface StreamError {
+  'message'?: (string);
+}
+
+export interface StreamError__Output {
+  'message': (string);
+}
@@ -0,0 +1,16 @@
+// Original file: video-service.proto
+
+import type { ContextIds as _ContextIds, ContextIds__Output as _ContextIds__Output } from './ContextIds';
+import type { Chunk as _Chunk, Chunk__Output as _Chunk__Output } from './Chunk';
+
+export interface StreamInput {
+  'context_ids'?: (_ContextIds | null);
+  'chunk'?: (_Chunk | null);
+  'content'?: "context_ids"|"chunk";
+}
+
+export interface StreamInput__Output {
+  'context_ids'?: (_ContextIds__Output | null);
+  'chunk'?: (_Chunk__Output | null);
+  'content': "context_ids"|"chunk";
+}
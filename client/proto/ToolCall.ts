@@ -0,0 +1,14 @@
+// Original file: video-service.proto
+
+
+export interface ToolCall {
+  'function_names'?: (string)[];
+  'cancellation'?: (boolean);
+  'ids'?: (string)[];
+}
+
+export interface ToolCall__Output {
+  'function_names': (string)[];
+  'cancellation': (boolean);
+  'ids': (string)[];
+}
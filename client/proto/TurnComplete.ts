@@ -0,0 +1,10 @@
+// Original file: video-service.proto
+
+
+export interface TurnComplete {
+  'interrupted'?: (boolean);
+}
+
+export interface TurnComplete__Output {
+  'interrupted': (boolean);
+}
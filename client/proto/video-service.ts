@@ -10,6 +10,13 @@ type SubtypeConstructor<Constructor extends new (...args: any) => any, Subtype>
 export interface ProtoGrpcType {
   Ack: MessageTypeDefinition
   Chunk: MessageTypeDefinition
+  ContentDelta: MessageTypeDefinition
+  ContextIds: MessageTypeDefinition
+  Status: MessageTypeDefinition
+  StreamError: MessageTypeDefinition
+  StreamInput: MessageTypeDefinition
+  ToolCall: MessageTypeDefinition
+  TurnComplete: MessageTypeDefinition
   VideoServiceEndpoint: SubtypeConstructor<typeof grpc.Client, _VideoServiceEndpointClient> & { service: _VideoServiceEndpointDefinition }
 }
 